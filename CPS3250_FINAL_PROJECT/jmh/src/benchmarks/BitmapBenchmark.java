@@ -0,0 +1,56 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import process.Bitmap;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// 位图查找连续空闲位。front 把前 fill 比例的位连续占满，和从低地址依次分配的虚拟地址位图一样，
+// scan 整个跳过全满的 long；random 随机占用同样多的位，空闲位零散，找连续 count 位要逐位检查
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BitmapBenchmark {
+    @Param({"1024", "65536"})
+    public int bits;
+
+    @Param({"0.5", "0.9"})
+    public double fill;
+
+    @Param({"front", "random"})
+    public String layout;
+
+    @Param({"1", "8"})
+    public int count;
+
+    Bitmap bitmap;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        bitmap = new Bitmap(bits / 8);
+        int used = (int) (bits * fill);
+        if (layout.equals("front")) {
+            bitmap.setRange(0, used);
+        } else {
+            Random random = new Random(42);
+            boolean[] set = new boolean[bits];
+            for (int i = 0; i < used; i++) {
+                int bit;
+                do {
+                    bit = random.nextInt(bits);
+                } while (set[bit]);
+                set[bit] = true;
+                bitmap.set(bit);
+            }
+        }
+    }
+
+    @Benchmark
+    public int scan() {
+        return bitmap.scan(count);
+    }
+}
@@ -0,0 +1,61 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import process.ProcessControlBlock;
+import simulation.Kernel;
+import utils.EventLog;
+
+import java.util.concurrent.TimeUnit;
+
+// 写时复制缺页的延迟：每次调用前 fork 一个子进程，子进程依次写父进程的前 16 页，每次写都触发一次写时复制
+// （分配新页、复制 4KB、改页表项、减少旧页引用计数）。pages 是父进程的页数，决定页表和物理页索引的大小。
+// 取样模式给出延迟分布；fork 和回收子进程不计入测量
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CopyOnWriteBenchmark {
+    static final int TOUCHED = 16;
+
+    @Param({"16", "1024", "16384"})
+    public int pages;
+
+    Kernel kernel;
+    ProcessControlBlock parent;
+    ProcessControlBlock child;
+    final byte[] data = new byte[]{1, 2, 3, 4};
+    final int[] status = new int[1];
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        kernel = new Kernel();
+        kernel.log.level = EventLog.OFF;
+        parent = kernel.createParentProcess("parent", pages);
+        kernel.setRunningProcess(parent);
+    }
+
+    @Setup(Level.Invocation)
+    public void fork() {
+        child = kernel.getProcessByPid(kernel.sysFork());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TOUCHED)
+    public void copyOnWrite() {
+        int vaddr = parent.userProgVAddr.vaddrStart;
+        for (int i = 0; i < TOUCHED; i++) {
+            kernel.writeMemory(child, vaddr + i * 4096, data);
+        }
+    }
+
+    @TearDown(Level.Invocation)
+    public void reap() {
+        long childPid = child.pid;
+        kernel.sysExit(child, 0);
+        if (kernel.sysWait(parent, status) != childPid) {
+            throw new IllegalStateException("Child PID " + childPid + " was not reaped.");
+        }
+    }
+}
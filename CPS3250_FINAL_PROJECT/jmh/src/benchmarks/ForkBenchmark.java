@@ -0,0 +1,48 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import process.ProcessControlBlock;
+import simulation.Kernel;
+import utils.EventLog;
+
+import java.util.concurrent.TimeUnit;
+
+// fork 随父进程地址空间大小的变化：父进程带 pages 页数据，每次调用 fork 一个子进程（复制 PCB、位图和页表，
+// 数据页只增加引用计数）。子进程在每次调用之后退出并由父进程回收，回收不计入测量
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ForkBenchmark {
+    @Param({"10", "100", "1000", "10000"})
+    public int pages;
+
+    Kernel kernel;
+    ProcessControlBlock parent;
+    long childPid;
+    final int[] status = new int[1];
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        kernel = new Kernel();
+        kernel.log.level = EventLog.OFF;
+        parent = kernel.createParentProcess("parent", pages);
+        kernel.setRunningProcess(parent);
+    }
+
+    @Benchmark
+    public long fork() {
+        childPid = kernel.sysFork();
+        return childPid;
+    }
+
+    @TearDown(Level.Invocation)
+    public void reap() {
+        kernel.sysExit(kernel.getProcessByPid(childPid), 0);
+        if (kernel.sysWait(parent, status) != childPid) {
+            throw new IllegalStateException("Child PID " + childPid + " was not reaped.");
+        }
+    }
+}
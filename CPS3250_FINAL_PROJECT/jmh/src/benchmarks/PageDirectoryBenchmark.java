@@ -0,0 +1,90 @@
+package benchmarks;
+
+import memory.PageDirectory;
+import memory.PageTableEntry;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// 页表查找。dense 从 0x8048000 起连续映射 pages 页，sparse 在 1GB 范围内随机映射同样多的页。
+// hit 依次查找已映射的页，miss 查找同一范围内未映射的页；查找顺序预先打乱，不让硬件预取占便宜
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PageDirectoryBenchmark {
+    static final int PG_SIZE = 4096;
+    static final int BASE = 0x8048000;
+    static final int SPAN_PAGES = 1 << 18; // 1GB
+
+    @Param({"16", "1024", "65536"})
+    public int pages;
+
+    @Param({"dense", "sparse"})
+    public String layout;
+
+    PageDirectory pageDirectory;
+    int[] mapped;
+    int[] unmapped;
+    int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        boolean[] used = new boolean[SPAN_PAGES];
+        mapped = new int[pages];
+        for (int i = 0; i < pages; i++) {
+            int page;
+            if (layout.equals("dense")) {
+                page = i;
+            } else {
+                do {
+                    page = random.nextInt(SPAN_PAGES);
+                } while (used[page]);
+            }
+            used[page] = true;
+            mapped[i] = BASE + page * PG_SIZE;
+        }
+        unmapped = new int[pages];
+        for (int i = 0; i < pages; i++) {
+            int page;
+            do {
+                page = random.nextInt(layout.equals("dense") ? 2 * pages : SPAN_PAGES);
+            } while (used[page]);
+            unmapped[i] = BASE + page * PG_SIZE;
+        }
+        shuffle(mapped, random);
+
+        pageDirectory = new PageDirectory();
+        for (int i = 0; i < pages; i++) {
+            pageDirectory.mapPage(mapped[i], i * PG_SIZE, false);
+        }
+        shuffle(mapped, random);
+    }
+
+    @Benchmark
+    public PageTableEntry hit() {
+        int i = next;
+        next = i + 1 == pages ? 0 : i + 1;
+        return pageDirectory.getPageTableEntry(mapped[i]);
+    }
+
+    @Benchmark
+    public PageTableEntry miss() {
+        int i = next;
+        next = i + 1 == pages ? 0 : i + 1;
+        return pageDirectory.getPageTableEntry(unmapped[i]);
+    }
+
+    static void shuffle(int[] values, Random random) {
+        for (int i = values.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int t = values[i];
+            values[i] = values[j];
+            values[j] = t;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package benchmarks;
+
+import memory.PhysicalMemoryManager;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// 物理页的分配与释放。live 为常驻的物理页数，影响物理页索引（哈希表）的大小；
+// 释放的页进入空闲栈，下一次分配直接复用，所以这里测的是稳定状态下的开销
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PhysicalMemoryBenchmark {
+    static final int BATCH = 64;
+
+    @Param({"0", "4096", "65536"})
+    public int live;
+
+    PhysicalMemoryManager memory;
+    final int[] batch = new int[BATCH];
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        memory = new PhysicalMemoryManager();
+        for (int i = 0; i < live; i++) {
+            memory.allocatePhysicalPage();
+        }
+    }
+
+    // 分配一页后立刻释放
+    @Benchmark
+    public int allocateFree() {
+        int physicalAddress = memory.allocatePhysicalPage();
+        memory.decreaseReferenceCount(physicalAddress);
+        return physicalAddress;
+    }
+
+    // 连续分配 64 页再批量释放，和进程退出时的批量归还一样
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int allocateFreeBatch() {
+        for (int i = 0; i < BATCH; i++) {
+            batch[i] = memory.allocatePhysicalPage();
+        }
+        memory.decreaseReferenceCounts(batch, BATCH);
+        return batch[BATCH - 1];
+    }
+}
@@ -0,0 +1,40 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import utils.PIDGenerator;
+
+import java.util.concurrent.TimeUnit;
+
+// PID 分配随 PID 空间占用率的变化。forkPid 随机取值直到碰到未占用的 PID，占用率为 f 时平均要试 1/(1-f) 次；
+// 每次调用分配一个 PID 再归还，占用率保持不变
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PidBenchmark {
+    static final int PID_SPACE = PIDGenerator.MAX_PID - PIDGenerator.MIN_PID;
+
+    @Param({"0", "0.5", "0.9", "0.99"})
+    public double fill;
+
+    PIDGenerator pids;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        pids = new PIDGenerator();
+        pids.seed(42);
+        int assigned = (int) (PID_SPACE * fill);
+        for (int i = 0; i < assigned; i++) {
+            pids.forkPid();
+        }
+    }
+
+    @Benchmark
+    public long forkPid() {
+        long pid = pids.forkPid();
+        pids.releasePid(pid);
+        return pid;
+    }
+}
@@ -0,0 +1,58 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import process.ProcessControlBlock;
+import simulation.Kernel;
+import utils.EventLog;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// 按 PID 查找进程随进程表大小的变化。父进程 fork 出 processes 个子进程，
+// hit 按打乱的顺序查找这些子进程，miss 查找不存在的 PID（要扫描整个进程表）
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProcessTableBenchmark {
+    @Param({"16", "256", "4096"})
+    public int processes;
+
+    Kernel kernel;
+    long[] pids;
+    int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        kernel = new Kernel();
+        kernel.log.level = EventLog.OFF;
+        kernel.pids.seed(42);
+        ProcessControlBlock parent = kernel.createParentProcess("parent", 1);
+        kernel.setRunningProcess(parent);
+        pids = new long[processes];
+        for (int i = 0; i < processes; i++) {
+            pids[i] = kernel.sysFork();
+        }
+        Random random = new Random(42);
+        for (int i = pids.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            long t = pids[i];
+            pids[i] = pids[j];
+            pids[j] = t;
+        }
+    }
+
+    @Benchmark
+    public ProcessControlBlock hit() {
+        int i = next;
+        next = i + 1 == processes ? 0 : i + 1;
+        return kernel.getProcessByPid(pids[i]);
+    }
+
+    @Benchmark
+    public ProcessControlBlock miss() {
+        return kernel.getProcessByPid(0);
+    }
+}
@@ -0,0 +1,208 @@
+package cpu;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+// 生成解释器代码的汇编器，跳转目标用标签表示，assemble 时回填
+public class Assembler implements Opcodes {
+    private int[] code = new int[64];
+    private int size;
+    private final Map<String, Integer> labels = new HashMap<>();
+    private final Map<Integer, String> fixups = new HashMap<>(); // 立即数位置 -> 标签
+
+    // 当前位置
+    public int here() {
+        return size;
+    }
+
+    public Assembler label(String name) {
+        if (labels.put(name, size) != null) {
+            throw new IllegalArgumentException("Duplicate label " + name);
+        }
+        return this;
+    }
+
+    public Assembler nop() {
+        return emit(NOP, 0, 0, 0);
+    }
+
+    public Assembler li(int rd, int imm) {
+        return emit(LI, rd, 0, 0).word(imm);
+    }
+
+    public Assembler mov(int rd, int rs) {
+        return emit(MOV, rd, rs, 0);
+    }
+
+    public Assembler add(int rd, int rs, int rt) {
+        return emit(ADD, rd, rs, rt);
+    }
+
+    public Assembler sub(int rd, int rs, int rt) {
+        return emit(SUB, rd, rs, rt);
+    }
+
+    public Assembler mul(int rd, int rs, int rt) {
+        return emit(MUL, rd, rs, rt);
+    }
+
+    public Assembler div(int rd, int rs, int rt) {
+        return emit(DIV, rd, rs, rt);
+    }
+
+    public Assembler rem(int rd, int rs, int rt) {
+        return emit(REM, rd, rs, rt);
+    }
+
+    public Assembler and(int rd, int rs, int rt) {
+        return emit(AND, rd, rs, rt);
+    }
+
+    public Assembler or(int rd, int rs, int rt) {
+        return emit(OR, rd, rs, rt);
+    }
+
+    public Assembler xor(int rd, int rs, int rt) {
+        return emit(XOR, rd, rs, rt);
+    }
+
+    public Assembler shl(int rd, int rs, int rt) {
+        return emit(SHL, rd, rs, rt);
+    }
+
+    public Assembler shr(int rd, int rs, int rt) {
+        return emit(SHR, rd, rs, rt);
+    }
+
+    public Assembler slt(int rd, int rs, int rt) {
+        return emit(SLT, rd, rs, rt);
+    }
+
+    public Assembler addi(int rd, int rs, int imm) {
+        return emit(ADDI, rd, rs, 0).word(imm);
+    }
+
+    public Assembler lw(int rd, int rs, int offset) {
+        return emit(LW, rd, rs, 0).word(offset);
+    }
+
+    public Assembler sw(int rd, int rs, int offset) {
+        return emit(SW, rd, rs, 0).word(offset);
+    }
+
+    public Assembler lb(int rd, int rs, int offset) {
+        return emit(LB, rd, rs, 0).word(offset);
+    }
+
+    public Assembler sb(int rd, int rs, int offset) {
+        return emit(SB, rd, rs, 0).word(offset);
+    }
+
+    public Assembler beq(int rs, int rt, String label) {
+        return emit(BEQ, 0, rs, rt).target(label);
+    }
+
+    public Assembler bne(int rs, int rt, String label) {
+        return emit(BNE, 0, rs, rt).target(label);
+    }
+
+    public Assembler blt(int rs, int rt, String label) {
+        return emit(BLT, 0, rs, rt).target(label);
+    }
+
+    public Assembler bge(int rs, int rt, String label) {
+        return emit(BGE, 0, rs, rt).target(label);
+    }
+
+    public Assembler jmp(String label) {
+        return emit(JMP, 0, 0, 0).target(label);
+    }
+
+    public Assembler jal(int rd, String label) {
+        return emit(JAL, rd, 0, 0).target(label);
+    }
+
+    public Assembler jr(int rs) {
+        return emit(JR, 0, rs, 0);
+    }
+
+    public Assembler push(int rd) {
+        return emit(PUSH, rd, 0, 0);
+    }
+
+    public Assembler pop(int rd) {
+        return emit(POP, rd, 0, 0);
+    }
+
+    public Assembler call(String label) {
+        return emit(CALL, 0, 0, 0).target(label);
+    }
+
+    public Assembler ret() {
+        return emit(RET, 0, 0, 0);
+    }
+
+    public Assembler cmp(int rs, int rt) {
+        return emit(CMP, 0, rs, rt);
+    }
+
+    public Assembler je(String label) {
+        return emit(JE, 0, 0, 0).target(label);
+    }
+
+    public Assembler jne(String label) {
+        return emit(JNE, 0, 0, 0).target(label);
+    }
+
+    public Assembler jl(String label) {
+        return emit(JL, 0, 0, 0).target(label);
+    }
+
+    public Assembler jge(String label) {
+        return emit(JGE, 0, 0, 0).target(label);
+    }
+
+    // r0 = number 后陷入内核
+    public Assembler syscall(int number) {
+        return li(0, number).emit(SYSCALL, 0, 0, 0);
+    }
+
+    // 回填标签，返回代码
+    public int[] assemble() {
+        for (Map.Entry<Integer, String> fixup : fixups.entrySet()) {
+            Integer target = labels.get(fixup.getValue());
+            if (target == null) {
+                throw new IllegalStateException("Undefined label " + fixup.getValue());
+            }
+            code[fixup.getKey()] = target;
+        }
+        return Arrays.copyOf(code, size);
+    }
+
+    private Assembler emit(int op, int rd, int rs, int rt) {
+        checkRegister(rd);
+        checkRegister(rs);
+        checkRegister(rt);
+        return word(op | rd << 8 | rs << 16 | rt << 24);
+    }
+
+    private Assembler target(String label) {
+        fixups.put(size, label);
+        return word(0);
+    }
+
+    private Assembler word(int value) {
+        if (size == code.length) {
+            code = Arrays.copyOf(code, size * 2);
+        }
+        code[size++] = value;
+        return this;
+    }
+
+    private static void checkRegister(int reg) {
+        if (reg < 0 || reg >= Context.GENERAL_REGISTERS) {
+            throw new IllegalArgumentException("No register r" + reg);
+        }
+    }
+}
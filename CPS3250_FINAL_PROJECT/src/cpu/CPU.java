@@ -1,21 +1,147 @@
 package cpu;
 
+import memory.PhysicalMemoryManager;
 import process.ProcessControlBlock;
+import utils.ChromeTrace;
+import utils.EventLog;
+import utils.LatencyHistogram;
+import utils.TraceEvents;
 
+// 一个内核的处理器：寄存器组、TLB、切换统计和解释器参数，每个 Kernel 实例各有一个
 public class CPU {
-    public static Runnable intrExit = () -> {
-        System.out.println("Process returned to user space.");
-    };
+    static final int LOG_RETURN = EventLog.define(EventLog.DEBUG, "Process returned to user space.");
+    static final int LOG_SWITCH = EventLog.define(EventLog.DEBUG, "Switching to process PID %d.");
+    static final int LOG_NO_THREAD_STACK = EventLog.define(EventLog.WARN, "No thread stack to switch to.");
+    static final int TRACE_SWITCH = ChromeTrace.define("switchTo", "pid");
 
-    public static void switchTo(ProcessControlBlock process) {
-        System.out.println("Switching to process PID " + process.pid + ".");
+    // 访存经过的物理内存，切换日志写入所属内核的日志
+    public final PhysicalMemoryManager memory;
+    public final EventLog log;
+
+    // fork 出的子进程没有用户程序时的返回地址
+    public final Runnable intrExit;
+
+    // 所属内核开启 Chrome 跟踪时不为 null，每次切换记录进程占用 CPU 的时间段
+    public ChromeTrace chromeTrace;
+
+    // 物理寄存器组，布局见 Context。进程切换时与进程的 IntrStack.context 互相复制
+    public final int[] registers = new int[Context.SIZE];
+    public final Tlb tlb = new Tlb();
+    // 开启时 TLB 表项带地址空间号，切换不清空；关闭时每次切换清空整个 TLB
+    public boolean tlbTagging = true;
+
+    // 解释器每个时间片执行的指令数，以及累计执行的指令数
+    public int quantum = 1 << 16;
+    public long instructionsRetired;
+
+    // 切换开销：从上一个进程交出 CPU 到下一个进程开始执行的时间
+    public final LatencyHistogram switchLatency = new LatencyHistogram();
+    public long switches;
+    private long switchOutNanos;
+
+    // 地址空间号，0 保留给内核。号用完后开始新的一代：清空 TLB 从 1 重新分配，
+    // 持有旧一代号的进程下次切换进来时换号，活着的进程不会同时用同一个号
+    static final int MAX_ASID = 4096;
+    private int nextAsid = 1;
+    private long asidGeneration = 1;
+    // 正在 switchTo 中运行的进程
+    private ProcessControlBlock current;
+
+    public CPU(PhysicalMemoryManager memory, EventLog log) {
+        this.memory = memory;
+        this.log = log;
+        intrExit = () -> log.emit(LOG_RETURN);
+    }
+
+    public void switchTo(ProcessControlBlock process) {
+        TraceEvents.ContextSwitch event = new TraceEvents.ContextSwitch();
+        event.begin();
+        long start = chromeTrace != null ? System.nanoTime() : 0;
+        // 进程可能在这次运行中退出，PCB 被回收复用
+        long pid = process.pid;
+        log.emit(LOG_SWITCH, pid);
         // 模拟从 threadStack 中获取返回地址并执行
         if (process.selfKStack != null && process.selfKStack instanceof ThreadStack) {
             ThreadStack threadStack = (ThreadStack) process.selfKStack;
-            // 执行返回地址
-            threadStack.eip.run();
+            IntrStack intrStack = process.kernelStack != null ? process.kernelStack.intrStack : null;
+            if (intrStack != null) {
+                if (process.asidGeneration != asidGeneration) {
+                    assignAsid(process);
+                }
+                restoreContext(intrStack.context, process.asid);
+            }
+            // 返回地址在进程自己的执行流上运行，进程让出 CPU、阻塞或结束时才回到这里
+            if (process.continuation == null || process.continuation.isDone()) {
+                process.continuation = new Continuation(this, threadStack.eip);
+            }
+            ProcessControlBlock previous = current;
+            current = process;
+            process.continuation.run();
+            current = previous;
+            // 进程已退出时内核栈已回收，不必保存
+            if (process.kernelStack != null && process.kernelStack.intrStack == intrStack && intrStack != null) {
+                saveContext(intrStack.context);
+            }
         } else {
-            System.out.println("No thread stack to switch to.");
+            log.emit(LOG_NO_THREAD_STACK);
+        }
+        if (event.shouldCommit()) {
+            event.pid = pid;
+            event.commit();
+        }
+        if (chromeTrace != null) {
+            chromeTrace.complete(TRACE_SWITCH, start, System.nanoTime(), pid);
+        }
+    }
+
+    // 把进程的上下文装入寄存器组，切换地址空间
+    void restoreContext(int[] context, int asid) {
+        System.arraycopy(context, 0, registers, 0, Context.SIZE);
+        registers[Context.PDBR] = asid;
+        if (!tlbTagging) {
+            tlb.flushAll();
+        }
+        switches++;
+    }
+
+    void saveContext(int[] context) {
+        System.arraycopy(registers, 0, context, 0, Context.SIZE);
+    }
+
+    // 为进程分配当前一代的地址空间号。这一代用完时换代并清空 TLB，
+    // 正在运行的进程不经过 switchTo，立即换号并更新 PDBR
+    public void assignAsid(ProcessControlBlock process) {
+        if (nextAsid == MAX_ASID) {
+            nextAsid = 1;
+            asidGeneration++;
+            tlb.flushAll();
+            if (current != null && current != process) {
+                current.asid = nextAsid++;
+                current.asidGeneration = asidGeneration;
+                registers[Context.PDBR] = current.asid;
+            }
+        }
+        process.asid = nextAsid++;
+        process.asidGeneration = asidGeneration;
+    }
+
+    // 当前运行者交出 CPU
+    void markSwitchOut() {
+        switchOutNanos = System.nanoTime();
+    }
+
+    // 某个进程开始或恢复执行，记录自上次交出 CPU 以来的时间
+    void markSwitchIn() {
+        if (switchOutNanos != 0) {
+            switchLatency.record(System.nanoTime() - switchOutNanos);
+            switchOutNanos = 0;
+        }
+    }
+
+    // 调度器空闲等待（如等待 I/O 完成）的时间不计入切换开销
+    public void resetSwitchClock() {
+        if (switchOutNanos != 0) {
+            switchOutNanos = System.nanoTime();
         }
     }
 }
@@ -0,0 +1,15 @@
+package cpu;
+
+// 进程 CPU 上下文的扁平布局：所有寄存器放在一个 int 数组中，切换时整体复制
+public interface Context {
+    int GENERAL_REGISTERS = 16; // r0..r15
+    int PC = 16;
+    int SP = 17;
+    int FLAGS = 18;
+    int PDBR = 19;              // 页目录基址，这里存放进程的地址空间号（ASID），用作 TLB 标签
+    int SIZE = 20;
+
+    // FLAGS 中的位，由 CMP 设置
+    int FLAG_ZERO = 1;
+    int FLAG_LESS = 2;
+}
@@ -0,0 +1,78 @@
+package cpu;
+
+import java.util.concurrent.locks.LockSupport;
+
+// 进程的执行流：运行在独立的承载线程上，调度者与进程之间通过 park/unpark 交接控制权，
+// 同一时刻只有一方在运行，因此进程可以在执行中途让出 CPU 或阻塞
+public class Continuation {
+    private static final ThreadLocal<Continuation> current = new ThreadLocal<>();
+
+    private final CPU cpu;              // 执行流运行在哪个处理器上，记录切换开销
+    private final Runnable body;
+    private Thread carrier;             // 承载进程执行流的线程
+    private volatile Thread scheduler;  // 把控制权交给本执行流的调度线程
+    private volatile boolean mounted;   // true 表示进程正在执行
+    private volatile boolean done;
+
+    public Continuation(CPU cpu, Runnable body) {
+        this.cpu = cpu;
+        this.body = body;
+    }
+
+    // 恢复执行，直到进程让出 CPU、阻塞或结束；返回进程是否已结束
+    public boolean run() {
+        if (done) {
+            return true;
+        }
+        scheduler = Thread.currentThread();
+        mounted = true;
+        if (carrier == null) {
+            carrier = ExecutionBackend.newThread(this::enter);
+            carrier.start();
+        } else {
+            LockSupport.unpark(carrier);
+        }
+        while (mounted) {
+            LockSupport.park(this);
+        }
+        return done;
+    }
+
+    public boolean isDone() {
+        return done;
+    }
+
+    // 当前线程所承载的执行流，不在执行流中时返回 null
+    public static Continuation current() {
+        return current.get();
+    }
+
+    // 由进程自身调用：挂起当前执行流并把控制权交还调度者
+    public static void yieldCurrent() {
+        Continuation continuation = current.get();
+        if (continuation == null) {
+            // 同步执行模式下没有可挂起的执行流
+            return;
+        }
+        continuation.cpu.markSwitchOut();
+        continuation.mounted = false;
+        LockSupport.unpark(continuation.scheduler);
+        while (!continuation.mounted) {
+            LockSupport.park(continuation);
+        }
+        continuation.cpu.markSwitchIn();
+    }
+
+    private void enter() {
+        current.set(this);
+        cpu.markSwitchIn();
+        try {
+            body.run();
+        } finally {
+            cpu.markSwitchOut();
+            done = true;
+            mounted = false;
+            LockSupport.unpark(scheduler);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package cpu;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+// 进程执行流的承载线程。JDK 21 及以上用虚拟线程，阻塞的进程只占一小段堆内存，一个内核可以有上百万个进程。
+// 更早的 JDK（包括项目的目标版本 1.8）回退为平台线程：每个已开始执行、尚未结束的进程占一个 64 KB 栈的线程，
+// 进程数受操作系统的线程数上限限制（通常是几万个），模拟不了上百万个同时存活的进程
+public class ExecutionBackend {
+    // 平台线程回退时使用的小栈，避免大量进程时占用过多内存
+    static final long PLATFORM_STACK_SIZE = 64 * 1024;
+
+    private static final AtomicLong threadSeq = new AtomicLong();
+    private static final ThreadFactory factory = createFactory();
+    private static boolean virtual;
+
+    // 为进程的执行流创建承载线程
+    public static Thread newThread(Runnable body) {
+        return factory.newThread(body);
+    }
+
+    // 是否使用虚拟线程承载进程
+    public static boolean isVirtual() {
+        return virtual;
+    }
+
+    // JDK 21+ 上通过反射使用 Thread.ofVirtual()，否则回退为小栈的守护平台线程
+    private static ThreadFactory createFactory() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Method factoryMethod = Class.forName("java.lang.Thread$Builder").getMethod("factory");
+            ThreadFactory virtualFactory = (ThreadFactory) factoryMethod.invoke(builder);
+            virtual = true;
+            return virtualFactory;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            virtual = false;
+            return body -> {
+                Thread thread = new Thread(null, body, "process-" + threadSeq.incrementAndGet(), PLATFORM_STACK_SIZE);
+                thread.setDaemon(true);
+                return thread;
+            };
+        }
+    }
+}
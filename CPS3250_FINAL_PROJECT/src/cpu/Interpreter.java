@@ -0,0 +1,365 @@
+package cpu;
+
+import memory.PageTableEntry;
+import memory.PhysicalMemoryManager;
+import process.ProcessControlBlock;
+
+// 寄存器机解释器：在进程自己的执行流上逐条执行 process.text。寄存器就是所在 CPU 的 registers，
+// 切换进程时由 CPU.switchTo 与 IntrStack.context 互相复制；pc 放在局部变量中，陷入内核时写回 PC 寄存器。
+// 访存经过 CPU 的 tlb，以 PDBR 中的地址空间号为标签，未命中时查进程页表，缺页和写只读页交给内核处理。
+// 系统调用可能改动本进程的页表，返回后作废本地址空间的 TLB 表项
+public final class Interpreter implements Opcodes {
+    static final int PAGE_SHIFT = 12;
+    static final int PAGE_MASK = (1 << PAGE_SHIFT) - 1;
+
+    private final CPU cpu;
+    private final ProcessControlBlock process;
+    private final TrapHandler trap;
+    private final Tlb tlb;
+    private final PhysicalMemoryManager memory;
+    private int slice;
+    private int asid;
+
+    private Interpreter(CPU cpu, ProcessControlBlock process, TrapHandler trap) {
+        this.cpu = cpu;
+        this.process = process;
+        this.trap = trap;
+        this.tlb = cpu.tlb;
+        this.memory = cpu.memory;
+    }
+
+    // 在 cpu 上从 PC 寄存器开始执行，直到进程调用 exit 或异常终止，返回退出状态
+    public static int run(CPU cpu, ProcessControlBlock process, TrapHandler trap) {
+        return new Interpreter(cpu, process, trap).execute();
+    }
+
+    private int execute() {
+        final int[] code = process.text;
+        final int last = code.length - 1;
+        final int[] r = cpu.registers;
+        int pc = r[Context.PC];
+        asid = r[Context.PDBR];
+        slice = cpu.quantum;
+        int budget = slice;
+        if (last < 0) {
+            return terminate(EXIT_SIGSEGV, pc, budget);
+        }
+        while (true) {
+            if (--budget == 0) {
+                cpu.instructionsRetired += slice;
+                r[Context.PC] = pc;
+                trap.preempt(process);
+                // 换回来时寄存器已由 switchTo 恢复，地址空间号可能已换成新一代的
+                asid = r[Context.PDBR];
+                slice = cpu.quantum;
+                budget = slice;
+            }
+            // 取指时检查 pc（跳转目标可以是任意值）；最后一个字只能是不带立即数的指令
+            if (Integer.compareUnsigned(pc, last) >= 0
+                    && (pc != last || hasImmediate(code[pc] & 0xFF))) {
+                return terminate(EXIT_SIGSEGV, pc, budget);
+            }
+            int insn = code[pc];
+            int rd = (insn >>> 8) & 0xF;
+            int rs = (insn >>> 16) & 0xF;
+            int rt = (insn >>> 24) & 0xF;
+            switch (insn & 0xFF) {
+                case NOP:
+                    pc++;
+                    break;
+                case LI:
+                    r[rd] = code[pc + 1];
+                    pc += 2;
+                    break;
+                case MOV:
+                    r[rd] = r[rs];
+                    pc++;
+                    break;
+                case ADD:
+                    r[rd] = r[rs] + r[rt];
+                    pc++;
+                    break;
+                case SUB:
+                    r[rd] = r[rs] - r[rt];
+                    pc++;
+                    break;
+                case MUL:
+                    r[rd] = r[rs] * r[rt];
+                    pc++;
+                    break;
+                case DIV:
+                    if (r[rt] == 0) {
+                        return terminate(EXIT_SIGFPE, pc, budget);
+                    }
+                    r[rd] = r[rs] / r[rt];
+                    pc++;
+                    break;
+                case REM:
+                    if (r[rt] == 0) {
+                        return terminate(EXIT_SIGFPE, pc, budget);
+                    }
+                    r[rd] = r[rs] % r[rt];
+                    pc++;
+                    break;
+                case AND:
+                    r[rd] = r[rs] & r[rt];
+                    pc++;
+                    break;
+                case OR:
+                    r[rd] = r[rs] | r[rt];
+                    pc++;
+                    break;
+                case XOR:
+                    r[rd] = r[rs] ^ r[rt];
+                    pc++;
+                    break;
+                case SHL:
+                    r[rd] = r[rs] << r[rt];
+                    pc++;
+                    break;
+                case SHR:
+                    r[rd] = r[rs] >> r[rt];
+                    pc++;
+                    break;
+                case SLT:
+                    r[rd] = r[rs] < r[rt] ? 1 : 0;
+                    pc++;
+                    break;
+                case ADDI:
+                    r[rd] = r[rs] + code[pc + 1];
+                    pc += 2;
+                    break;
+                case LW: {
+                    int addr = r[rs] + code[pc + 1];
+                    if ((addr & 3) != 0) {
+                        return terminate(EXIT_SIGBUS, pc, budget);
+                    }
+                    byte[] page = readPage(addr);
+                    if (page == null) {
+                        return terminate(EXIT_SIGSEGV, pc, budget);
+                    }
+                    r[rd] = loadWord(page, addr & PAGE_MASK);
+                    pc += 2;
+                    break;
+                }
+                case SW: {
+                    int addr = r[rs] + code[pc + 1];
+                    if ((addr & 3) != 0) {
+                        return terminate(EXIT_SIGBUS, pc, budget);
+                    }
+                    if (!storeWord(addr, r[rd])) {
+                        return terminate(EXIT_SIGSEGV, pc, budget);
+                    }
+                    pc += 2;
+                    break;
+                }
+                case LB: {
+                    int addr = r[rs] + code[pc + 1];
+                    byte[] page = readPage(addr);
+                    if (page == null) {
+                        return terminate(EXIT_SIGSEGV, pc, budget);
+                    }
+                    r[rd] = page[addr & PAGE_MASK] & 0xFF;
+                    pc += 2;
+                    break;
+                }
+                case SB: {
+                    int addr = r[rs] + code[pc + 1];
+                    byte[] page = writePage(addr);
+                    if (page == null) {
+                        return terminate(EXIT_SIGSEGV, pc, budget);
+                    }
+                    page[addr & PAGE_MASK] = (byte) r[rd];
+                    pc += 2;
+                    break;
+                }
+                case BEQ:
+                    pc = r[rs] == r[rt] ? code[pc + 1] : pc + 2;
+                    break;
+                case BNE:
+                    pc = r[rs] != r[rt] ? code[pc + 1] : pc + 2;
+                    break;
+                case BLT:
+                    pc = r[rs] < r[rt] ? code[pc + 1] : pc + 2;
+                    break;
+                case BGE:
+                    pc = r[rs] >= r[rt] ? code[pc + 1] : pc + 2;
+                    break;
+                case JMP:
+                    pc = code[pc + 1];
+                    break;
+                case JAL:
+                    r[rd] = pc + 2;
+                    pc = code[pc + 1];
+                    break;
+                case JR:
+                    pc = r[rs];
+                    break;
+                case PUSH: {
+                    int sp = r[Context.SP] - 4;
+                    if (!storeWord(sp, r[rd])) {
+                        return terminate(EXIT_SIGSEGV, pc, budget);
+                    }
+                    r[Context.SP] = sp;
+                    pc++;
+                    break;
+                }
+                case POP: {
+                    int sp = r[Context.SP];
+                    byte[] page = (sp & 3) == 0 ? readPage(sp) : null;
+                    if (page == null) {
+                        return terminate(EXIT_SIGSEGV, pc, budget);
+                    }
+                    r[rd] = loadWord(page, sp & PAGE_MASK);
+                    r[Context.SP] = sp + 4;
+                    pc++;
+                    break;
+                }
+                case CALL: {
+                    int sp = r[Context.SP] - 4;
+                    if (!storeWord(sp, pc + 2)) {
+                        return terminate(EXIT_SIGSEGV, pc, budget);
+                    }
+                    r[Context.SP] = sp;
+                    pc = code[pc + 1];
+                    break;
+                }
+                case RET: {
+                    int sp = r[Context.SP];
+                    byte[] page = (sp & 3) == 0 ? readPage(sp) : null;
+                    if (page == null) {
+                        return terminate(EXIT_SIGSEGV, pc, budget);
+                    }
+                    r[Context.SP] = sp + 4;
+                    pc = loadWord(page, sp & PAGE_MASK);
+                    break;
+                }
+                case CMP: {
+                    int a = r[rs];
+                    int b = r[rt];
+                    r[Context.FLAGS] = (a == b ? Context.FLAG_ZERO : 0) | (a < b ? Context.FLAG_LESS : 0);
+                    pc++;
+                    break;
+                }
+                case JE:
+                    pc = (r[Context.FLAGS] & Context.FLAG_ZERO) != 0 ? code[pc + 1] : pc + 2;
+                    break;
+                case JNE:
+                    pc = (r[Context.FLAGS] & Context.FLAG_ZERO) == 0 ? code[pc + 1] : pc + 2;
+                    break;
+                case JL:
+                    pc = (r[Context.FLAGS] & Context.FLAG_LESS) != 0 ? code[pc + 1] : pc + 2;
+                    break;
+                case JGE:
+                    pc = (r[Context.FLAGS] & Context.FLAG_LESS) == 0 ? code[pc + 1] : pc + 2;
+                    break;
+                case SYSCALL: {
+                    int number = r[0];
+                    if (number == SYS_EXIT) {
+                        return terminate(r[1], pc + 1, budget);
+                    }
+                    // 进入内核前把上下文存入 IntrStack，fork 从这里复制给子进程
+                    r[Context.PC] = pc + 1;
+                    System.arraycopy(r, 0, process.kernelStack.intrStack.context, 0, Context.SIZE);
+                    r[0] = trap.syscall(process, number, r[1], r[2], r[3]);
+                    // 系统调用中可能阻塞或 fork 用完地址空间号，重新读取
+                    asid = r[Context.PDBR];
+                    tlb.flushAsid(asid);
+                    pc++;
+                    break;
+                }
+                default:
+                    return terminate(EXIT_SIGILL, pc, budget);
+            }
+        }
+    }
+
+    // 后面跟一个立即数的指令
+    private static boolean hasImmediate(int opcode) {
+        switch (opcode) {
+            case LI:
+            case ADDI:
+            case LW:
+            case SW:
+            case LB:
+            case SB:
+            case BEQ:
+            case BNE:
+            case BLT:
+            case BGE:
+            case JMP:
+            case JAL:
+            case CALL:
+            case JE:
+            case JNE:
+            case JL:
+            case JGE:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private int terminate(int status, int pc, int budget) {
+        cpu.instructionsRetired += slice - budget;
+        cpu.registers[Context.PC] = pc;
+        process.kernelStack.intrStack.context[Context.PC] = pc;
+        return status;
+    }
+
+    // 大端序读写一个字，调用者保证地址按 4 对齐
+    private static int loadWord(byte[] page, int o) {
+        return (page[o] << 24) | ((page[o + 1] & 0xFF) << 16) | ((page[o + 2] & 0xFF) << 8) | (page[o + 3] & 0xFF);
+    }
+
+    private boolean storeWord(int addr, int v) {
+        byte[] page = (addr & 3) == 0 ? writePage(addr) : null;
+        if (page == null) {
+            return false;
+        }
+        int o = addr & PAGE_MASK;
+        page[o] = (byte) (v >>> 24);
+        page[o + 1] = (byte) (v >>> 16);
+        page[o + 2] = (byte) (v >>> 8);
+        page[o + 3] = (byte) v;
+        return true;
+    }
+
+    private byte[] readPage(int addr) {
+        int vpn = addr >>> PAGE_SHIFT;
+        byte[] page = tlb.lookupRead(asid, vpn);
+        if (page != null) {
+            return page;
+        }
+        PageTableEntry entry = process.pageDirectory.getPageTableEntry(vpn << PAGE_SHIFT);
+        if (entry == null) {
+            if (!trap.pageFault(process, addr, false)) {
+                return null;
+            }
+            asid = cpu.registers[Context.PDBR];
+            entry = process.pageDirectory.getPageTableEntry(vpn << PAGE_SHIFT);
+        }
+        page = memory.readPhysicalMemory(entry.physicalAddress);
+        tlb.fillRead(asid, vpn, page);
+        return page;
+    }
+
+    private byte[] writePage(int addr) {
+        int vpn = addr >>> PAGE_SHIFT;
+        byte[] page = tlb.lookupWrite(asid, vpn);
+        if (page != null) {
+            return page;
+        }
+        PageTableEntry entry = process.pageDirectory.getPageTableEntry(vpn << PAGE_SHIFT);
+        if (entry == null || entry.readOnly) {
+            if (!trap.pageFault(process, addr, true)) {
+                return null;
+            }
+            asid = cpu.registers[Context.PDBR];
+            entry = process.pageDirectory.getPageTableEntry(vpn << PAGE_SHIFT);
+        }
+        page = memory.readPhysicalMemory(entry.physicalAddress);
+        tlb.fillWrite(asid, vpn, page);
+        return page;
+    }
+}
@@ -1,10 +1,20 @@
 package cpu;
 
+import java.util.Arrays;
+
 public class IntrStack {
     public int eax;
-    // 其他寄存器...
+    public int eip; // 返回用户态后执行的地址
+    public final int[] context = new int[Context.SIZE]; // 解释执行的进程换下 CPU 时保存的寄存器，布局见 Context
 
     public IntrStack() {
         // 初始化寄存器...
     }
+
+    // 回收复用前清空寄存器
+    public void reset() {
+        eax = 0;
+        eip = 0;
+        Arrays.fill(context, 0);
+    }
 }
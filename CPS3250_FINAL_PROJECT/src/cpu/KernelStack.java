@@ -3,4 +3,9 @@ package cpu;
 public class KernelStack {
     public IntrStack intrStack;
     public ThreadStack threadStack;
+
+    public void reset() {
+        intrStack = null;
+        threadStack = null;
+    }
 }
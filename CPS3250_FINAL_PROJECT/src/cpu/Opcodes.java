@@ -0,0 +1,60 @@
+package cpu;
+
+// 寄存器机指令集。每条指令一个 int：低 8 位操作码，其后依次是 rd、rs、rt 各 8 位；
+// 带立即数的指令（标 imm）后面再跟一个 int。跳转目标是 code 数组下标。
+// 访存地址为 rs + imm，按进程页表翻译，字访问须 4 字节对齐，按大端存放
+public interface Opcodes {
+    int NOP = 0;
+    int LI = 1;      // rd = imm
+    int MOV = 2;     // rd = rs
+    int ADD = 3;     // rd = rs + rt
+    int SUB = 4;
+    int MUL = 5;
+    int DIV = 6;     // 除数为 0 时进程以 SIGFPE 终止
+    int REM = 7;
+    int AND = 8;
+    int OR = 9;
+    int XOR = 10;
+    int SHL = 11;
+    int SHR = 12;    // 算术右移
+    int SLT = 13;    // rd = rs < rt ? 1 : 0
+    int ADDI = 14;   // rd = rs + imm
+    int LW = 15;     // rd = mem32[rs + imm]
+    int SW = 16;     // mem32[rs + imm] = rd
+    int LB = 17;     // rd = mem8[rs + imm]，无符号
+    int SB = 18;     // mem8[rs + imm] = rd
+    int BEQ = 19;    // rs == rt 时跳到 imm
+    int BNE = 20;
+    int BLT = 21;
+    int BGE = 22;
+    int JMP = 23;    // 跳到 imm
+    int JAL = 24;    // rd = 下一条指令，跳到 imm
+    int JR = 25;     // 跳到 rs
+    int SYSCALL = 26; // 系统调用号在 r0，参数在 r1..r3，返回值写回 r0
+    int PUSH = 27;   // sp -= 4; mem32[sp] = rd
+    int POP = 28;    // rd = mem32[sp]; sp += 4
+    int CALL = 29;   // 压入下一条指令的地址，跳到 imm
+    int RET = 30;    // 弹出返回地址并跳转
+    int CMP = 31;    // 按 rs 与 rt 的比较结果设置 FLAGS
+    int JE = 32;     // FLAGS 为相等时跳到 imm
+    int JNE = 33;
+    int JL = 34;     // 小于
+    int JGE = 35;
+
+    // 系统调用号
+    int SYS_EXIT = 1;    // exit(r1)
+    int SYS_FORK = 2;    // 父进程得到子进程 PID，子进程得到 0
+    int SYS_READ = 3;    // read(fd, vaddr, count)
+    int SYS_WRITE = 4;   // write(fd, vaddr, count)
+    int SYS_WAIT = 5;    // 等待任一子进程，返回其 PID，退出状态写到 r1 指向的字（r1 为 0 时不写）
+    int SYS_YIELD = 6;
+    int SYS_GETPID = 7;
+    int SYS_RING_SETUP = 8; // 建立 r1 项的系统调用队列，返回映射地址，布局见 process.SyscallRing
+    int SYS_RING_ENTER = 9; // 处理提交队列中的全部请求，返回处理的个数
+
+    // 异常终止时的退出状态（128 + 信号值）
+    int EXIT_SIGILL = 132;
+    int EXIT_SIGBUS = 135;
+    int EXIT_SIGFPE = 136;
+    int EXIT_SIGSEGV = 139;
+}
@@ -6,4 +6,8 @@ public class ThreadStack {
     public ThreadStack() {
         // 初始化...
     }
+
+    public void reset() {
+        eip = null;
+    }
 }
@@ -0,0 +1,82 @@
+package cpu;
+
+// 软件 TLB：直接映射，读、写各一组。标签由地址空间号和虚拟页号组成，
+// 开启标签时进程切换不必清空，不同进程的同一虚拟页落到不同槽位
+public final class Tlb {
+    public static final int SIZE = 256;
+    static final int PAGE_SHIFT = 12;
+
+    private final long[] readTags = new long[SIZE];
+    private final byte[][] readPages = new byte[SIZE][];
+    private final long[] writeTags = new long[SIZE];
+    private final byte[][] writePages = new byte[SIZE][];
+
+    // 统计，只由当前运行者更新
+    public long misses;
+    public long flushes;
+
+    public Tlb() {
+        flushAll();
+    }
+
+    static long tag(int asid, int vpn) {
+        return (long) asid << 32 | vpn;
+    }
+
+    // 地址空间号乘黄金分割常数后取高位作为偏移，各进程相同的低地址页分散到不同槽位
+    static int slot(int asid, int vpn) {
+        return (vpn + (asid * 0x9E3779B9 >>> 24)) & (SIZE - 1);
+    }
+
+    // 命中时返回页内容，否则返回 null
+    public byte[] lookupRead(int asid, int vpn) {
+        int slot = slot(asid, vpn);
+        return readTags[slot] == tag(asid, vpn) ? readPages[slot] : null;
+    }
+
+    public byte[] lookupWrite(int asid, int vpn) {
+        int slot = slot(asid, vpn);
+        return writeTags[slot] == tag(asid, vpn) ? writePages[slot] : null;
+    }
+
+    public void fillRead(int asid, int vpn, byte[] page) {
+        int slot = slot(asid, vpn);
+        readTags[slot] = tag(asid, vpn);
+        readPages[slot] = page;
+        misses++;
+    }
+
+    // 可写的页同时可读，读项一并更新（写时复制可能换了物理页）
+    public void fillWrite(int asid, int vpn, byte[] page) {
+        int slot = slot(asid, vpn);
+        writeTags[slot] = tag(asid, vpn);
+        writePages[slot] = page;
+        readTags[slot] = tag(asid, vpn);
+        readPages[slot] = page;
+        misses++;
+    }
+
+    public void flushAll() {
+        for (int i = 0; i < SIZE; i++) {
+            readTags[i] = -1;
+            writeTags[i] = -1;
+            readPages[i] = null;
+            writePages[i] = null;
+        }
+        flushes++;
+    }
+
+    // 作废一个地址空间的全部表项：它的页表变了，或地址空间号被重新分配
+    public void flushAsid(int asid) {
+        for (int i = 0; i < SIZE; i++) {
+            if (readTags[i] >>> 32 == asid) {
+                readTags[i] = -1;
+                readPages[i] = null;
+            }
+            if (writeTags[i] >>> 32 == asid) {
+                writeTags[i] = -1;
+                writePages[i] = null;
+            }
+        }
+    }
+}
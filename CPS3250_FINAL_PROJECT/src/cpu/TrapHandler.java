@@ -0,0 +1,15 @@
+package cpu;
+
+import process.ProcessControlBlock;
+
+// 解释器陷入内核的入口，由内核实现
+public interface TrapHandler {
+    // 缺页或写只读页。处理成功返回 true，非法访问返回 false
+    boolean pageFault(ProcessControlBlock process, int virtualAddress, boolean write);
+
+    // 系统调用，返回值写回 r0。调用前寄存器已保存到进程的 IntrStack，fork 的子进程从那里恢复
+    int syscall(ProcessControlBlock process, int number, int arg1, int arg2, int arg3);
+
+    // 时间片用完
+    void preempt(ProcessControlBlock process);
+}
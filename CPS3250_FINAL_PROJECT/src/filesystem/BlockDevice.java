@@ -0,0 +1,194 @@
+package filesystem;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+// 以磁盘映像文件为介质的模拟块设备。请求异步提交到调度器的队列，由设备线程逐批取出，
+// 按延迟模型休眠相应的服务时间后读写映像，再通知请求的提交者。
+// 同步的 BlockIO 接口提交请求后等待完成，供文件系统使用
+public class BlockDevice implements BlockIO {
+    public static final int MAX_MERGE_BLOCKS = 128;
+
+    private final DiskImage image;
+    private final int blockSize;
+    private final LatencyModel latency;
+    private final IoScheduler scheduler;
+    private final Object queueLock = new Object();
+    private final Thread worker;
+    private volatile boolean running = true;
+    private int head; // 磁头位置：上一批请求结束的块号
+
+    // 统计
+    public final LongAdder requests = new LongAdder();
+    public final LongAdder batches = new LongAdder();       // 设备实际访问次数
+    public final LongAdder blocksRead = new LongAdder();
+    public final LongAdder blocksWritten = new LongAdder();
+    public final LongAdder busyNanos = new LongAdder();      // 模拟的服务时间总和
+    public final LongAdder latencyNanos = new LongAdder();   // 请求从提交到完成的时间总和
+    private final long startNanos = System.nanoTime();
+
+    public BlockDevice(DiskImage image, int blockSize, LatencyModel latency, IoScheduler scheduler) {
+        this.image = image;
+        this.blockSize = blockSize;
+        this.latency = latency;
+        this.scheduler = scheduler;
+        this.worker = new Thread(this::serve, "blockdev-" + scheduler.name());
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    // 创建（或清空）映像文件作为设备介质
+    public static BlockDevice create(Path path, LatencyModel latency, IoScheduler scheduler) throws IOException {
+        return new BlockDevice(DiskImage.create(path, FileSystem.BLOCK_SIZE), FileSystem.BLOCK_SIZE, latency, scheduler);
+    }
+
+    public static BlockDevice open(Path path, LatencyModel latency, IoScheduler scheduler) throws IOException {
+        return new BlockDevice(DiskImage.open(path, FileSystem.BLOCK_SIZE), FileSystem.BLOCK_SIZE, latency, scheduler);
+    }
+
+    // 异步提交，立即返回。完成时调用 request.onComplete
+    public void submit(IoRequest request) {
+        long now = System.nanoTime();
+        request.submitNanos = now;
+        requests.increment();
+        synchronized (queueLock) {
+            scheduler.add(request, now);
+            queueLock.notify();
+        }
+    }
+
+    @Override
+    public void readBlock(int blockNo, byte[] buf) throws IOException {
+        IoRequest request = IoRequest.read(blockNo, buf);
+        submit(request);
+        request.await();
+    }
+
+    @Override
+    public void writeBlock(int blockNo, byte[] buf) throws IOException {
+        IoRequest request = IoRequest.write(blockNo, buf);
+        submit(request);
+        request.await();
+    }
+
+    @Override
+    public void writeRun(int startBlock, byte[][] blocks, int count) throws IOException {
+        byte[][] buffers = new byte[count][];
+        System.arraycopy(blocks, 0, buffers, 0, count);
+        IoRequest request = new IoRequest(startBlock, true, buffers);
+        submit(request);
+        request.await();
+    }
+
+    // 同步接口的请求都已完成，只需把映像落盘
+    @Override
+    public void force() throws IOException {
+        image.force();
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        synchronized (queueLock) {
+            queueLock.notify();
+        }
+        try {
+            worker.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        image.close();
+    }
+
+    public String schedulerName() {
+        return scheduler.name();
+    }
+
+    // 平均每次设备访问合并的请求数
+    public double mergeFactor() {
+        long b = batches.sum();
+        return b == 0 ? 0 : (double) requests.sum() / b;
+    }
+
+    public double avgLatencyMicros() {
+        long n = requests.sum();
+        return n == 0 ? 0 : latencyNanos.sum() / 1e3 / n;
+    }
+
+    public double utilization() {
+        return (double) busyNanos.sum() / (System.nanoTime() - startNanos);
+    }
+
+    public String stats() {
+        return String.format("scheduler=%s requests=%d batches=%d merge=%.2f read=%d written=%d "
+                        + "avgLatency=%.1fus busy=%.1fms",
+                scheduler.name(), requests.sum(), batches.sum(), mergeFactor(), blocksRead.sum(),
+                blocksWritten.sum(), avgLatencyMicros(), busyNanos.sum() / 1e6);
+    }
+
+    private void serve() {
+        while (true) {
+            List<IoRequest> batch;
+            synchronized (queueLock) {
+                while (running && scheduler.isEmpty()) {
+                    try {
+                        queueLock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (scheduler.isEmpty()) {
+                    return;
+                }
+                batch = scheduler.dispatch(head, System.nanoTime(), MAX_MERGE_BLOCKS);
+            }
+            execute(batch);
+        }
+    }
+
+    // 一批请求块号连续、方向相同，作为一次设备访问完成
+    private void execute(List<IoRequest> batch) {
+        IoRequest first = batch.get(0);
+        int count = 0;
+        for (IoRequest request : batch) {
+            count += request.count;
+        }
+        long service = latency.serviceNanos(head, first.blockNo, count, blockSize);
+        LockSupport.parkNanos(service);
+        busyNanos.add(service);
+        batches.increment();
+
+        IOException error = null;
+        try {
+            if (first.write) {
+                byte[][] buffers = new byte[count][];
+                int i = 0;
+                for (IoRequest request : batch) {
+                    for (byte[] buffer : request.buffers) {
+                        buffers[i++] = buffer;
+                    }
+                }
+                image.writeRun(first.blockNo, buffers, count);
+                blocksWritten.add(count);
+            } else {
+                int blockNo = first.blockNo;
+                for (IoRequest request : batch) {
+                    for (byte[] buffer : request.buffers) {
+                        image.readBlock(blockNo++, buffer);
+                    }
+                }
+                blocksRead.add(count);
+            }
+        } catch (IOException e) {
+            error = e;
+        }
+        head = first.blockNo + count;
+        for (IoRequest request : batch) {
+            request.complete(error);
+            latencyNanos.add(request.latencyNanos);
+        }
+    }
+}
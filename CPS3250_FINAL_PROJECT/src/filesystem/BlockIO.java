@@ -0,0 +1,33 @@
+package filesystem;
+
+import java.io.IOException;
+
+// 按块读写的存储设备
+public interface BlockIO {
+    void readBlock(int blockNo, byte[] buf) throws IOException;
+
+    void writeBlock(int blockNo, byte[] buf) throws IOException;
+
+    // 写入从 startBlock 开始的连续若干块，设备可以合并成一次写
+    default void writeRun(int startBlock, byte[][] blocks, int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            writeBlock(startBlock + i, blocks[i]);
+        }
+    }
+
+    // 文件数据由页缓存缓存，读写时不再经过块缓存，但仍要看到块缓存中较新的内容
+    default void readDirect(int blockNo, byte[] buf) throws IOException {
+        readBlock(blockNo, buf);
+    }
+
+    default void writeDirect(int blockNo, byte[] buf) throws IOException {
+        writeBlock(blockNo, buf);
+    }
+
+    // 把已写入的数据落盘
+    default void force() throws IOException {
+    }
+
+    default void close() throws IOException {
+    }
+}
@@ -0,0 +1,385 @@
+package filesystem;
+
+import utils.EventLog;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// 块缓冲区缓存：固定数量的缓冲区按块号散列索引，CLOCK 算法淘汰，写回式。
+// 每个缓冲区有自己的读写锁，多个 CPU 可以同时读同一块；脏块由后台刷写线程按块号排序后成批写回
+public class BufferCache implements BlockIO {
+    static final int LOG_FLUSH_FAILED = EventLog.define(EventLog.WARN, "Buffer cache flush failed: %s");
+
+    static class Buffer {
+        int blockNo = -1;
+        final byte[] data;
+        volatile boolean valid;   // data 中是否已是该块的内容
+        volatile boolean dirty;   // 是否有尚未写回的修改
+        boolean referenced;       // CLOCK 的访问位
+        int pinCount;             // 正在使用该缓冲区的操作数，大于 0 时不能淘汰
+        final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+        Buffer(int blockSize) {
+            this.data = new byte[blockSize];
+        }
+    }
+
+    private final BlockIO device;
+    private final int blockSize;
+    private final Buffer[] buffers;
+    private final Map<Integer, Buffer> index;  // 块号 -> 缓冲区，由 index 自身加锁保护
+    private int hand;                          // CLOCK 指针
+    private final AtomicInteger dirtyCount = new AtomicInteger();
+    private final int highWatermark;           // 脏块超过该数目时立即唤醒刷写线程
+
+    private final Object flushLock = new Object();   // 串行化刷写
+    private final Object flushSignal = new Object(); // 唤醒刷写线程
+    private final Thread flusher;
+    private final long flushIntervalMs;
+    private volatile boolean running = true;
+    // 挂载到内核时设为内核的日志，记录后台刷写的失败。未挂载时为 null，失败的块仍是脏的，close 时的写回会抛出异常
+    public volatile EventLog log;
+
+    // 统计
+    public final LongAdder hits = new LongAdder();
+    public final LongAdder misses = new LongAdder();
+    public final LongAdder evictions = new LongAdder();
+    public final LongAdder flushes = new LongAdder();      // 刷写批次数
+    public final LongAdder flushedBlocks = new LongAdder();
+    public final LongAdder flushNanos = new LongAdder();
+    public volatile long maxFlushNanos;
+
+    public BufferCache(BlockIO device, int blockSize, int capacity, long flushIntervalMs) {
+        this.device = device;
+        this.blockSize = blockSize;
+        this.buffers = new Buffer[capacity];
+        for (int i = 0; i < capacity; i++) {
+            buffers[i] = new Buffer(blockSize);
+        }
+        this.index = new HashMap<>(capacity * 2);
+        this.highWatermark = Math.max(1, capacity / 2);
+        this.flushIntervalMs = flushIntervalMs;
+        this.flusher = new Thread(this::flushLoop, "bcache-flusher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    @Override
+    public void readBlock(int blockNo, byte[] buf) throws IOException {
+        Buffer b = pin(blockNo);
+        try {
+            readBuffered(b, buf);
+        } finally {
+            unpin(b);
+        }
+    }
+
+    // 整块写入，不需要先从磁盘读出
+    @Override
+    public void writeBlock(int blockNo, byte[] buf) throws IOException {
+        Buffer b = pin(blockNo);
+        try {
+            writeBuffered(b, buf);
+        } finally {
+            unpin(b);
+        }
+        if (dirtyCount.get() > highWatermark) {
+            synchronized (flushSignal) {
+                flushSignal.notify();
+            }
+        }
+    }
+
+    // 块在缓存中时从缓冲区复制，否则直接读设备，不占用缓冲区
+    @Override
+    public void readDirect(int blockNo, byte[] buf) throws IOException {
+        Buffer b = pinIfCached(blockNo, false);
+        if (b == null) {
+            device.readBlock(blockNo, buf);
+            return;
+        }
+        try {
+            readBuffered(b, buf);
+        } finally {
+            unpin(b);
+        }
+    }
+
+    // 直接写设备并丢弃缓存中的旧副本，避免以后被刷写覆盖。缓冲区正被使用时改为写入缓冲区
+    @Override
+    public void writeDirect(int blockNo, byte[] buf) throws IOException {
+        Buffer b = pinIfCached(blockNo, true);
+        if (b == null) {
+            device.writeBlock(blockNo, buf);
+            return;
+        }
+        try {
+            writeBuffered(b, buf);
+        } finally {
+            unpin(b);
+        }
+    }
+
+    // 写回全部脏块并落盘
+    @Override
+    public void force() throws IOException {
+        flush();
+        device.force();
+    }
+
+    // 把当前所有脏块按块号排序，连续的块合并成一次写
+    public void flush() throws IOException {
+        synchronized (flushLock) {
+            List<Buffer> batch = new ArrayList<>();
+            synchronized (index) {
+                for (Buffer b : buffers) {
+                    if (b.dirty) {
+                        b.pinCount++;
+                        batch.add(b);
+                    }
+                }
+            }
+            if (batch.isEmpty()) {
+                return;
+            }
+            batch.sort((x, y) -> Integer.compare(x.blockNo, y.blockNo));
+            long start = System.nanoTime();
+            byte[][] run = new byte[batch.size()][];
+            try {
+                int i = 0;
+                while (i < batch.size()) {
+                    int j = i;
+                    while (j + 1 < batch.size() && batch.get(j + 1).blockNo == batch.get(j).blockNo + 1) {
+                        j++;
+                    }
+                    for (int k = i; k <= j; k++) {
+                        run[k - i] = snapshot(batch.get(k));
+                    }
+                    try {
+                        device.writeRun(batch.get(i).blockNo, run, j - i + 1);
+                    } catch (IOException e) {
+                        // 写失败的块重新标脏，留给下一次刷写
+                        for (int k = i; k <= j; k++) {
+                            markDirty(batch.get(k));
+                        }
+                        throw e;
+                    }
+                    i = j + 1;
+                }
+            } finally {
+                synchronized (index) {
+                    for (Buffer b : batch) {
+                        b.pinCount--;
+                    }
+                }
+            }
+            long elapsed = System.nanoTime() - start;
+            flushes.increment();
+            flushedBlocks.add(batch.size());
+            flushNanos.add(elapsed);
+            if (elapsed > maxFlushNanos) {
+                maxFlushNanos = elapsed;
+            }
+        }
+    }
+
+    // 停止刷写线程并写回全部脏块
+    public void close() throws IOException {
+        running = false;
+        synchronized (flushSignal) {
+            flushSignal.notify();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        force();
+    }
+
+    public double hitRatio() {
+        long h = hits.sum();
+        long total = h + misses.sum();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    public double avgFlushMicros() {
+        long n = flushes.sum();
+        return n == 0 ? 0 : flushNanos.sum() / 1e3 / n;
+    }
+
+    public int dirtyBlocks() {
+        return dirtyCount.get();
+    }
+
+    public String stats() {
+        return String.format("hits=%d misses=%d hitRatio=%.3f evictions=%d flushes=%d flushedBlocks=%d "
+                        + "avgFlush=%.1fus maxFlush=%.1fus",
+                hits.sum(), misses.sum(), hitRatio(), evictions.sum(), flushes.sum(), flushedBlocks.sum(),
+                avgFlushMicros(), maxFlushNanos / 1e3);
+    }
+
+    // 取得块对应的缓冲区并固定，未命中时用 CLOCK 选出一个未固定的缓冲区替换
+    private Buffer pin(int blockNo) throws IOException {
+        synchronized (index) {
+            Buffer b = index.get(blockNo);
+            if (b != null) {
+                b.pinCount++;
+                b.referenced = true;
+                hits.increment();
+                return b;
+            }
+            misses.increment();
+            b = evict();
+            b.blockNo = blockNo;
+            b.valid = false;
+            b.referenced = true;
+            b.pinCount = 1;
+            index.put(blockNo, b);
+            return b;
+        }
+    }
+
+    // 块已在缓存中时固定并返回缓冲区；discard 为 true 时未被使用的缓冲区直接丢弃，返回 null
+    private Buffer pinIfCached(int blockNo, boolean discard) {
+        synchronized (index) {
+            Buffer b = index.get(blockNo);
+            if (b == null) {
+                return null;
+            }
+            if (discard && b.pinCount == 0) {
+                index.remove(blockNo);
+                if (b.dirty) {
+                    b.dirty = false;
+                    dirtyCount.decrementAndGet();
+                }
+                b.blockNo = -1;
+                b.valid = false;
+                b.referenced = false;
+                return null;
+            }
+            b.pinCount++;
+            return b;
+        }
+    }
+
+    private void readBuffered(Buffer b, byte[] buf) throws IOException {
+        if (!b.valid) {
+            b.lock.writeLock().lock();
+            try {
+                if (!b.valid) {
+                    device.readBlock(b.blockNo, b.data);
+                    b.valid = true;
+                }
+            } finally {
+                b.lock.writeLock().unlock();
+            }
+        }
+        b.lock.readLock().lock();
+        try {
+            System.arraycopy(b.data, 0, buf, 0, blockSize);
+        } finally {
+            b.lock.readLock().unlock();
+        }
+    }
+
+    private void writeBuffered(Buffer b, byte[] buf) {
+        b.lock.writeLock().lock();
+        try {
+            System.arraycopy(buf, 0, b.data, 0, blockSize);
+            b.valid = true;
+            if (!b.dirty) {
+                b.dirty = true;
+                dirtyCount.incrementAndGet();
+            }
+        } finally {
+            b.lock.writeLock().unlock();
+        }
+    }
+
+    private void unpin(Buffer b) {
+        synchronized (index) {
+            b.pinCount--;
+        }
+    }
+
+    // 调用时持有 index 锁。被淘汰的脏块先写回
+    private Buffer evict() throws IOException {
+        for (int scanned = 0; scanned < 2 * buffers.length; scanned++) {
+            Buffer b = buffers[hand];
+            hand = (hand + 1) % buffers.length;
+            if (b.pinCount > 0) {
+                continue;
+            }
+            if (b.referenced) {
+                b.referenced = false;
+                continue;
+            }
+            if (b.blockNo != -1) {
+                if (b.dirty) {
+                    device.writeBlock(b.blockNo, b.data);
+                    b.dirty = false;
+                    dirtyCount.decrementAndGet();
+                }
+                index.remove(b.blockNo);
+                evictions.increment();
+            }
+            return b;
+        }
+        throw new IOException("All " + buffers.length + " buffers are in use");
+    }
+
+    // 复制缓冲区内容并清除脏位；复制之后的写入会重新标脏
+    private byte[] snapshot(Buffer b) {
+        byte[] copy = new byte[blockSize];
+        b.lock.writeLock().lock();
+        try {
+            System.arraycopy(b.data, 0, copy, 0, blockSize);
+            if (b.dirty) {
+                b.dirty = false;
+                dirtyCount.decrementAndGet();
+            }
+        } finally {
+            b.lock.writeLock().unlock();
+        }
+        return copy;
+    }
+
+    private void markDirty(Buffer b) {
+        b.lock.writeLock().lock();
+        try {
+            if (!b.dirty) {
+                b.dirty = true;
+                dirtyCount.incrementAndGet();
+            }
+        } finally {
+            b.lock.writeLock().unlock();
+        }
+    }
+
+    private void flushLoop() {
+        while (running) {
+            synchronized (flushSignal) {
+                try {
+                    flushSignal.wait(flushIntervalMs);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+            try {
+                flush();
+            } catch (IOException e) {
+                EventLog log = this.log;
+                if (log != null) {
+                    log.emit(LOG_FLUSH_FAILED, e.getMessage());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package filesystem;
+
+import java.util.List;
+
+// C-LOOK 电梯：磁头只向块号增大的方向扫描，前方没有请求时跳回最小块号
+public class CLookScheduler implements IoScheduler {
+    private final RequestTree requests = new RequestTree();
+
+    @Override
+    public void add(IoRequest request, long now) {
+        requests.add(request);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return requests.isEmpty();
+    }
+
+    @Override
+    public List<IoRequest> dispatch(int head, long now, int maxBlocks) {
+        return requests.takeRun(requests.ceilingOrFirst(head), maxBlocks);
+    }
+
+    @Override
+    public String name() {
+        return "clook";
+    }
+}
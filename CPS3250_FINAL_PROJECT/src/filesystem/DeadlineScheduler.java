@@ -0,0 +1,76 @@
+package filesystem;
+
+import java.util.ArrayDeque;
+import java.util.List;
+
+// deadline 调度：读写分别按块号排序并按到达顺序排队。平时按块号单向扫描，
+// 队首请求超过期限时先服务它；读优先，但写连续让步 WRITES_STARVED 批后必须服务一次写
+public class DeadlineScheduler implements IoScheduler {
+    public static final long DEFAULT_READ_EXPIRE_NANOS = 500_000_000;  // 与 Linux deadline 的默认值相同
+    public static final long DEFAULT_WRITE_EXPIRE_NANOS = 5_000_000_000L;
+    public static final int WRITES_STARVED = 2;
+
+    private final long readExpireNanos;
+    private final long writeExpireNanos;
+    private final RequestTree[] sorted = {new RequestTree(), new RequestTree()}; // 0 读 1 写
+    private final ArrayDeque<IoRequest>[] fifo;
+    private int starved; // 有写等待时连续服务读的批数
+
+    public DeadlineScheduler() {
+        this(DEFAULT_READ_EXPIRE_NANOS, DEFAULT_WRITE_EXPIRE_NANOS);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public DeadlineScheduler(long readExpireNanos, long writeExpireNanos) {
+        this.readExpireNanos = readExpireNanos;
+        this.writeExpireNanos = writeExpireNanos;
+        this.fifo = new ArrayDeque[]{new ArrayDeque<IoRequest>(), new ArrayDeque<IoRequest>()};
+    }
+
+    @Override
+    public void add(IoRequest request, long now) {
+        int dir = request.write ? 1 : 0;
+        request.dispatched = false;
+        request.deadlineNanos = now + (request.write ? writeExpireNanos : readExpireNanos);
+        sorted[dir].add(request);
+        fifo[dir].add(request);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return sorted[0].isEmpty() && sorted[1].isEmpty();
+    }
+
+    @Override
+    public List<IoRequest> dispatch(int head, long now, int maxBlocks) {
+        int dir;
+        if (!sorted[0].isEmpty() && (sorted[1].isEmpty() || starved < WRITES_STARVED)) {
+            dir = 0;
+            starved = sorted[1].isEmpty() ? 0 : starved + 1;
+        } else {
+            dir = 1;
+            starved = 0;
+        }
+
+        IoRequest oldest = oldest(dir);
+        IoRequest first = oldest.deadlineNanos <= now ? oldest : sorted[dir].ceilingOrFirst(head);
+        List<IoRequest> batch = sorted[dir].takeRun(first, maxBlocks);
+        for (IoRequest request : batch) {
+            request.dispatched = true;
+        }
+        return batch;
+    }
+
+    // FIFO 中最早到达且尚未被服务的请求，已服务的惰性删除
+    private IoRequest oldest(int dir) {
+        while (fifo[dir].peek().dispatched) {
+            fifo[dir].poll();
+        }
+        return fifo[dir].peek();
+    }
+
+    @Override
+    public String name() {
+        return "deadline";
+    }
+}
@@ -0,0 +1,79 @@
+package filesystem;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+// 以普通文件模拟的磁盘，第 n 块位于文件偏移 n * blockSize 处
+public class DiskImage implements BlockIO {
+    private final FileChannel channel;
+    private final int blockSize;
+
+    private DiskImage(FileChannel channel, int blockSize) {
+        this.channel = channel;
+        this.blockSize = blockSize;
+    }
+
+    // 创建（或清空）映像文件
+    public static DiskImage create(Path path, int blockSize) throws IOException {
+        return new DiskImage(FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING), blockSize);
+    }
+
+    public static DiskImage open(Path path, int blockSize) throws IOException {
+        return new DiskImage(FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE), blockSize);
+    }
+
+    @Override
+    public void readBlock(int blockNo, byte[] buf) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(buf, 0, blockSize);
+        long position = (long) blockNo * blockSize;
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                // 超出文件末尾的部分读作 0
+                Arrays.fill(buf, buffer.position(), blockSize, (byte) 0);
+                break;
+            }
+        }
+    }
+
+    @Override
+    public void writeBlock(int blockNo, byte[] buf) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(buf, 0, blockSize);
+        long position = (long) blockNo * blockSize;
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+
+    // 连续的块用一次定位写完成
+    @Override
+    public void writeRun(int startBlock, byte[][] blocks, int count) throws IOException {
+        if (count == 1) {
+            writeBlock(startBlock, blocks[0]);
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(count * blockSize);
+        for (int i = 0; i < count; i++) {
+            buffer.put(blocks[i], 0, blockSize);
+        }
+        buffer.flip();
+        long position = (long) startBlock * blockSize;
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+
+    @Override
+    public void force() throws IOException {
+        channel.force(false);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
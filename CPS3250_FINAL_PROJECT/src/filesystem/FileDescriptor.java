@@ -1,13 +1,19 @@
 package filesystem;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
+// 系统打开文件表中的一项，fork 后父子进程共享同一项，因而共享文件指针
 public class FileDescriptor {
     public Inode inode;
     public int position; // 文件指针位置
     public int flags;    // 打开文件的标志，例如只读、读写等
+    public final AtomicInteger refCount; // 引用本项的进程文件描述符个数
+    public final Readahead readahead = new Readahead(); // 顺序读检测与预读窗口，fork 后父子共享
 
     public FileDescriptor(Inode inode, int position, int flags) {
         this.inode = inode;
         this.position = position;
         this.flags = flags;
+        this.refCount = new AtomicInteger(1);
     }
 }
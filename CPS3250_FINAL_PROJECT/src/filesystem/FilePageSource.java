@@ -0,0 +1,49 @@
+package filesystem;
+
+import memory.PageSource;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+// 文件映射的后备数据：缺页时直接映射页缓存中的物理页，与 read/write 看到同一份数据。
+// 每个映射它的地址空间各持有 inode 的一次打开引用，由内核在映射、fork、解除映射时增减
+public class FilePageSource implements PageSource {
+    private final FileSystem fs;
+    public final Inode inode;
+
+    public FilePageSource(Inode inode) {
+        this.fs = inode.fs;
+        this.inode = inode;
+    }
+
+    @Override
+    public void readPage(long offset, byte[] page) {
+        try {
+            int n = fs.read(inode, (int) offset, page, 0, page.length);
+            for (int i = n; i < page.length; i++) {
+                page[i] = 0;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public int sharedFrame(long offset) {
+        try {
+            return fs.mapPage(inode, (int) (offset / FileSystem.BLOCK_SIZE));
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    @Override
+    public boolean markDirty(long offset) {
+        try {
+            fs.pageWritten(inode, (int) (offset / FileSystem.BLOCK_SIZE));
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,790 @@
+package filesystem;
+
+import memory.PhysicalMemoryManager;
+import process.Bitmap;
+import utils.Constants;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// 保存在磁盘映像文件中的 inode 文件系统。
+// 元数据和目录经由缓冲区缓存读写；普通文件的数据由页缓存缓存，与文件映射共用物理页
+public class FileSystem {
+    public static final int BLOCK_SIZE = Constants.PG_SIZE;
+    public static final int INODE_SIZE = 128;
+    public static final int INODES_PER_BLOCK = BLOCK_SIZE / INODE_SIZE;
+    public static final int POINTERS_PER_BLOCK = BLOCK_SIZE / 4;
+    public static final int DIR_ENTRY_SIZE = 32;
+    public static final int MAX_FILE_NAME_LEN = 24;
+    public static final int ROOT_INO = 0;
+
+    // 打开标志
+    public static final int O_RDONLY = 0;
+    public static final int O_WRONLY = 1;
+    public static final int O_RDWR = 2;
+    public static final int O_CREAT = 4;
+
+    public static final int DEFAULT_CACHE_BLOCKS = 1024;
+    public static final long FLUSH_INTERVAL_MS = 100;
+    public static final int DEFAULT_PAGE_CACHE_PAGES = 4096;
+
+    public final BlockIO device;        // 磁盘映像或模拟块设备
+    public final PhysicalMemoryManager memory; // 页缓存的物理页所在的内存，即挂载它的内核的内存
+    private final BlockIO blocks;       // 块读写入口：有缓存时是缓冲区缓存，否则直接读写设备
+    public final BufferCache cache;     // 未启用缓存时为 null
+    public final PageCache pageCache;
+    public final SuperBlock superBlock;
+    private final Bitmap blockBitmap;
+    private final Bitmap inodeBitmap;
+    private final Map<Integer, Inode> openInodes = new HashMap<>(); // 已打开的 inode
+    // read 只需读锁，多个 CPU 可以同时读文件；其余操作持写锁
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // 异步预读在后台线程中把页调入页缓存
+    private final ExecutorService readaheadExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "readahead");
+        thread.setDaemon(true);
+        return thread;
+    });
+    public volatile boolean readaheadEnabled = true;
+
+    private FileSystem(PhysicalMemoryManager memory, BlockIO device, SuperBlock superBlock, int cacheBlocks) {
+        this.memory = memory;
+        this.device = device;
+        this.cache = cacheBlocks > 0 ? new BufferCache(device, BLOCK_SIZE, cacheBlocks, FLUSH_INTERVAL_MS) : null;
+        this.blocks = cache != null ? cache : device;
+        this.pageCache = new PageCache(blocks, memory, DEFAULT_PAGE_CACHE_PAGES);
+        this.superBlock = superBlock;
+        this.blockBitmap = new Bitmap((superBlock.totalBlocks + 7) / 8);
+        this.inodeBitmap = new Bitmap((superBlock.inodeCount + 7) / 8);
+    }
+
+    public static FileSystem format(PhysicalMemoryManager memory, Path path, int totalBlocks, int inodeCount)
+            throws IOException {
+        return format(memory, path, totalBlocks, inodeCount, DEFAULT_CACHE_BLOCKS);
+    }
+
+    // 在 path 上创建新的文件系统，只有根目录。cacheBlocks 为 0 时不使用缓冲区缓存
+    public static FileSystem format(PhysicalMemoryManager memory, Path path, int totalBlocks, int inodeCount,
+                                    int cacheBlocks) throws IOException {
+        if (SuperBlock.layout(totalBlocks, inodeCount).dataStart >= totalBlocks) {
+            throw new IOException("Image too small for " + inodeCount + " inodes");
+        }
+        return format(memory, DiskImage.create(path, BLOCK_SIZE), totalBlocks, inodeCount, cacheBlocks);
+    }
+
+    // 在块设备上创建新的文件系统
+    public static FileSystem format(PhysicalMemoryManager memory, BlockIO device, int totalBlocks, int inodeCount,
+                                    int cacheBlocks) throws IOException {
+        SuperBlock superBlock = SuperBlock.layout(totalBlocks, inodeCount);
+        if (superBlock.dataStart >= totalBlocks) {
+            device.close();
+            throw new IOException("Image too small for " + inodeCount + " inodes");
+        }
+        device.writeBlock(totalBlocks - 1, new byte[BLOCK_SIZE]); // 预先扩展映像文件
+        FileSystem fs = new FileSystem(memory, device, superBlock, cacheBlocks);
+
+        byte[] block = new byte[BLOCK_SIZE];
+        superBlock.writeTo(ByteBuffer.wrap(block));
+        fs.writeBlock(0, block);
+
+        // 元数据块和位图末尾多出的位标记为已占用
+        fs.blockBitmap.setRange(0, superBlock.dataStart);
+        fs.markPadding(fs.blockBitmap, totalBlocks);
+        fs.markPadding(fs.inodeBitmap, inodeCount);
+        fs.inodeBitmap.set(ROOT_INO);
+        for (int i = 0; i < superBlock.blockBitmapBlocks; i++) {
+            fs.syncBitmap(fs.blockBitmap, superBlock.blockBitmapStart, i * BLOCK_SIZE * 8);
+        }
+        for (int i = 0; i < superBlock.inodeBitmapBlocks; i++) {
+            fs.syncBitmap(fs.inodeBitmap, superBlock.inodeBitmapStart, i * BLOCK_SIZE * 8);
+        }
+
+        // 根目录
+        Inode root = new Inode(fs, ROOT_INO);
+        root.type = Inode.FT_DIRECTORY;
+        root.linkCount = 1;
+        fs.writeInode(root);
+        return fs;
+    }
+
+    public static FileSystem mount(PhysicalMemoryManager memory, Path path) throws IOException {
+        return mount(memory, path, DEFAULT_CACHE_BLOCKS);
+    }
+
+    // 挂载已有的磁盘映像
+    public static FileSystem mount(PhysicalMemoryManager memory, Path path, int cacheBlocks) throws IOException {
+        return mount(memory, DiskImage.open(path, BLOCK_SIZE), cacheBlocks);
+    }
+
+    public static FileSystem mount(PhysicalMemoryManager memory, BlockIO device, int cacheBlocks) throws IOException {
+        byte[] block = new byte[BLOCK_SIZE];
+        device.readBlock(0, block);
+        SuperBlock superBlock = SuperBlock.readFrom(ByteBuffer.wrap(block));
+        if (superBlock.magic != SuperBlock.MAGIC) {
+            device.close();
+            throw new IOException("Not a file system image");
+        }
+        FileSystem fs = new FileSystem(memory, device, superBlock, cacheBlocks);
+        fs.loadBitmap(fs.blockBitmap, superBlock.blockBitmapStart, superBlock.blockBitmapBlocks);
+        fs.loadBitmap(fs.inodeBitmap, superBlock.inodeBitmapStart, superBlock.inodeBitmapBlocks);
+        return fs;
+    }
+
+    // 写回缓存中的脏页和脏块并落盘
+    public void sync() throws IOException {
+        lock.writeLock().lock();
+        try {
+            pageCache.writeBack();
+            blocks.force();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void close() throws IOException {
+        readaheadExecutor.shutdown();
+        try {
+            readaheadExecutor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        lock.writeLock().lock();
+        try {
+            pageCache.writeBack();
+            if (cache != null) {
+                cache.close();
+            }
+            device.force();
+            device.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // 按路径打开文件，带 O_CREAT 时不存在则创建。路径不存在或不是普通文件时返回 null
+    public Inode open(String path, int flags) throws IOException {
+        lock.writeLock().lock();
+        try {
+            String[] names = splitPath(path);
+            if (names.length == 0) {
+                return null;
+            }
+            int parentIno = walk(names, names.length - 1);
+            if (parentIno == -1) {
+                return null;
+            }
+            Inode parent = inodeOpen(parentIno);
+            try {
+                String name = names[names.length - 1];
+                int ino = dirLookup(parent, name);
+                if (ino == -1) {
+                    if ((flags & O_CREAT) == 0) {
+                        return null;
+                    }
+                    Inode inode = createInode(Inode.FT_REGULAR);
+                    if (inode == null) {
+                        return null;
+                    }
+                    dirAdd(parent, name, inode.ino, Inode.FT_REGULAR);
+                    return inode;
+                }
+                Inode inode = inodeOpen(ino);
+                if (inode.isDirectory()) {
+                    inodeClose(inode);
+                    return null;
+                }
+                return inode;
+            } finally {
+                inodeClose(parent);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // 创建目录，已存在或上级目录不存在时返回 false
+    public boolean mkdir(String path) throws IOException {
+        lock.writeLock().lock();
+        try {
+            String[] names = splitPath(path);
+            int parentIno = names.length == 0 ? -1 : walk(names, names.length - 1);
+            if (parentIno == -1) {
+                return false;
+            }
+            Inode parent = inodeOpen(parentIno);
+            try {
+                String name = names[names.length - 1];
+                if (dirLookup(parent, name) != -1) {
+                    return false;
+                }
+                Inode dir = createInode(Inode.FT_DIRECTORY);
+                if (dir == null) {
+                    return false;
+                }
+                dirAdd(parent, name, dir.ino, Inode.FT_DIRECTORY);
+                inodeClose(dir);
+                return true;
+            } finally {
+                inodeClose(parent);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // 删除普通文件的目录项；文件仍被打开时，数据块在最后一次关闭时释放
+    public boolean unlink(String path) throws IOException {
+        lock.writeLock().lock();
+        try {
+            String[] names = splitPath(path);
+            int parentIno = names.length == 0 ? -1 : walk(names, names.length - 1);
+            if (parentIno == -1) {
+                return false;
+            }
+            Inode parent = inodeOpen(parentIno);
+            try {
+                int ino = dirLookup(parent, names[names.length - 1]);
+                if (ino == -1) {
+                    return false;
+                }
+                Inode inode = inodeOpen(ino);
+                if (inode.isDirectory()) {
+                    inodeClose(inode);
+                    return false;
+                }
+                dirRemove(parent, names[names.length - 1]);
+                inode.linkCount--;
+                writeInode(inode);
+                inodeClose(inode);
+                return true;
+            } finally {
+                inodeClose(parent);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // 打开 inode：已在内存中则增加打开数，否则从 inode 表读入
+    public Inode inodeOpen(int ino) throws IOException {
+        lock.writeLock().lock();
+        try {
+            Inode inode = openInodes.get(ino);
+            if (inode != null) {
+                inode.openCount.incrementAndGet();
+                return inode;
+            }
+            inode = new Inode(this, ino);
+            readInode(inode);
+            openInodes.put(ino, inode);
+            return inode;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // 为已打开的 inode 再增加一次打开数，用于文件映射这类不经过打开文件表而持有 inode 的引用，用 inodeClose 归还
+    public void inodeDup(Inode inode) {
+        lock.writeLock().lock();
+        try {
+            inode.openCount.incrementAndGet();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // 关闭 inode：最后一次关闭时移出内存，已无目录项引用的文件在此释放
+    public void inodeClose(Inode inode) throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (inode.openCount.decrementAndGet() > 0) {
+                return;
+            }
+            openInodes.remove(inode.ino);
+            if (inode.linkCount == 0) {
+                truncate(inode);
+                inodeBitmap.clear(inode.ino);
+                syncBitmap(inodeBitmap, superBlock.inodeBitmapStart, inode.ino);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // 从文件的 position 处读取最多 len 字节到 buf[off..]，返回读到的字节数，文件末尾返回 0
+    public int read(Inode inode, int position, byte[] buf, int off, int len) throws IOException {
+        lock.readLock().lock();
+        try {
+            if (position >= inode.size || len <= 0) {
+                return 0;
+            }
+            len = Math.min(len, inode.size - position);
+            byte[] block = new byte[BLOCK_SIZE];
+            int done = 0;
+            while (done < len) {
+                int pos = position + done;
+                int blockOffset = pos % BLOCK_SIZE;
+                int chunk = Math.min(BLOCK_SIZE - blockOffset, len - done);
+                if (inode.type == Inode.FT_REGULAR) {
+                    int frame = pageFrame(inode, pos / BLOCK_SIZE, false);
+                    try {
+                        System.arraycopy(memory.readPhysicalMemory(frame), blockOffset,
+                                buf, off + done, chunk);
+                    } finally {
+                        pageCache.release(frame);
+                    }
+                    done += chunk;
+                    continue;
+                }
+                int blockNo = blockMap(inode, pos / BLOCK_SIZE, false);
+                if (blockNo == 0) {
+                    // 空洞读作 0
+                    Arrays.fill(buf, off + done, off + done + chunk, (byte) 0);
+                } else {
+                    readBlock(blockNo, block);
+                    System.arraycopy(block, blockOffset, buf, off + done, chunk);
+                }
+                done += chunk;
+            }
+            return done;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // 把 buf[off..off + len) 写到文件的 position 处，按需分配数据块，返回写入的字节数
+    public int write(Inode inode, int position, byte[] buf, int off, int len) throws IOException {
+        lock.writeLock().lock();
+        try {
+            byte[] block = new byte[BLOCK_SIZE];
+            int done = 0;
+            while (done < len) {
+                int pos = position + done;
+                int blockOffset = pos % BLOCK_SIZE;
+                int chunk = Math.min(BLOCK_SIZE - blockOffset, len - done);
+                if (inode.type == Inode.FT_REGULAR) {
+                    // 先取得页再分配块，新分配的块在写回之前不会被读取
+                    int idx = pos / BLOCK_SIZE;
+                    int frame = pageFrame(inode, idx, chunk == BLOCK_SIZE);
+                    try {
+                        int blockNo = blockMap(inode, idx, true);
+                        System.arraycopy(buf, off + done, memory.readPhysicalMemory(frame),
+                                blockOffset, chunk);
+                        pageCache.markDirty(inode.ino, idx, blockNo);
+                    } finally {
+                        pageCache.release(frame);
+                    }
+                    done += chunk;
+                    continue;
+                }
+                int blockNo = blockMap(inode, pos / BLOCK_SIZE, true);
+                if (chunk < BLOCK_SIZE) {
+                    // 不满一块时先读出原内容
+                    readBlock(blockNo, block);
+                }
+                System.arraycopy(buf, off + done, block, blockOffset, chunk);
+                writeBlock(blockNo, block);
+                done += chunk;
+            }
+            if (position + done > inode.size) {
+                inode.size = position + done;
+            }
+            writeInode(inode);
+            return done;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // 异步预读普通文件的 [start, start + count) 页，超出文件末尾和空洞的页跳过。
+    // 每页单独持读锁，预读期间写操作仍可进行
+    public void readahead(Inode inode, int start, int count) {
+        if (!readaheadEnabled || inode.type != Inode.FT_REGULAR) {
+            return;
+        }
+        readaheadExecutor.execute(() -> {
+            for (int idx = start; idx < start + count; idx++) {
+                lock.readLock().lock();
+                try {
+                    // 文件已被关闭或读到末尾时停止
+                    if (inode.openCount.get() == 0 || (long) idx * BLOCK_SIZE >= inode.size) {
+                        return;
+                    }
+                    if (pageCache.contains(inode.ino, idx)) {
+                        continue;
+                    }
+                    int blockNo = blockMap(inode, idx, false);
+                    if (blockNo != 0) {
+                        pageCache.prefetch(inode.ino, idx, blockNo);
+                    }
+                } catch (IOException e) {
+                    // 预读失败不影响之后的正常读
+                    return;
+                } finally {
+                    lock.readLock().unlock();
+                }
+            }
+        });
+    }
+
+    // 文件映射缺页：返回文件第 index 页所在的物理页，其引用计数已为新的页表项增加
+    public int mapPage(Inode inode, int index) throws IOException {
+        lock.readLock().lock();
+        try {
+            return pageFrame(inode, index, false);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // 共享映射写入了第 index 页：为它分配磁盘块并标脏，之后随页缓存写回
+    public void pageWritten(Inode inode, int index) throws IOException {
+        lock.writeLock().lock();
+        try {
+            int blockNo = blockMap(inode, index, true);
+            writeInode(inode);
+            pageCache.markDirty(inode.ino, index, blockNo);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // 列出目录中的文件名
+    public List<String> list(String path) throws IOException {
+        lock.writeLock().lock();
+        try {
+            String[] names = splitPath(path);
+            int ino = walk(names, names.length);
+            List<String> result = new ArrayList<>();
+            if (ino == -1) {
+                return result;
+            }
+            Inode dir = inodeOpen(ino);
+            try {
+                byte[] entry = new byte[DIR_ENTRY_SIZE];
+                for (int pos = 0; pos < dir.size; pos += DIR_ENTRY_SIZE) {
+                    read(dir, pos, entry, 0, DIR_ENTRY_SIZE);
+                    ByteBuffer buffer = ByteBuffer.wrap(entry);
+                    buffer.getInt();
+                    if (buffer.getInt() != Inode.FT_UNKNOWN) {
+                        result.add(entryName(entry));
+                    }
+                }
+            } finally {
+                inodeClose(dir);
+            }
+            return result;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int freeBlocks() {
+        lock.readLock().lock();
+        try {
+            int free = 0;
+            for (int i = superBlock.dataStart; i < superBlock.totalBlocks; i++) {
+                if (!blockBitmap.test(i)) {
+                    free++;
+                }
+            }
+            return free;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // ---------- 块读写 ----------
+
+    void readBlock(int blockNo, byte[] buf) throws IOException {
+        blocks.readBlock(blockNo, buf);
+    }
+
+    void writeBlock(int blockNo, byte[] buf) throws IOException {
+        blocks.writeBlock(blockNo, buf);
+    }
+
+    // 普通文件第 index 页在页缓存中的物理页，增加一个引用后返回。wholePage 表示整页将被覆盖，不必读出
+    private int pageFrame(Inode inode, int index, boolean wholePage) throws IOException {
+        int frame = pageCache.acquire(inode.ino, index);
+        if (frame == -1) {
+            frame = pageCache.acquire(inode.ino, index, wholePage ? 0 : blockMap(inode, index, false));
+        }
+        return frame;
+    }
+
+    // ---------- 块分配 ----------
+
+    // zero 为 false 时不清零，用于普通文件的数据块，其内容总是由页缓存整页写回
+    private int allocBlock(boolean zero) throws IOException {
+        int blockNo = blockBitmap.scan(1);
+        if (blockNo == -1) {
+            throw new IOException("No free blocks");
+        }
+        blockBitmap.set(blockNo);
+        syncBitmap(blockBitmap, superBlock.blockBitmapStart, blockNo);
+        if (zero) {
+            writeBlock(blockNo, new byte[BLOCK_SIZE]);
+        }
+        return blockNo;
+    }
+
+    private void freeBlock(int blockNo) throws IOException {
+        blockBitmap.clear(blockNo);
+        syncBitmap(blockBitmap, superBlock.blockBitmapStart, blockNo);
+    }
+
+    // 文件内第 idx 块对应的磁盘块号，allocate 为 true 时按需分配，返回 0 表示空洞
+    private int blockMap(Inode inode, int idx, boolean allocate) throws IOException {
+        boolean zeroData = inode.type != Inode.FT_REGULAR;
+        if (idx < Inode.DIRECT_BLOCKS) {
+            if (inode.directBlocks[idx] == 0 && allocate) {
+                inode.directBlocks[idx] = allocBlock(zeroData);
+            }
+            return inode.directBlocks[idx];
+        }
+        idx -= Inode.DIRECT_BLOCKS;
+        if (idx < POINTERS_PER_BLOCK) {
+            if (inode.indirectBlock == 0) {
+                if (!allocate) {
+                    return 0;
+                }
+                inode.indirectBlock = allocBlock(true);
+            }
+            return pointerAt(inode.indirectBlock, idx, allocate, zeroData);
+        }
+        idx -= POINTERS_PER_BLOCK;
+        if (idx < POINTERS_PER_BLOCK * POINTERS_PER_BLOCK) {
+            if (inode.doubleIndirectBlock == 0) {
+                if (!allocate) {
+                    return 0;
+                }
+                inode.doubleIndirectBlock = allocBlock(true);
+            }
+            int table = pointerAt(inode.doubleIndirectBlock, idx / POINTERS_PER_BLOCK, allocate, true);
+            return table == 0 ? 0 : pointerAt(table, idx % POINTERS_PER_BLOCK, allocate, zeroData);
+        }
+        throw new IOException("File too large");
+    }
+
+    // 间接块 table 中第 slot 个指针，allocate 为 true 时按需分配
+    private int pointerAt(int table, int slot, boolean allocate, boolean zero) throws IOException {
+        byte[] block = new byte[BLOCK_SIZE];
+        readBlock(table, block);
+        ByteBuffer buffer = ByteBuffer.wrap(block);
+        int blockNo = buffer.getInt(slot * 4);
+        if (blockNo == 0 && allocate) {
+            blockNo = allocBlock(zero);
+            buffer.putInt(slot * 4, blockNo);
+            writeBlock(table, block);
+        }
+        return blockNo;
+    }
+
+    // 释放文件的全部数据块和间接块
+    private void truncate(Inode inode) throws IOException {
+        pageCache.drop(inode.ino);
+        for (int i = 0; i < Inode.DIRECT_BLOCKS; i++) {
+            if (inode.directBlocks[i] != 0) {
+                freeBlock(inode.directBlocks[i]);
+                inode.directBlocks[i] = 0;
+            }
+        }
+        if (inode.indirectBlock != 0) {
+            freeTable(inode.indirectBlock, 1);
+            inode.indirectBlock = 0;
+        }
+        if (inode.doubleIndirectBlock != 0) {
+            freeTable(inode.doubleIndirectBlock, 2);
+            inode.doubleIndirectBlock = 0;
+        }
+        inode.size = 0;
+        writeInode(inode);
+    }
+
+    private void freeTable(int table, int level) throws IOException {
+        byte[] block = new byte[BLOCK_SIZE];
+        readBlock(table, block);
+        ByteBuffer buffer = ByteBuffer.wrap(block);
+        for (int slot = 0; slot < POINTERS_PER_BLOCK; slot++) {
+            int blockNo = buffer.getInt(slot * 4);
+            if (blockNo != 0) {
+                if (level > 1) {
+                    freeTable(blockNo, level - 1);
+                } else {
+                    freeBlock(blockNo);
+                }
+            }
+        }
+        freeBlock(table);
+    }
+
+    // ---------- inode ----------
+
+    private Inode createInode(int type) throws IOException {
+        int ino = inodeBitmap.scan(1);
+        if (ino == -1) {
+            return null;
+        }
+        inodeBitmap.set(ino);
+        syncBitmap(inodeBitmap, superBlock.inodeBitmapStart, ino);
+        Inode inode = new Inode(this, ino);
+        inode.type = type;
+        inode.linkCount = 1;
+        writeInode(inode);
+        openInodes.put(ino, inode);
+        return inode;
+    }
+
+    private void readInode(Inode inode) throws IOException {
+        byte[] block = new byte[BLOCK_SIZE];
+        readBlock(superBlock.inodeTableStart + inode.ino / INODES_PER_BLOCK, block);
+        ByteBuffer buffer = ByteBuffer.wrap(block);
+        buffer.position((inode.ino % INODES_PER_BLOCK) * INODE_SIZE);
+        buffer.getInt(); // ino
+        inode.type = buffer.getInt();
+        inode.size = buffer.getInt();
+        inode.linkCount = buffer.getInt();
+        for (int i = 0; i < Inode.DIRECT_BLOCKS; i++) {
+            inode.directBlocks[i] = buffer.getInt();
+        }
+        inode.indirectBlock = buffer.getInt();
+        inode.doubleIndirectBlock = buffer.getInt();
+    }
+
+    private void writeInode(Inode inode) throws IOException {
+        int blockNo = superBlock.inodeTableStart + inode.ino / INODES_PER_BLOCK;
+        byte[] block = new byte[BLOCK_SIZE];
+        readBlock(blockNo, block);
+        ByteBuffer buffer = ByteBuffer.wrap(block);
+        buffer.position((inode.ino % INODES_PER_BLOCK) * INODE_SIZE);
+        buffer.putInt(inode.ino).putInt(inode.type).putInt(inode.size).putInt(inode.linkCount);
+        for (int i = 0; i < Inode.DIRECT_BLOCKS; i++) {
+            buffer.putInt(inode.directBlocks[i]);
+        }
+        buffer.putInt(inode.indirectBlock).putInt(inode.doubleIndirectBlock);
+        writeBlock(blockNo, block);
+    }
+
+    // ---------- 目录 ----------
+
+    // 目录项：ino | type | 文件名（UTF-8，不足补 0）
+    private int dirLookup(Inode dir, String name) throws IOException {
+        byte[] entry = new byte[DIR_ENTRY_SIZE];
+        for (int pos = 0; pos < dir.size; pos += DIR_ENTRY_SIZE) {
+            read(dir, pos, entry, 0, DIR_ENTRY_SIZE);
+            ByteBuffer buffer = ByteBuffer.wrap(entry);
+            int ino = buffer.getInt();
+            if (buffer.getInt() != Inode.FT_UNKNOWN && entryName(entry).equals(name)) {
+                return ino;
+            }
+        }
+        return -1;
+    }
+
+    private void dirAdd(Inode dir, String name, int ino, int type) throws IOException {
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        if (nameBytes.length > MAX_FILE_NAME_LEN) {
+            throw new IOException("File name too long: " + name);
+        }
+        // 优先复用已删除的目录项
+        byte[] entry = new byte[DIR_ENTRY_SIZE];
+        int slot = dir.size;
+        for (int pos = 0; pos < dir.size; pos += DIR_ENTRY_SIZE) {
+            read(dir, pos, entry, 0, DIR_ENTRY_SIZE);
+            if (ByteBuffer.wrap(entry).getInt(4) == Inode.FT_UNKNOWN) {
+                slot = pos;
+                break;
+            }
+        }
+        entry = new byte[DIR_ENTRY_SIZE];
+        ByteBuffer.wrap(entry).putInt(ino).putInt(type).put(nameBytes);
+        write(dir, slot, entry, 0, DIR_ENTRY_SIZE);
+    }
+
+    private void dirRemove(Inode dir, String name) throws IOException {
+        byte[] entry = new byte[DIR_ENTRY_SIZE];
+        for (int pos = 0; pos < dir.size; pos += DIR_ENTRY_SIZE) {
+            read(dir, pos, entry, 0, DIR_ENTRY_SIZE);
+            if (ByteBuffer.wrap(entry).getInt(4) != Inode.FT_UNKNOWN && entryName(entry).equals(name)) {
+                write(dir, pos, new byte[DIR_ENTRY_SIZE], 0, DIR_ENTRY_SIZE);
+                return;
+            }
+        }
+    }
+
+    private static String entryName(byte[] entry) {
+        int len = 0;
+        while (len < MAX_FILE_NAME_LEN && entry[8 + len] != 0) {
+            len++;
+        }
+        return new String(entry, 8, len, StandardCharsets.UTF_8);
+    }
+
+    // 从根目录沿 names[0..count) 逐级查找，返回最后一级目录的 ino，不存在时返回 -1
+    private int walk(String[] names, int count) throws IOException {
+        int ino = ROOT_INO;
+        for (int i = 0; i < count; i++) {
+            Inode dir = inodeOpen(ino);
+            try {
+                if (!dir.isDirectory()) {
+                    return -1;
+                }
+                ino = dirLookup(dir, names[i]);
+            } finally {
+                inodeClose(dir);
+            }
+            if (ino == -1) {
+                return -1;
+            }
+        }
+        return ino;
+    }
+
+    private static String[] splitPath(String path) {
+        List<String> names = new ArrayList<>();
+        for (String name : path.split("/")) {
+            if (!name.isEmpty() && !name.equals(".")) {
+                names.add(name);
+            }
+        }
+        return names.toArray(new String[0]);
+    }
+
+    // ---------- 位图 ----------
+
+    // 把 bit 所在的位图块写回磁盘
+    private void syncBitmap(Bitmap bitmap, int startBlock, int bit) throws IOException {
+        int blockIdx = bit / (BLOCK_SIZE * 8);
+        int fromByte = blockIdx * BLOCK_SIZE;
+        byte[] block = new byte[BLOCK_SIZE];
+        bitmap.toBytes(fromByte, block, Math.min(BLOCK_SIZE, bitmap.size() / 8 - fromByte));
+        writeBlock(startBlock + blockIdx, block);
+    }
+
+    private void loadBitmap(Bitmap bitmap, int startBlock, int blocks) throws IOException {
+        byte[] block = new byte[BLOCK_SIZE];
+        for (int i = 0; i < blocks; i++) {
+            readBlock(startBlock + i, block);
+            bitmap.fromBytes(i * BLOCK_SIZE, block, Math.min(BLOCK_SIZE, bitmap.size() / 8 - i * BLOCK_SIZE));
+        }
+    }
+
+    // 位图按字节取整后多出的位不对应任何对象，标记为已占用
+    private void markPadding(Bitmap bitmap, int count) {
+        if (bitmap.size() > count) {
+            bitmap.setRange(count, bitmap.size() - count);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package filesystem;
+
+import utils.EventLog;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// 一个内核的系统打开文件表。槽位用 CAS 占用，引用计数用原子操作，多个线程同时 fork/close 不需要加锁
+public class FileTable {
+    static final int LOG_CLOSE_FAILED = EventLog.define(EventLog.WARN, "Close inode %d failed: %s");
+
+    public static final int MAX_FILE_OPEN = 4096;
+
+    private final AtomicReferenceArray<FileDescriptor> fileTable = new AtomicReferenceArray<>(MAX_FILE_OPEN);
+    // 关闭 inode 失败时写入所属内核的日志
+    private final EventLog log;
+
+    public FileTable(EventLog log) {
+        this.log = log;
+    }
+
+    // 为 fd 占用一个空闲槽位，返回全局下标，表满时返回 -1
+    public int install(FileDescriptor fd) {
+        for (int i = 0; i < MAX_FILE_OPEN; i++) {
+            if (fileTable.get(i) == null && fileTable.compareAndSet(i, null, fd)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public FileDescriptor get(int globalFd) {
+        return fileTable.get(globalFd);
+    }
+
+    // 又多了一个进程文件描述符引用该项（fork、dup）
+    public void dup(int globalFd) {
+        fileTable.get(globalFd).refCount.incrementAndGet();
+    }
+
+    // 解除一个引用，最后一个引用解除时释放槽位并减少 inode 的打开数
+    public void close(int globalFd) {
+        FileDescriptor fd = fileTable.get(globalFd);
+        if (fd.refCount.decrementAndGet() == 0) {
+            fileTable.set(globalFd, null);
+            if (fd.inode.fs == null) {
+                if (fd.inode.pipe != null) {
+                    fd.inode.pipe.close((fd.flags & 3) == FileSystem.O_WRONLY);
+                }
+                fd.inode.openCount.decrementAndGet();
+                return;
+            }
+            try {
+                fd.inode.fs.inodeClose(fd.inode);
+            } catch (IOException e) {
+                log.emit(LOG_CLOSE_FAILED, fd.inode.ino, e.getMessage());
+            }
+        }
+    }
+}
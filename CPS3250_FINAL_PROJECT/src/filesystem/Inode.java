@@ -1,9 +1,36 @@
 package filesystem;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 public class Inode {
-    public int openCount;
+    public static final int FT_UNKNOWN = 0;
+    public static final int FT_REGULAR = 1;
+    public static final int FT_DIRECTORY = 2;
+    public static final int FT_PIPE = 3;
+    public static final int DIRECT_BLOCKS = 12;
+
+    public final AtomicInteger openCount; // 指向本 inode 的系统打开文件表项数
+    public FileSystem fs;                 // 所属文件系统，内存中的临时 inode 为 null
+    public int ino;
+    public int type;
+    public int size;                      // 文件字节数
+    public int linkCount;                 // 目录项引用数，为 0 且无人打开时释放
+    public int[] directBlocks = new int[DIRECT_BLOCKS]; // 直接块，0 表示未分配
+    public int indirectBlock;             // 一级间接块
+    public int doubleIndirectBlock;       // 二级间接块
+    public Pipe pipe;                     // 管道的缓冲，只有 FT_PIPE 使用
 
     public Inode() {
-        this.openCount = 1;
+        this.openCount = new AtomicInteger(1);
+    }
+
+    public Inode(FileSystem fs, int ino) {
+        this();
+        this.fs = fs;
+        this.ino = ino;
+    }
+
+    public boolean isDirectory() {
+        return type == FT_DIRECTORY;
     }
 }
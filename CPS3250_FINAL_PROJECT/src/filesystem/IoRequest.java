@@ -0,0 +1,80 @@
+package filesystem;
+
+import java.io.IOException;
+import java.util.function.Consumer;
+
+// 提交给块设备的一次读写：从 blockNo 开始的 count 个连续块，每块一个缓冲区
+public class IoRequest {
+    public final int blockNo;
+    public final int count;
+    public final boolean write;
+    public final byte[][] buffers;
+
+    long submitNanos;
+    long deadlineNanos;  // deadline 调度器使用
+    boolean dispatched;  // 已从调度队列取出，deadline 调度器的 FIFO 惰性删除用
+
+    public Object waiter;                  // 等待该请求的进程，由提交者设置
+    public Consumer<IoRequest> onComplete; // 完成回调，在设备线程中执行
+
+    private volatile boolean done;
+    private IOException error;
+    public long latencyNanos;              // 从提交到完成的时间
+
+    public IoRequest(int blockNo, boolean write, byte[]... buffers) {
+        this.blockNo = blockNo;
+        this.count = buffers.length;
+        this.write = write;
+        this.buffers = buffers;
+    }
+
+    public static IoRequest read(int blockNo, byte[] buf) {
+        return new IoRequest(blockNo, false, buf);
+    }
+
+    public static IoRequest write(int blockNo, byte[] buf) {
+        return new IoRequest(blockNo, true, buf);
+    }
+
+    public int endBlock() {
+        return blockNo + count;
+    }
+
+    public boolean isDone() {
+        return done;
+    }
+
+    // 阻塞当前线程直到请求完成，失败时抛出设备报告的异常
+    public synchronized void await() throws IOException {
+        boolean interrupted = false;
+        while (!done) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    public IOException error() {
+        return error;
+    }
+
+    void complete(IOException e) {
+        synchronized (this) {
+            latencyNanos = System.nanoTime() - submitNanos;
+            error = e;
+            done = true;
+            notifyAll();
+        }
+        if (onComplete != null) {
+            onComplete.accept(this);
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package filesystem;
+
+import java.util.List;
+
+// 块设备的 I/O 调度器：决定排队请求的服务顺序，并把相邻的同向请求合并成一次设备访问。
+// 所有方法都在设备的队列锁内调用
+public interface IoScheduler {
+    void add(IoRequest request, long now);
+
+    boolean isEmpty();
+
+    // 磁头位于 head 时取出下一批请求：方向相同、块号首尾相接，总块数不超过 maxBlocks
+    List<IoRequest> dispatch(int head, long now, int maxBlocks);
+
+    String name();
+
+    static IoScheduler byName(String name) {
+        switch (name) {
+            case "noop":
+                return new NoopScheduler();
+            case "deadline":
+                return new DeadlineScheduler();
+            case "clook":
+                return new CLookScheduler();
+            default:
+                throw new IllegalArgumentException("Unknown I/O scheduler: " + name);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package filesystem;
+
+// 块设备的服务时间模型：磁头位于 head 时，读写从 block 开始的 count 块所需的纳秒数
+public interface LatencyModel {
+    long serviceNanos(int head, int block, int count, int blockSize);
+
+    // 机械硬盘：寻道时间随距离的平方根增长，非连续访问再加平均半圈旋转延迟
+    static LatencyModel hdd(int totalBlocks, long minSeekNanos, long maxSeekNanos, int rpm, double mbPerSecond) {
+        long halfRotation = 60_000_000_000L / rpm / 2;
+        return (head, block, count, blockSize) -> {
+            long nanos = transferNanos(count, blockSize, mbPerSecond);
+            if (block != head) {
+                double distance = Math.abs((double) block - head) / Math.max(1, totalBlocks);
+                nanos += minSeekNanos + (long) ((maxSeekNanos - minSeekNanos) * Math.sqrt(distance)) + halfRotation;
+            }
+            return nanos;
+        };
+    }
+
+    // 7200 转硬盘的典型参数
+    static LatencyModel hdd(int totalBlocks) {
+        return hdd(totalBlocks, 500_000, 8_000_000, 7200, 150);
+    }
+
+    // 固态盘：与位置无关的固定访问延迟加传输时间
+    static LatencyModel ssd(long accessNanos, double mbPerSecond) {
+        return (head, block, count, blockSize) -> accessNanos + transferNanos(count, blockSize, mbPerSecond);
+    }
+
+    static LatencyModel ssd() {
+        return ssd(80_000, 500);
+    }
+
+    static long transferNanos(int count, int blockSize, double mbPerSecond) {
+        return (long) ((double) count * blockSize / (mbPerSecond * 1024 * 1024) * 1e9);
+    }
+}
@@ -0,0 +1,44 @@
+package filesystem;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+// 先来先服务，只合并队列中前后相邻且块号首尾相接的请求
+public class NoopScheduler implements IoScheduler {
+    private final ArrayDeque<IoRequest> queue = new ArrayDeque<>();
+
+    @Override
+    public void add(IoRequest request, long now) {
+        queue.add(request);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return queue.isEmpty();
+    }
+
+    @Override
+    public List<IoRequest> dispatch(int head, long now, int maxBlocks) {
+        List<IoRequest> batch = new ArrayList<>();
+        IoRequest first = queue.poll();
+        batch.add(first);
+        int end = first.endBlock();
+        int blocks = first.count;
+        while (!queue.isEmpty()) {
+            IoRequest next = queue.peek();
+            if (next.write != first.write || next.blockNo != end || blocks + next.count > maxBlocks) {
+                break;
+            }
+            batch.add(queue.poll());
+            end = next.endBlock();
+            blocks += next.count;
+        }
+        return batch;
+    }
+
+    @Override
+    public String name() {
+        return "noop";
+    }
+}
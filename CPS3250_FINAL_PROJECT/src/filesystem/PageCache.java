@@ -0,0 +1,249 @@
+package filesystem;
+
+import memory.PhysicalMemoryManager;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+// 文件页缓存：以 (ino, 页号) 为键，页面存放在物理内存管理器分配的物理页中。
+// read/write 与文件映射的缺页处理使用同一个物理页，缓存自身持有一个引用计数，
+// 正在读写它的操作和映射它的页表项再各持有一个。只有缓存自己引用的页才可以淘汰
+public class PageCache {
+    static class CachedPage {
+        final int frame;   // 物理地址
+        int blockNo;       // 对应的磁盘块，0 表示空洞，写入时才分配
+        boolean dirty;
+        boolean loading;   // 正在从磁盘读入，读入完成前其他访问者等待
+        boolean prefetched; // 由预读调入且尚未被访问
+
+        CachedPage(int frame, int blockNo) {
+            this.frame = frame;
+            this.blockNo = blockNo;
+        }
+    }
+
+    private final BlockIO device;
+    private final PhysicalMemoryManager memory;
+    private final int capacity;
+    // 按访问顺序排列，最久未访问的在最前
+    private final LinkedHashMap<Long, CachedPage> pages;
+
+    public final LongAdder hits = new LongAdder();
+    public final LongAdder misses = new LongAdder();
+    public final LongAdder evictions = new LongAdder();
+    public final LongAdder writebacks = new LongAdder();
+    public final LongAdder readaheadPages = new LongAdder();  // 预读调入的页数
+    public final LongAdder readaheadHits = new LongAdder();   // 其中后来被访问到的
+    public final LongAdder readaheadWasted = new LongAdder(); // 其中未被访问就被淘汰的
+
+    public PageCache(BlockIO device, PhysicalMemoryManager memory, int capacity) {
+        this.device = device;
+        this.memory = memory;
+        this.capacity = capacity;
+        this.pages = new LinkedHashMap<>(capacity * 2, 0.75f, true);
+    }
+
+    private static long key(int ino, int index) {
+        return ((long) ino << 32) | (index & 0xFFFFFFFFL);
+    }
+
+    // 页已缓存时增加一个引用并返回物理地址，否则返回 -1。用完后调用 release，
+    // 建立映射时这个引用就交给页表项
+    public synchronized int acquire(int ino, int index) {
+        CachedPage page = awaitLoaded(key(ino, index));
+        if (page == null) {
+            return -1;
+        }
+        hit(page);
+        return page.frame;
+    }
+
+    // 同 acquire(ino, index)，未缓存时从磁盘块 blockNo 读入，blockNo 为 0 时是全零页。
+    // 磁盘读在缓存锁之外进行，不阻塞对其他页的访问
+    public int acquire(int ino, int index, int blockNo) throws IOException {
+        long key = key(ino, index);
+        CachedPage page;
+        synchronized (this) {
+            page = awaitLoaded(key);
+            if (page != null) {
+                hit(page);
+                return page.frame;
+            }
+            misses.increment();
+            page = insert(key, blockNo);
+        }
+        if (page.loading) {
+            fill(key, page);
+        }
+        return page.frame;
+    }
+
+    public synchronized boolean contains(int ino, int index) {
+        return pages.containsKey(key(ino, index));
+    }
+
+    // 预读：页不在缓存中时从磁盘块 blockNo 调入，不增加引用
+    public void prefetch(int ino, int index, int blockNo) throws IOException {
+        long key = key(ino, index);
+        CachedPage page;
+        synchronized (this) {
+            if (pages.containsKey(key)) {
+                return;
+            }
+            page = insert(key, blockNo);
+            page.prefetched = true;
+            readaheadPages.increment();
+        }
+        if (page.loading) {
+            fill(key, page);
+        }
+        release(page.frame);
+    }
+
+    public synchronized void release(int frame) {
+        memory.decreaseReferenceCount(frame);
+    }
+
+    // 页被写入，记下它对应的磁盘块，写回时使用
+    public synchronized void markDirty(int ino, int index, int blockNo) {
+        CachedPage page = pages.get(key(ino, index));
+        if (page != null) {
+            page.blockNo = blockNo;
+            page.dirty = true;
+        }
+    }
+
+    // 按块号顺序写回全部脏页
+    public synchronized void writeBack() throws IOException {
+        List<CachedPage> dirty = new ArrayList<>();
+        for (CachedPage page : pages.values()) {
+            if (page.dirty) {
+                dirty.add(page);
+            }
+        }
+        dirty.sort((x, y) -> Integer.compare(x.blockNo, y.blockNo));
+        for (CachedPage page : dirty) {
+            writeBack(page);
+        }
+    }
+
+    // 文件被删除或截断：丢弃它的全部页，不写回。仍被映射的物理页由映射方继续持有
+    public synchronized void drop(int ino) {
+        Iterator<Map.Entry<Long, CachedPage>> it = pages.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Long, CachedPage> entry = it.next();
+            if ((int) (entry.getKey() >>> 32) == ino) {
+                if (entry.getValue().prefetched) {
+                    readaheadWasted.increment();
+                }
+                memory.decreaseReferenceCount(entry.getValue().frame);
+                it.remove();
+            }
+        }
+    }
+
+    public synchronized int residentPages() {
+        return pages.size();
+    }
+
+    public String stats() {
+        return String.format("resident=%d hits=%d misses=%d evictions=%d writebacks=%d "
+                        + "readahead=%d readaheadHits=%d readaheadWasted=%d",
+                residentPages(), hits.sum(), misses.sum(), evictions.sum(), writebacks.sum(),
+                readaheadPages.sum(), readaheadHits.sum(), readaheadWasted.sum());
+    }
+
+    // 调用时持有缓存锁。等待正在读入的页完成，返回页，不在缓存中时返回 null
+    private CachedPage awaitLoaded(long key) {
+        CachedPage page = pages.get(key);
+        boolean interrupted = false;
+        while (page != null && page.loading) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+            page = pages.get(key);
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        return page;
+    }
+
+    // 调用时持有缓存锁
+    private void hit(CachedPage page) {
+        hits.increment();
+        if (page.prefetched) {
+            page.prefetched = false;
+            readaheadHits.increment();
+        }
+        memory.increaseReferenceCount(page.frame);
+    }
+
+    // 调用时持有缓存锁。分配物理页并加入缓存，除缓存自身的引用外再为调用者加一个引用
+    private CachedPage insert(long key, int blockNo) throws IOException {
+        evictIfFull();
+        CachedPage page = new CachedPage(memory.allocatePhysicalPage(), blockNo);
+        page.loading = blockNo != 0;
+        pages.put(key, page);
+        memory.increaseReferenceCount(page.frame);
+        return page;
+    }
+
+    // 在缓存锁之外读入页内容，完成后唤醒等待者；失败时撤销该页
+    private void fill(long key, CachedPage page) throws IOException {
+        try {
+            device.readDirect(page.blockNo, memory.readPhysicalMemory(page.frame));
+        } catch (IOException e) {
+            synchronized (this) {
+                pages.remove(key);
+                page.loading = false;
+                memory.decreaseReferenceCount(page.frame);
+                memory.decreaseReferenceCount(page.frame);
+                notifyAll();
+            }
+            throw e;
+        }
+        synchronized (this) {
+            page.loading = false;
+            notifyAll();
+        }
+    }
+
+    // 缓存已满时淘汰最久未访问、且没有被任何进程映射的页
+    private void evictIfFull() throws IOException {
+        if (pages.size() < capacity) {
+            return;
+        }
+        Iterator<CachedPage> it = pages.values().iterator();
+        while (it.hasNext()) {
+            CachedPage page = it.next();
+            if (memory.getReferenceCount(page.frame) == 1) {
+                if (page.dirty) {
+                    writeBack(page);
+                }
+                if (page.prefetched) {
+                    readaheadWasted.increment();
+                }
+                memory.decreaseReferenceCount(page.frame);
+                it.remove();
+                evictions.increment();
+                return;
+            }
+        }
+        // 全部被映射，暂时超出容量
+    }
+
+    private void writeBack(CachedPage page) throws IOException {
+        device.writeDirect(page.blockNo, memory.readPhysicalMemory(page.frame));
+        // 仍被共享映射的页随时可能再被写入而不经过文件系统，保持脏状态
+        page.dirty = memory.getReferenceCount(page.frame) > 1;
+        writebacks.increment();
+    }
+}
@@ -0,0 +1,180 @@
+package filesystem;
+
+import memory.PhysicalMemoryManager;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+// 管道的数据缓冲：PIPE_PAGES 个槽位组成的单生产者单消费者环形队列，每个槽位持有一个物理页。
+// 写端只推进 tail，读端只推进 head，双方不加锁；槽位内容先写好再发布 tail，读端看到 tail 后才访问。
+// 普通读写在物理页和调用者缓冲区之间复制，give/takeFrame 则直接交接整个物理页，不复制数据。
+// 小块写入先追加到最后一个槽位的页中，页满或该页是 give 交来的才占用新槽位。
+// 追加时先写数据再发布槽位长度，读端读完最后一个槽位后不归还它，等写端换到下一个槽位再归还
+public class Pipe {
+    public static final int PIPE_PAGES = 16;
+    public static final int PAGE_SIZE = FileSystem.BLOCK_SIZE;
+
+    private final PhysicalMemoryManager memory;
+    private final int[] frames = new int[PIPE_PAGES];
+    private final int[] offsets = new int[PIPE_PAGES]; // 槽位中已被读走的字节数，由读端维护
+    private final AtomicIntegerArray lengths = new AtomicIntegerArray(PIPE_PAGES); // 槽位中已写入的字节数，由写端发布
+    private final boolean[] given = new boolean[PIPE_PAGES]; // 槽位的页由 give 交来，不能追加，由写端维护
+    private final AtomicLong head = new AtomicLong(); // 下一个要读的槽位序号
+    private final AtomicLong tail = new AtomicLong(); // 下一个要写的槽位序号
+
+    private volatile boolean readClosed;
+    private volatile boolean writeClosed;
+
+    // 阻塞在读端、写端的进程，由内核设置和唤醒
+    public volatile Object readWaiter;
+    public volatile Object writeWaiter;
+
+    // 统计
+    public long bytesCopied;   // 写端复制进管道的字节数
+    public long pagesGiven;    // 写端直接交给管道的页数
+
+    public Pipe(PhysicalMemoryManager memory) {
+        this.memory = memory;
+    }
+
+    // 没有未读的数据，由读端调用
+    public boolean isEmpty() {
+        long h = head.get();
+        long t = tail.get();
+        if (h == t) {
+            return true;
+        }
+        int slot = (int) (h % PIPE_PAGES);
+        return h + 1 == t && offsets[slot] == lengths.get(slot);
+    }
+
+    // 没有空闲槽位（最后一个槽位的页可能还能追加）
+    public boolean isFull() {
+        return tail.get() - head.get() == PIPE_PAGES;
+    }
+
+    public boolean isReadClosed() {
+        return readClosed;
+    }
+
+    public boolean isWriteClosed() {
+        return writeClosed;
+    }
+
+    // 写端：把 buf 中最多 len 字节复制进管道，先填满最后一个槽位的页，再用新的物理页。
+    // 返回写入的字节数，管道满时返回 0
+    public int write(byte[] buf, int off, int len) {
+        long t = tail.get();
+        long h = head.get();
+        int written = 0;
+        if (t > h && len > 0) {
+            // 读端不会归还最后一个槽位，只会用 takeFrame 取走已写满的页，未满的页可以安全地追加
+            int slot = (int) ((t - 1) % PIPE_PAGES);
+            int used = lengths.get(slot);
+            if (!given[slot] && used < PAGE_SIZE) {
+                int n = Math.min(PAGE_SIZE - used, len);
+                System.arraycopy(buf, off, memory.readPhysicalMemory(frames[slot]), used, n);
+                lengths.lazySet(slot, used + n);
+                written = n;
+            }
+        }
+        while (written < len && t - h < PIPE_PAGES) {
+            int slot = (int) (t % PIPE_PAGES);
+            int n = Math.min(PAGE_SIZE, len - written);
+            int frame = memory.allocatePhysicalPage();
+            System.arraycopy(buf, off + written, memory.readPhysicalMemory(frame), 0, n);
+            frames[slot] = frame;
+            offsets[slot] = 0;
+            given[slot] = false;
+            lengths.lazySet(slot, n);
+            written += n;
+            t++;
+        }
+        bytesCopied += written;
+        tail.lazySet(t);
+        return written;
+    }
+
+    // 写端：把物理页的前 len 字节交给管道，调用者的一个引用随之转给管道。管道满时返回 false
+    public boolean give(int frame, int len) {
+        long t = tail.get();
+        if (t - head.get() == PIPE_PAGES) {
+            return false;
+        }
+        int slot = (int) (t % PIPE_PAGES);
+        frames[slot] = frame;
+        offsets[slot] = 0;
+        given[slot] = true;
+        lengths.lazySet(slot, len);
+        pagesGiven++;
+        tail.lazySet(t + 1);
+        return true;
+    }
+
+    // 读端：复制最多 len 字节到 buf，读完的页归还物理内存。返回读到的字节数，管道空时返回 0
+    public int read(byte[] buf, int off, int len) {
+        long h = head.get();
+        long t = tail.get();
+        int read = 0;
+        while (read < len && h < t) {
+            int slot = (int) (h % PIPE_PAGES);
+            int length = lengths.get(slot);
+            int n = Math.min(length - offsets[slot], len - read);
+            System.arraycopy(memory.readPhysicalMemory(frames[slot]), offsets[slot], buf, off + read, n);
+            offsets[slot] += n;
+            read += n;
+            if (offsets[slot] == length) {
+                // 最后一个槽位写端还可能追加，先重读 tail，确认写端已换到下一个槽位后再看一次长度
+                t = tail.get();
+                if (h + 1 == t) {
+                    break;
+                }
+                if (lengths.get(slot) != length) {
+                    continue;
+                }
+                memory.decreaseReferenceCount(frames[slot]);
+                h++;
+            }
+        }
+        head.lazySet(h);
+        return read;
+    }
+
+    // 读端：队首槽位是一个未读过的整页时把它连同引用一起交给调用者，否则返回 -1，由调用者改用 read
+    public int takeFrame() {
+        long h = head.get();
+        long t = tail.get();
+        if (h == t) {
+            return -1;
+        }
+        int slot = (int) (h % PIPE_PAGES);
+        // read 读完最后一个槽位时把它留给写端追加；写端已换到后面的槽位时长度不会再变，归还后看下一个
+        if (h + 1 < t && offsets[slot] == lengths.get(slot)) {
+            memory.decreaseReferenceCount(frames[slot]);
+            h++;
+            head.lazySet(h);
+            slot = (int) (h % PIPE_PAGES);
+        }
+        if (offsets[slot] != 0 || lengths.get(slot) != PAGE_SIZE) {
+            return -1;
+        }
+        int frame = frames[slot];
+        head.lazySet(h + 1);
+        return frame;
+    }
+
+    // 关闭一端，两端都关闭后归还仍在管道中的页
+    public synchronized void close(boolean writeEnd) {
+        if (writeEnd) {
+            writeClosed = true;
+        } else {
+            readClosed = true;
+        }
+        if (readClosed && writeClosed) {
+            for (long h = head.get(); h < tail.get(); h++) {
+                memory.decreaseReferenceCount(frames[(int) (h % PIPE_PAGES)]);
+            }
+            head.set(tail.get());
+        }
+    }
+}
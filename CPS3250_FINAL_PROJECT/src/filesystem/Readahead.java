@@ -0,0 +1,50 @@
+package filesystem;
+
+// 每个打开文件的预读状态。连续的读（本次起点等于上次终点）被视为顺序访问，
+// 预读窗口从 INITIAL_WINDOW 页开始，每当读到上一个窗口的一半时再异步预读下一个窗口，
+// 窗口大小翻倍直到 MAX_WINDOW；一旦出现随机访问，窗口清零
+public class Readahead {
+    public static final int INITIAL_WINDOW = 4;
+    public static final int MAX_WINDOW = 64;
+
+    private long nextPosition; // 顺序访问时下一次读的起点
+    private int window;        // 当前窗口页数，0 表示未在预读
+    private int issuedEnd;     // 已发出预读的页的上界（不含）
+    private int triggerPage;   // 读到这一页时发出下一个窗口
+
+    // 记录一次从 position 开始、长度为 len 的读，返回要预读的页：
+    // 高 32 位为起始页号，低 32 位为页数；不需要预读时返回 -1
+    public synchronized long onRead(long position, int len) {
+        if (len <= 0) {
+            return -1;
+        }
+        int firstPage = (int) (position / FileSystem.BLOCK_SIZE);
+        int lastPage = (int) ((position + len - 1) / FileSystem.BLOCK_SIZE);
+        boolean sequential = position == nextPosition;
+        nextPosition = position + len;
+
+        if (!sequential) {
+            window = 0;
+            issuedEnd = 0;
+            return -1;
+        }
+        int start;
+        if (window == 0 || issuedEnd <= firstPage) {
+            // 开始一段新的顺序访问，或预读已被读者追上
+            window = window == 0 ? INITIAL_WINDOW : Math.min(window * 2, MAX_WINDOW);
+            start = lastPage + 1;
+        } else if (lastPage >= triggerPage) {
+            window = Math.min(window * 2, MAX_WINDOW);
+            start = Math.max(issuedEnd, lastPage + 1);
+        } else {
+            return -1;
+        }
+        issuedEnd = start + window;
+        triggerPage = start + window / 2;
+        return ((long) start << 32) | window;
+    }
+
+    public synchronized int window() {
+        return window;
+    }
+}
@@ -0,0 +1,73 @@
+package filesystem;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// 按起始块号排序的请求集合，供电梯类调度器查找磁头前方的请求和合并相邻请求
+class RequestTree {
+    private final TreeMap<Integer, ArrayDeque<IoRequest>> byBlock = new TreeMap<>();
+    private int size;
+
+    void add(IoRequest request) {
+        byBlock.computeIfAbsent(request.blockNo, k -> new ArrayDeque<>()).add(request);
+        size++;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    // 起始块号不小于 head 的第一个请求，没有时回到最小块号（C-LOOK 的单向扫描）
+    IoRequest ceilingOrFirst(int head) {
+        Map.Entry<Integer, ArrayDeque<IoRequest>> entry = byBlock.ceilingEntry(head);
+        if (entry == null) {
+            entry = byBlock.firstEntry();
+        }
+        return entry == null ? null : entry.getValue().peekFirst();
+    }
+
+    void remove(IoRequest request) {
+        ArrayDeque<IoRequest> queue = byBlock.get(request.blockNo);
+        if (queue != null && queue.remove(request)) {
+            size--;
+            if (queue.isEmpty()) {
+                byBlock.remove(request.blockNo);
+            }
+        }
+    }
+
+    // 取出 first，并继续取出紧接其后的同向请求
+    List<IoRequest> takeRun(IoRequest first, int maxBlocks) {
+        List<IoRequest> batch = new ArrayList<>();
+        remove(first);
+        batch.add(first);
+        int end = first.endBlock();
+        int blocks = first.count;
+        while (true) {
+            ArrayDeque<IoRequest> queue = byBlock.get(end);
+            IoRequest next = null;
+            if (queue != null) {
+                for (IoRequest candidate : queue) {
+                    if (candidate.write == first.write && blocks + candidate.count <= maxBlocks) {
+                        next = candidate;
+                        break;
+                    }
+                }
+            }
+            if (next == null) {
+                return batch;
+            }
+            remove(next);
+            batch.add(next);
+            end = next.endBlock();
+            blocks += next.count;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package filesystem;
+
+import java.nio.ByteBuffer;
+
+// 超级块，位于 0 号块，记录各区域在磁盘映像中的位置
+public class SuperBlock {
+    public static final int MAGIC = 0x19590318;
+
+    public int magic;
+    public int totalBlocks;
+    public int inodeCount;
+    public int blockBitmapStart;
+    public int blockBitmapBlocks;
+    public int inodeBitmapStart;
+    public int inodeBitmapBlocks;
+    public int inodeTableStart;
+    public int inodeTableBlocks;
+    public int dataStart;
+
+    // 按块数和 inode 数计算布局：超级块 | 块位图 | inode 位图 | inode 表 | 数据区
+    public static SuperBlock layout(int totalBlocks, int inodeCount) {
+        SuperBlock sb = new SuperBlock();
+        sb.magic = MAGIC;
+        sb.totalBlocks = totalBlocks;
+        sb.inodeCount = inodeCount;
+        int bitsPerBlock = FileSystem.BLOCK_SIZE * 8;
+        sb.blockBitmapStart = 1;
+        sb.blockBitmapBlocks = (totalBlocks + bitsPerBlock - 1) / bitsPerBlock;
+        sb.inodeBitmapStart = sb.blockBitmapStart + sb.blockBitmapBlocks;
+        sb.inodeBitmapBlocks = (inodeCount + bitsPerBlock - 1) / bitsPerBlock;
+        sb.inodeTableStart = sb.inodeBitmapStart + sb.inodeBitmapBlocks;
+        sb.inodeTableBlocks = (inodeCount + FileSystem.INODES_PER_BLOCK - 1) / FileSystem.INODES_PER_BLOCK;
+        sb.dataStart = sb.inodeTableStart + sb.inodeTableBlocks;
+        return sb;
+    }
+
+    public void writeTo(ByteBuffer buffer) {
+        buffer.putInt(magic).putInt(totalBlocks).putInt(inodeCount)
+                .putInt(blockBitmapStart).putInt(blockBitmapBlocks)
+                .putInt(inodeBitmapStart).putInt(inodeBitmapBlocks)
+                .putInt(inodeTableStart).putInt(inodeTableBlocks)
+                .putInt(dataStart);
+    }
+
+    public static SuperBlock readFrom(ByteBuffer buffer) {
+        SuperBlock sb = new SuperBlock();
+        sb.magic = buffer.getInt();
+        sb.totalBlocks = buffer.getInt();
+        sb.inodeCount = buffer.getInt();
+        sb.blockBitmapStart = buffer.getInt();
+        sb.blockBitmapBlocks = buffer.getInt();
+        sb.inodeBitmapStart = buffer.getInt();
+        sb.inodeBitmapBlocks = buffer.getInt();
+        sb.inodeTableStart = buffer.getInt();
+        sb.inodeTableBlocks = buffer.getInt();
+        sb.dataStart = buffer.getInt();
+        return sb;
+    }
+}
@@ -0,0 +1,32 @@
+package memory;
+
+import utils.Constants;
+
+import java.nio.ByteBuffer;
+
+// 以内存映射文件中的一段 [base, base + length) 作为后备数据，超出部分读作 0
+public class MappedFileSource implements PageSource {
+    private final ByteBuffer mapped;
+    private final int base;
+    private final int length;
+
+    public MappedFileSource(ByteBuffer mapped, int base, int length) {
+        this.mapped = mapped;
+        this.base = base;
+        this.length = length;
+    }
+
+    @Override
+    public void readPage(long offset, byte[] page) {
+        int count = (int) Math.max(0, Math.min(Constants.PG_SIZE, length - offset));
+        if (count > 0) {
+            // 只读取被访问的这一页，由操作系统的页缓存按需调入
+            ByteBuffer view = mapped.duplicate();
+            view.position(base + (int) offset);
+            view.get(page, 0, count);
+        }
+        for (int i = count; i < page.length; i++) {
+            page[i] = 0;
+        }
+    }
+}
@@ -1,9 +1,17 @@
 package memory;
 
+import utils.Constants;
+import utils.ObjectPool;
+
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
 
 public class PageDirectory {
+    // 解除映射后回收的页表项，供 mapPage 复用。由所属内核设置，同一内核的进程共用；为 null 时不缓存
+    public ObjectPool<PageTableEntry> entryPool;
+
     // 虚拟地址到页表项的映射
     public Map<Integer, PageTableEntry> pageTableEntries;
 
@@ -16,8 +24,73 @@ public class PageDirectory {
         pageTableEntries.put(virtualAddress, entry);
     }
 
+    // 建立映射，页表项优先从回收缓存中取
+    public PageTableEntry mapPage(int virtualAddress, int physicalAddress, boolean readOnly) {
+        PageTableEntry entry = entryPool != null ? entryPool.acquire() : new PageTableEntry(0, false);
+        entry.physicalAddress = physicalAddress;
+        entry.readOnly = readOnly;
+        pageTableEntries.put(virtualAddress, entry);
+        return entry;
+    }
+
     // 获取页表项
     public PageTableEntry getPageTableEntry(int virtualAddress) {
         return pageTableEntries.get(virtualAddress);
     }
+
+    // 解除所有映射，返回原先映射的物理地址，由调用者批量归还
+    public int[] unmapAll() {
+        int[] physicalAddresses = new int[pageTableEntries.size()];
+        int i = 0;
+        for (PageTableEntry entry : pageTableEntries.values()) {
+            physicalAddresses[i++] = entry.physicalAddress;
+            if (entryPool != null) {
+                entryPool.release(entry);
+            }
+        }
+        pageTableEntries.clear();
+        return physicalAddresses;
+    }
+
+    // 解除 [start, end) 内的映射，返回原先映射的物理地址，start 和 end 按页对齐。
+    // 范围内的页数少于页表项数时逐页查找，否则（稀疏的大范围）按已有页表项遍历
+    public int[] unmapRange(int start, int end) {
+        long pages = ((end - start) & 0xFFFFFFFFL) / Constants.PG_SIZE;
+        if (pages < pageTableEntries.size()) {
+            return unmapPages(start, (int) pages);
+        }
+        int[] physicalAddresses = new int[0];
+        int count = 0;
+        Iterator<Map.Entry<Integer, PageTableEntry>> it = pageTableEntries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Integer, PageTableEntry> entry = it.next();
+            int virtualAddress = entry.getKey();
+            if (Integer.compareUnsigned(virtualAddress, start) >= 0 && Integer.compareUnsigned(virtualAddress, end) < 0) {
+                if (count == physicalAddresses.length) {
+                    physicalAddresses = Arrays.copyOf(physicalAddresses, Math.max(8, count * 2));
+                }
+                physicalAddresses[count++] = entry.getValue().physicalAddress;
+                if (entryPool != null) {
+                    entryPool.release(entry.getValue());
+                }
+                it.remove();
+            }
+        }
+        return Arrays.copyOf(physicalAddresses, count);
+    }
+
+    private int[] unmapPages(int start, int pages) {
+        int[] physicalAddresses = new int[pages];
+        int count = 0;
+        for (int i = 0; i < pages; i++) {
+            PageTableEntry entry = pageTableEntries.remove(start + i * Constants.PG_SIZE);
+            if (entry != null) {
+                physicalAddresses[count++] = entry.physicalAddress;
+                if (entryPool != null) {
+                    entryPool.release(entry);
+                }
+            }
+        }
+        return count == pages ? physicalAddresses : Arrays.copyOf(physicalAddresses, count);
+    }
 }
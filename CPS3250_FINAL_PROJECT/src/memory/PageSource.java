@@ -0,0 +1,17 @@
+package memory;
+
+// 文件映射区域的后备数据来源，缺页时从 offset 处读入一页
+public interface PageSource {
+    void readPage(long offset, byte[] page);
+
+    // 能与其他映射共享同一物理页的来源（页缓存）返回该物理页，引用计数已为新页表项增加；
+    // 不支持时返回 -1，由缺页处理分配私有页并调用 readPage
+    default int sharedFrame(long offset) {
+        return -1;
+    }
+
+    // 共享映射第一次写入 offset 处的页，无法记录（写回时会丢失）时返回 false
+    default boolean markDirty(long offset) {
+        return true;
+    }
+}
@@ -2,40 +2,126 @@ package memory;
 
 import utils.Constants;
 
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+// 一个内核的物理内存，每个 Kernel 实例各有一份。
+// 页缓存会在文件系统的读线程中分配和释放物理页，分配与引用计数操作加锁；
+// 读写页内容不加锁，物理页的索引用并发哈希表，其他线程分配页时扩容不会让读者看到半更新的表
 public class PhysicalMemoryManager {
-    static int nextFreePhysicalAddress = 0;
-    static Map<Integer, PhysicalPage> physicalMemory = new HashMap<>();
+    private int nextFreePhysicalAddress = 0;
+    private final Map<Integer, PhysicalPage> physicalMemory = new ConcurrentHashMap<>();
 
-    public static int allocatePhysicalPage() {
-        int physicalAddress = nextFreePhysicalAddress;
-        nextFreePhysicalAddress += Constants.PG_SIZE;
+    // 已释放、可重新分配的物理地址
+    private int[] freeFrames = new int[64];
+    private int freeFrameCount = 0;
+
+    // 分配、释放和引用计数操作的次数，以及引用计数大于 1 的物理页数，由所属内核登记为指标。
+    // 这些操作本来就持有锁，计数随操作一起更新
+    private long pagesAllocated;
+    private long pagesFreed;
+    private long referenceOps;
+    private int sharedFrames;
+
+    public synchronized int allocatePhysicalPage() {
+        int physicalAddress;
+        if (freeFrameCount > 0) {
+            physicalAddress = freeFrames[--freeFrameCount];
+        } else {
+            physicalAddress = nextFreePhysicalAddress;
+            nextFreePhysicalAddress += Constants.PG_SIZE;
+        }
         physicalMemory.put(physicalAddress, new PhysicalPage());
+        pagesAllocated++;
         return physicalAddress;
     }
 
-    public static byte[] readPhysicalMemory(int physicalAddress) {
+    public byte[] readPhysicalMemory(int physicalAddress) {
         PhysicalPage page = physicalMemory.get(physicalAddress);
         return page.data;
     }
 
-    public static void writePhysicalMemory(int physicalAddress, byte[] data) {
+    public void writePhysicalMemory(int physicalAddress, byte[] data) {
         PhysicalPage page = physicalMemory.get(physicalAddress);
         System.arraycopy(data, 0, page.data, 0, data.length);
     }
 
-    public static void increaseReferenceCount(int physicalAddress) {
+    // 从页内偏移 offset 处写入
+    public void writePhysicalMemory(int physicalAddress, int offset, byte[] data) {
+        PhysicalPage page = physicalMemory.get(physicalAddress);
+        System.arraycopy(data, 0, page.data, offset, data.length);
+    }
+
+    public synchronized void increaseReferenceCount(int physicalAddress) {
         PhysicalPage page = physicalMemory.get(physicalAddress);
         page.referenceCount++;
+        if (page.referenceCount == 2) {
+            sharedFrames++;
+        }
+        referenceOps++;
     }
 
-    public static void decreaseReferenceCount(int physicalAddress) {
+    public synchronized void decreaseReferenceCount(int physicalAddress) {
+        release(physicalAddress);
+    }
+
+    // 批量减少引用计数，用于进程退出时一次性解除所有映射。整批只加一次锁
+    public synchronized void decreaseReferenceCounts(int[] physicalAddresses, int count) {
+        if (freeFrameCount + count > freeFrames.length) {
+            freeFrames = Arrays.copyOf(freeFrames, Math.max(freeFrames.length * 2, freeFrameCount + count));
+        }
+        for (int i = 0; i < count; i++) {
+            release(physicalAddresses[i]);
+        }
+    }
+
+    // 调用者持有锁
+    private void release(int physicalAddress) {
         PhysicalPage page = physicalMemory.get(physicalAddress);
         page.referenceCount--;
+        if (page.referenceCount == 1) {
+            sharedFrames--;
+        }
+        referenceOps++;
         if (page.referenceCount == 0) {
-            physicalMemory.remove(physicalAddress);
+            freePhysicalPage(physicalAddress);
+        }
+    }
+
+    public synchronized int getReferenceCount(int physicalAddress) {
+        PhysicalPage page = physicalMemory.get(physicalAddress);
+        return page == null ? 0 : page.referenceCount;
+    }
+
+    // 当前在用的物理页数
+    public synchronized int framesInUse() {
+        return physicalMemory.size();
+    }
+
+    public synchronized int sharedFrames() {
+        return sharedFrames;
+    }
+
+    public synchronized long pagesAllocated() {
+        return pagesAllocated;
+    }
+
+    public synchronized long pagesFreed() {
+        return pagesFreed;
+    }
+
+    public synchronized long referenceOps() {
+        return referenceOps;
+    }
+
+    // 调用者持有锁
+    private void freePhysicalPage(int physicalAddress) {
+        physicalMemory.remove(physicalAddress);
+        pagesFreed++;
+        if (freeFrameCount == freeFrames.length) {
+            freeFrames = Arrays.copyOf(freeFrames, freeFrames.length * 2);
         }
+        freeFrames[freeFrameCount++] = physicalAddress;
     }
 }
@@ -0,0 +1,66 @@
+package memory;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// 一个内核的共享内存段表，按 key 和段号索引
+public class SharedMemory {
+    public static final int IPC_PRIVATE = 0;  // 总是创建新段，不能被其他进程按 key 找到
+    public static final int IPC_CREAT = 01000;
+    public static final int IPC_EXCL = 02000;
+    public static final int IPC_RMID = 0;     // shmctl 命令：删除段
+    public static final int MAX_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    private final PhysicalMemoryManager memory;
+    private final Map<Integer, SharedMemorySegment> byKey = new HashMap<>();
+    private final Map<Integer, SharedMemorySegment> byId = new HashMap<>();
+    private int nextId = 1;
+
+    public SharedMemory(PhysicalMemoryManager memory) {
+        this.memory = memory;
+    }
+
+    // 按 key 查找段，不存在且带 IPC_CREAT 时创建。返回段号，失败返回 -1
+    public synchronized int get(int key, int size, int flags) {
+        SharedMemorySegment segment = key == IPC_PRIVATE ? null : byKey.get(key);
+        if (segment != null) {
+            if ((flags & IPC_CREAT) != 0 && (flags & IPC_EXCL) != 0) {
+                return -1;
+            }
+            return size <= segment.size ? segment.id : -1;
+        }
+        if ((flags & IPC_CREAT) == 0 && key != IPC_PRIVATE) {
+            return -1;
+        }
+        if (size <= 0 || size > MAX_SEGMENT_SIZE) {
+            return -1;
+        }
+        segment = new SharedMemorySegment(memory, nextId++, key, size);
+        byId.put(segment.id, segment);
+        if (key != IPC_PRIVATE) {
+            byKey.put(key, segment);
+        }
+        return segment.id;
+    }
+
+    public synchronized SharedMemorySegment segment(int id) {
+        return byId.get(id);
+    }
+
+    // 删除段：之后不能再挂接，已挂接的进程继续使用，全部解除挂接后释放。成功返回 0，段不存在返回 -1
+    public synchronized int remove(int id) {
+        SharedMemorySegment segment = byId.remove(id);
+        if (segment == null) {
+            return -1;
+        }
+        if (segment.key != IPC_PRIVATE) {
+            byKey.remove(segment.key);
+        }
+        segment.markRemoved();
+        return 0;
+    }
+
+    public synchronized int segmentCount() {
+        return byId.size();
+    }
+}
@@ -0,0 +1,94 @@
+package memory;
+
+import utils.Constants;
+
+import java.util.Arrays;
+
+// System V 共享内存段：一组由段本身持有引用的物理页，可以以 MAP_SHARED 方式挂接到多个进程的地址空间。
+// 页在第一次被访问时才分配，所有挂接者映射同一物理页。段被删除且没有进程挂接时归还全部物理页
+public class SharedMemorySegment implements PageSource {
+    public final int id;
+    public final int key;
+    public final int size;
+
+    private final PhysicalMemoryManager memory;
+    private final int[] frames; // 每页的物理地址，-1 表示尚未分配
+    private int attachCount;    // 挂接的进程数
+    private boolean removed;    // 已被 IPC_RMID 删除，不能再被 shmget 找到
+
+    SharedMemorySegment(PhysicalMemoryManager memory, int id, int key, int size) {
+        this.memory = memory;
+        this.id = id;
+        this.key = key;
+        this.size = size;
+        this.frames = new int[(size + Constants.PG_SIZE - 1) / Constants.PG_SIZE];
+        Arrays.fill(frames, -1);
+    }
+
+    public int pageCount() {
+        return frames.length;
+    }
+
+    // 所有挂接者共用段中的物理页，缺页处理总是走这里
+    @Override
+    public synchronized int sharedFrame(long offset) {
+        int index = (int) (offset / Constants.PG_SIZE);
+        if (index >= frames.length) {
+            return -1;
+        }
+        if (frames[index] == -1) {
+            frames[index] = memory.allocatePhysicalPage();
+        }
+        memory.increaseReferenceCount(frames[index]);
+        return frames[index];
+    }
+
+    // 内核直接访问段中的页，不增加引用计数
+    public synchronized int frame(int index) {
+        if (frames[index] == -1) {
+            frames[index] = memory.allocatePhysicalPage();
+        }
+        return frames[index];
+    }
+
+    @Override
+    public void readPage(long offset, byte[] page) {
+        Arrays.fill(page, (byte) 0);
+    }
+
+    public synchronized int attachCount() {
+        return attachCount;
+    }
+
+    public synchronized boolean isRemoved() {
+        return removed;
+    }
+
+    // 挂接（shmat 或 fork 继承）
+    public synchronized void attach() {
+        attachCount++;
+    }
+
+    // 解除挂接，最后一个挂接者离开且段已删除时归还物理页
+    public synchronized void detach() {
+        attachCount--;
+        destroyIfUnused();
+    }
+
+    synchronized void markRemoved() {
+        removed = true;
+        destroyIfUnused();
+    }
+
+    private void destroyIfUnused() {
+        if (!removed || attachCount > 0) {
+            return;
+        }
+        for (int i = 0; i < frames.length; i++) {
+            if (frames[i] != -1) {
+                memory.decreaseReferenceCount(frames[i]);
+                frames[i] = -1;
+            }
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package memory;
+
+// 进程地址空间中的一段区域 [start, end)，创建后不可修改，拆分与合并都会生成新的区域
+public class VmArea {
+    public static final int PROT_READ = 1;
+    public static final int PROT_WRITE = 2;
+    public static final int PROT_EXEC = 4;
+
+    // 映射类型：私有映射写入时写时复制，共享映射的写入对所有映射者和文件可见
+    public static final int MAP_PRIVATE = 0;
+    public static final int MAP_SHARED = 1;
+
+    public final int start;
+    public final int end;
+    public final int prot;
+    public final PageSource source; // 为 null 表示匿名映射
+    public final long fileOffset;   // start 对应的文件偏移
+    public final int flags;         // MAP_PRIVATE 或 MAP_SHARED
+
+    public VmArea(int start, int end, int prot, PageSource source, long fileOffset, int flags) {
+        if (Integer.compareUnsigned(start, end) >= 0) {
+            throw new IllegalArgumentException("Empty VMA [" + start + ", " + end + ")");
+        }
+        this.start = start;
+        this.end = end;
+        this.prot = prot;
+        this.source = source;
+        this.fileOffset = fileOffset;
+        this.flags = flags;
+    }
+
+    public VmArea(int start, int end, int prot, PageSource source, long fileOffset) {
+        this(start, end, prot, source, fileOffset, MAP_PRIVATE);
+    }
+
+    // 匿名区域
+    public VmArea(int start, int end, int prot) {
+        this(start, end, prot, null, 0);
+    }
+
+    public boolean contains(int address) {
+        return Integer.compareUnsigned(address, start) >= 0 && Integer.compareUnsigned(address, end) < 0;
+    }
+
+    public boolean isAnonymous() {
+        return source == null;
+    }
+
+    public boolean isWritable() {
+        return (prot & PROT_WRITE) != 0;
+    }
+
+    public boolean isShared() {
+        return flags == MAP_SHARED;
+    }
+
+    // 截取 [from, to) 部分，文件偏移随之调整
+    public VmArea slice(int from, int to) {
+        return new VmArea(from, to, prot, source, fileOffset + (from - start), flags);
+    }
+
+    // next 紧接在本区域之后且属性相同时可以合并
+    public boolean canMergeWith(VmArea next) {
+        return end == next.start && prot == next.prot && flags == next.flags && source == next.source
+                && (source == null || fileOffset + (end - start) == next.fileOffset);
+    }
+}
@@ -0,0 +1,199 @@
+package memory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// 进程的虚拟内存区域集合：以区域起始地址为键的持久化 treap（期望 O(log n)）。
+// 节点不可修改，插入和删除只复制根到目标的路径，fork 时子进程直接共享整棵树，复制为 O(1)
+public class VmAreaTree {
+    private static final class Node {
+        final VmArea area;
+        final int priority;
+        final Node left;
+        final Node right;
+
+        Node(VmArea area, int priority, Node left, Node right) {
+            this.area = area;
+            this.priority = priority;
+            this.left = left;
+            this.right = right;
+        }
+
+        Node withChildren(Node left, Node right) {
+            return new Node(area, priority, left, right);
+        }
+    }
+
+    private Node root;
+    private int size;
+
+    public VmAreaTree() {
+    }
+
+    private VmAreaTree(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    // fork 时的复制：共享所有节点，之后双方的修改互不影响
+    public VmAreaTree fork() {
+        return new VmAreaTree(root, size);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // 查找包含 address 的区域，没有则返回 null
+    public VmArea find(int address) {
+        VmArea area = floor(address);
+        return area != null && area.contains(address) ? area : null;
+    }
+
+    // 插入新区域，与已有区域重叠时返回 false
+    public boolean insert(VmArea area) {
+        VmArea prev = floor(area.end - 1);
+        if (prev != null && Integer.compareUnsigned(prev.end, area.start) > 0) {
+            return false;
+        }
+        Node[] parts = split(root, area.start);
+        root = merge(merge(parts[0], new Node(area, priorityOf(area.start), null, null)), parts[1]);
+        size++;
+        return true;
+    }
+
+    // 删除起始地址为 start 的区域
+    public VmArea remove(int start) {
+        Node[] lower = split(root, start);
+        Node[] upper = split(lower[1], start + 1);
+        if (upper[0] == null) {
+            return null;
+        }
+        root = merge(lower[0], upper[1]);
+        size--;
+        return upper[0].area;
+    }
+
+    // 在 address 处把所在区域拆成两段，address 已是区域边界时不做任何事
+    public boolean splitAt(int address) {
+        VmArea area = find(address);
+        if (area == null || area.start == address) {
+            return false;
+        }
+        remove(area.start);
+        insert(area.slice(area.start, address));
+        insert(area.slice(address, area.end));
+        return true;
+    }
+
+    // 把包含 address 的区域与前后属性相同的相邻区域合并，返回合并后的区域
+    public VmArea mergeAround(int address) {
+        VmArea area = find(address);
+        if (area == null) {
+            return null;
+        }
+        VmArea prev = floor(area.start - 1);
+        if (prev != null && prev.canMergeWith(area)) {
+            remove(prev.start);
+            remove(area.start);
+            area = new VmArea(prev.start, area.end, area.prot, area.source, prev.fileOffset, area.flags);
+            insert(area);
+        }
+        VmArea next = find(area.end);
+        if (next != null && area.canMergeWith(next)) {
+            remove(area.start);
+            remove(next.start);
+            area = new VmArea(area.start, next.end, area.prot, area.source, area.fileOffset, area.flags);
+            insert(area);
+        }
+        return area;
+    }
+
+    // 移除 [start, end) 范围内的映射，部分重叠的区域被截断
+    public void unmap(int start, int end) {
+        splitAt(start);
+        splitAt(end);
+        for (VmArea area : overlapping(start, end)) {
+            remove(area.start);
+        }
+    }
+
+    // 与 [start, end) 重叠的所有区域，按地址升序
+    public List<VmArea> overlapping(int start, int end) {
+        List<VmArea> result = new ArrayList<>();
+        collect(root, start, end, result);
+        return result;
+    }
+
+    public List<VmArea> toList() {
+        List<VmArea> result = new ArrayList<>(size);
+        collect(root, 0, -1, result);
+        return result;
+    }
+
+    // 起始地址不大于 address 的最后一个区域
+    private VmArea floor(int address) {
+        VmArea best = null;
+        Node node = root;
+        while (node != null) {
+            if (Integer.compareUnsigned(node.area.start, address) <= 0) {
+                best = node.area;
+                node = node.right;
+            } else {
+                node = node.left;
+            }
+        }
+        return best;
+    }
+
+    private static void collect(Node node, int start, int end, List<VmArea> out) {
+        if (node == null) {
+            return;
+        }
+        VmArea area = node.area;
+        if (Integer.compareUnsigned(area.start, start) > 0) {
+            collect(node.left, start, end, out);
+        }
+        if (Integer.compareUnsigned(area.end, start) > 0 && Integer.compareUnsigned(area.start, end) < 0) {
+            out.add(area);
+        }
+        if (Integer.compareUnsigned(area.start, end) < 0) {
+            collect(node.right, start, end, out);
+        }
+    }
+
+    // 按起始地址拆成 (< key, >= key) 两棵树，只复制经过的路径
+    private static Node[] split(Node node, int key) {
+        if (node == null) {
+            return new Node[2];
+        }
+        if (Integer.compareUnsigned(node.area.start, key) < 0) {
+            Node[] parts = split(node.right, key);
+            parts[0] = node.withChildren(node.left, parts[0]);
+            return parts;
+        }
+        Node[] parts = split(node.left, key);
+        parts[1] = node.withChildren(parts[1], node.right);
+        return parts;
+    }
+
+    // 合并两棵树，left 中的键都小于 right
+    private static Node merge(Node left, Node right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        if (left.priority > right.priority) {
+            return left.withChildren(left.left, merge(left.right, right));
+        }
+        return right.withChildren(merge(left, right.left), right.right);
+    }
+
+    // 由起始地址散列得到的优先级，使树的形状与插入顺序无关
+    private static int priorityOf(int start) {
+        int h = start * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
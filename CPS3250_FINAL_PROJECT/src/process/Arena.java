@@ -0,0 +1,78 @@
+package process;
+
+import java.util.Arrays;
+
+// 堆上一段连续的页：小内存块 arena 占一页并切分为同规格的内存块，大内存块直接占用若干整页
+public class Arena {
+    public final BlockDesc desc; // 大内存块时为 null
+    public final int vaddr;      // 首页虚拟地址
+    public final int pgCnt;      // 占用的页数
+    int[] freeBlocks;            // 空闲块下标栈
+    int freeCount;
+    boolean[] blockFree;         // 各块是否空闲，用于发现重复释放
+    Arena prev;
+    Arena next;
+
+    // 小内存块 arena，初始时所有块空闲
+    public Arena(BlockDesc desc, int vaddr) {
+        this.desc = desc;
+        this.vaddr = vaddr;
+        this.pgCnt = 1;
+        this.freeBlocks = new int[desc.blocksPerArena];
+        // 倒序入栈，使低地址的块先被分配
+        for (int i = 0; i < freeBlocks.length; i++) {
+            freeBlocks[i] = freeBlocks.length - 1 - i;
+        }
+        this.freeCount = freeBlocks.length;
+        this.blockFree = new boolean[desc.blocksPerArena];
+        Arrays.fill(blockFree, true);
+    }
+
+    // 大内存块 arena
+    public Arena(int vaddr, int pgCnt) {
+        this.desc = null;
+        this.vaddr = vaddr;
+        this.pgCnt = pgCnt;
+    }
+
+    // fork 时复制，desc 为子进程中对应规格的描述符
+    public Arena(Arena other, BlockDesc desc) {
+        this.desc = desc;
+        this.vaddr = other.vaddr;
+        this.pgCnt = other.pgCnt;
+        if (other.freeBlocks != null) {
+            this.freeBlocks = other.freeBlocks.clone();
+            this.blockFree = other.blockFree.clone();
+        }
+        this.freeCount = other.freeCount;
+    }
+
+    public boolean isLarge() {
+        return desc == null;
+    }
+
+    // blockVaddr 是否为本 arena 中一个已分配的块：大内存块须是首地址，小内存块须落在块边界上且尚未释放
+    public boolean isAllocated(int blockVaddr) {
+        int offset = blockVaddr - vaddr;
+        if (desc == null) {
+            return offset == 0;
+        }
+        if (offset < 0 || offset % desc.blockSize != 0) {
+            return false;
+        }
+        int idx = offset / desc.blockSize;
+        return idx < blockFree.length && !blockFree[idx];
+    }
+
+    int popBlock() {
+        int idx = freeBlocks[--freeCount];
+        blockFree[idx] = false;
+        return vaddr + idx * desc.blockSize;
+    }
+
+    void pushBlock(int blockVaddr) {
+        int idx = (blockVaddr - vaddr) / desc.blockSize;
+        blockFree[idx] = true;
+        freeBlocks[freeCount++] = idx;
+    }
+}
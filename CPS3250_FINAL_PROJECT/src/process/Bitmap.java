@@ -1,18 +1,153 @@
 package process;
 
+import java.util.Arrays;
+
+// 以 long 为单位存放的位图，1 表示已占用。
+// 拷贝构造得到的位图与原位图共享同一个数组，任意一方修改时才复制（写时复制）
 public class Bitmap {
-    public byte[] bits;
-    public int btmpBytesLen;
+    private static final int WORD_SHIFT = 6;
+    private static final int WORD_BITS = 1 << WORD_SHIFT;
+
+    private long[] words;
+    private int[] shareCount; // 共享同一 words 数组的位图个数
+    private final int bitLength;
 
+    // size 为位图的字节数
     public Bitmap(int size) {
-        bits = new byte[size];
-        btmpBytesLen = size;
+        this.bitLength = size * 8;
+        this.words = new long[(bitLength + WORD_BITS - 1) >>> WORD_SHIFT];
+        this.shareCount = new int[]{1};
+        // 末尾不足一个 long 的部分标记为已占用，扫描时不会越界
+        int tailBits = bitLength & (WORD_BITS - 1);
+        if (tailBits != 0) {
+            words[words.length - 1] = -1L << tailBits;
+        }
     }
 
-    // 拷贝构造函数
+    // 拷贝构造函数，与原位图写时复制共享
     public Bitmap(Bitmap other) {
-        this.btmpBytesLen = other.btmpBytesLen;
-        this.bits = new byte[other.bits.length];
-        System.arraycopy(other.bits, 0, this.bits, 0, other.bits.length);
+        this.bitLength = other.bitLength;
+        this.words = other.words;
+        this.shareCount = other.shareCount;
+        this.shareCount[0]++;
+    }
+
+    // 位图的位数
+    public int size() {
+        return bitLength;
+    }
+
+    public boolean test(int idx) {
+        return (words[idx >>> WORD_SHIFT] & (1L << idx)) != 0;
+    }
+
+    public void set(int idx) {
+        ensureExclusive();
+        words[idx >>> WORD_SHIFT] |= 1L << idx;
+    }
+
+    public void clear(int idx) {
+        ensureExclusive();
+        words[idx >>> WORD_SHIFT] &= ~(1L << idx);
+    }
+
+    // 把 [start, start + count) 全部置 1
+    public void setRange(int start, int count) {
+        ensureExclusive();
+        applyRange(start, count, true);
+    }
+
+    // 把 [start, start + count) 全部清 0
+    public void clearRange(int start, int count) {
+        ensureExclusive();
+        applyRange(start, count, false);
+    }
+
+    // 查找 count 个连续的空闲位，返回起始下标，找不到返回 -1。全满的 long 整个跳过
+    public int scan(int count) {
+        if (count <= 0 || count > bitLength) {
+            return -1;
+        }
+        int runStart = 0;
+        int runLength = 0;
+        for (int w = 0; w < words.length; w++) {
+            long free = ~words[w];
+            if (free == 0) {
+                runLength = 0;
+                continue;
+            }
+            int base = w << WORD_SHIFT;
+            int bit = 0;
+            while (bit < WORD_BITS) {
+                long rest = free >>> bit;
+                if ((rest & 1) == 0) {
+                    // 已占用，跳到本 long 中下一个空闲位
+                    runLength = 0;
+                    if (rest == 0) {
+                        break;
+                    }
+                    bit += Long.numberOfTrailingZeros(rest);
+                    continue;
+                }
+                int ones = Long.numberOfTrailingZeros(~rest);
+                if (runLength == 0) {
+                    runStart = base + bit;
+                }
+                runLength += ones;
+                if (runLength >= count) {
+                    return runStart;
+                }
+                bit += ones;
+            }
+        }
+        return -1;
+    }
+
+    // 以字节为单位导出 [fromByte, fromByte + len)，用于把位图写回磁盘
+    public void toBytes(int fromByte, byte[] dst, int len) {
+        for (int i = 0; i < len; i++) {
+            int byteIdx = fromByte + i;
+            dst[i] = (byte) (words[byteIdx >>> 3] >>> ((byteIdx & 7) << 3));
+        }
+    }
+
+    // 从磁盘读入的字节恢复 [fromByte, fromByte + len)
+    public void fromBytes(int fromByte, byte[] src, int len) {
+        ensureExclusive();
+        for (int i = 0; i < len; i++) {
+            int byteIdx = fromByte + i;
+            int shift = (byteIdx & 7) << 3;
+            words[byteIdx >>> 3] = (words[byteIdx >>> 3] & ~(0xFFL << shift)) | ((src[i] & 0xFFL) << shift);
+        }
+    }
+
+    // 不再使用时解除共享，另一方下次修改时不必再复制
+    public void release() {
+        shareCount[0]--;
+        words = null;
+    }
+
+    private void applyRange(int start, int count, boolean value) {
+        int end = start + count;
+        while (start < end) {
+            int w = start >>> WORD_SHIFT;
+            int bit = start & (WORD_BITS - 1);
+            int n = Math.min(WORD_BITS - bit, end - start);
+            long mask = (n == WORD_BITS ? -1L : ((1L << n) - 1)) << bit;
+            if (value) {
+                words[w] |= mask;
+            } else {
+                words[w] &= ~mask;
+            }
+            start += n;
+        }
+    }
+
+    private void ensureExclusive() {
+        if (shareCount[0] > 1) {
+            shareCount[0]--;
+            words = Arrays.copyOf(words, words.length);
+            shareCount = new int[]{1};
+        }
     }
 }
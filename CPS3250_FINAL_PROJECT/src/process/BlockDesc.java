@@ -1,8 +1,93 @@
 package process;
 
+import utils.Constants;
+
+import java.util.Map;
+
+// 内存块描述符：一种规格的内存块及其空闲 arena 链表
 public class BlockDesc {
-    // 定义块描述符的内容
-    public void init() {
-        // 初始化块描述符
+    public int blockSize;       // 内存块大小
+    public int blocksPerArena;  // 每个 arena（一页）可容纳的内存块数
+    public Arena freeArenas;    // 仍有空闲块的 arena 链表
+    public int arenaCount;      // 本规格当前持有的 arena 数
+
+    public void init(int blockSize) {
+        this.blockSize = blockSize;
+        this.blocksPerArena = Constants.PG_SIZE / blockSize;
+        this.freeArenas = null;
+        this.arenaCount = 0;
+    }
+
+    // 从空闲链表中取出一个内存块，链表为空时返回 0
+    public int allocBlock() {
+        Arena arena = freeArenas;
+        if (arena == null) {
+            return 0;
+        }
+        int vaddr = arena.popBlock();
+        if (arena.freeCount == 0) {
+            unlink(arena);
+        }
+        return vaddr;
+    }
+
+    // 新 arena 加入空闲链表
+    public void addArena(Arena arena) {
+        arenaCount++;
+        link(arena);
+    }
+
+    // 归还内存块，调用者已用 arena.isAllocated 检查过 vaddr；arena 全部空闲且本规格还有其他 arena 时返回 true，由调用者释放该页
+    public boolean freeBlock(Arena arena, int vaddr) {
+        boolean wasFull = arena.freeCount == 0;
+        arena.pushBlock(vaddr);
+        if (wasFull) {
+            link(arena);
+        }
+        if (arena.freeCount == blocksPerArena && arenaCount > 1) {
+            unlink(arena);
+            arenaCount--;
+            return true;
+        }
+        return false;
+    }
+
+    // 复制父进程的描述符，arenaMap 记录父进程 arena 到子进程 arena 的对应关系
+    public void copyFrom(BlockDesc parent, Map<Arena, Arena> arenaMap) {
+        init(parent.blockSize);
+        arenaCount = parent.arenaCount;
+        Arena tail = null;
+        for (Arena arena = parent.freeArenas; arena != null; arena = arena.next) {
+            Arena copy = arenaMap.get(arena);
+            copy.prev = tail;
+            if (tail == null) {
+                freeArenas = copy;
+            } else {
+                tail.next = copy;
+            }
+            tail = copy;
+        }
+    }
+
+    private void link(Arena arena) {
+        arena.prev = null;
+        arena.next = freeArenas;
+        if (freeArenas != null) {
+            freeArenas.prev = arena;
+        }
+        freeArenas = arena;
+    }
+
+    private void unlink(Arena arena) {
+        if (arena.prev != null) {
+            arena.prev.next = arena.next;
+        } else {
+            freeArenas = arena.next;
+        }
+        if (arena.next != null) {
+            arena.next.prev = arena.prev;
+        }
+        arena.prev = null;
+        arena.next = null;
     }
 }
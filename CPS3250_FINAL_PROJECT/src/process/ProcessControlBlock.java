@@ -1,11 +1,16 @@
 package process;
 
+import cpu.Continuation;
 import cpu.KernelStack;
-import filesystem.FileDescriptor;
 import memory.PageDirectory;
+import memory.VmAreaTree;
+import utils.Constants;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
 
 public class ProcessControlBlock {
     public long pid;
@@ -14,28 +19,75 @@ public class ProcessControlBlock {
     public int ticks;
     public int priority;
     public long parentPid;
+    public ProcessControlBlock parent; // 与 parentPid 一起由 Kernel.setParent 设置
+    public final Set<ProcessControlBlock> children = new LinkedHashSet<>(); // 尚未回收的子进程，按创建顺序
+    public int exitStatus; // 退出状态，由父进程 wait 时取走
     public Tag generalTag;
     public Tag allListTag;
     public BlockDesc[] uBlockDesc;
+    public Map<Integer, Arena> arenas; // 堆上各 arena，以首页虚拟地址为键
     public UserProgVAddr userProgVAddr;
     public String name;
     public KernelStack kernelStack; // 内核栈
     public Object selfKStack; // 栈顶指针
     public PageDirectory pageDirectory; // 页目录
-    public List<FileDescriptor> openFiles; // 打开的文件列表
+    public VmAreaTree vmAreas; // 虚拟内存区域
+    public int[] fdTable; // 文件描述符表：本地 fd 到系统打开文件表下标的映射，-1 表示空闲
+    public Continuation continuation; // 进程的执行流
+    public int asid; // 地址空间号，作为 TLB 标签
+    public long asidGeneration; // 分到 asid 时地址空间号的代，见 CPU.assignAsid
+    public int[] text; // 解释执行的程序代码，fork 后父子共享，为 null 表示执行流是 Java 代码
+    public SyscallRing ring; // 批量系统调用的提交/完成队列，不被 fork 继承
 
     public ProcessControlBlock(String name) {
         this.name = name;
         this.generalTag = new Tag();
         this.allListTag = new Tag();
-        this.uBlockDesc = new BlockDesc[7]; // 假设有 7 个块描述符
+        this.uBlockDesc = new BlockDesc[7]; // 7 种规格：16、32、64 … 1024 字节
         for (int i = 0; i < uBlockDesc.length; i++) {
             uBlockDesc[i] = new BlockDesc();
+            uBlockDesc[i].init(16 << i);
         }
-        this.openFiles = new ArrayList<>();
+        this.arenas = new HashMap<>();
+        this.fdTable = new int[Constants.MAX_FILES_OPEN_PER_PROC];
+        Arrays.fill(fdTable, -1);
         // 初始化其他属性...
         this.priority = 10; // 假设默认优先级为 10
         this.pageDirectory = new PageDirectory();
+        this.vmAreas = new VmAreaTree();
+    }
+
+    // 回收复用前恢复到刚创建时的状态；页目录在进程退出时已清空，直接沿用
+    public void reset(String name) {
+        this.pid = 0;
+        this.elapsedTicks = 0;
+        this.status = null;
+        this.ticks = 0;
+        this.priority = 10;
+        this.parentPid = 0;
+        this.parent = null;
+        this.children.clear();
+        this.exitStatus = 0;
+        this.generalTag.prev = null;
+        this.generalTag.next = null;
+        this.allListTag.prev = null;
+        this.allListTag.next = null;
+        for (int i = 0; i < uBlockDesc.length; i++) {
+            uBlockDesc[i].init(16 << i);
+        }
+        this.arenas.clear();
+        this.userProgVAddr = null;
+        this.name = name;
+        this.kernelStack = null;
+        this.selfKStack = null;
+        this.pageDirectory.pageTableEntries.clear();
+        this.vmAreas = new VmAreaTree();
+        Arrays.fill(fdTable, -1);
+        this.continuation = null;
+        this.text = null;
+        this.asid = 0;
+        this.asidGeneration = 0;
+        this.ring = null;
     }
 
     // 复制父进程的内容到子进程
@@ -47,11 +99,41 @@ public class ProcessControlBlock {
         this.priority = parent.priority;
         this.parentPid = parent.pid;
         this.name = parent.name;
+        this.text = parent.text;
         // 不复制 pageDirectory 引用
         // this.pageDirectory = parent.pageDirectory;
         // 复制 userProgVAddr
         this.userProgVAddr = new UserProgVAddr(parent.userProgVAddr);
-        // 复制打开的文件列表
-        this.openFiles = new ArrayList<>(parent.openFiles);
+        // 虚拟内存区域树与父进程共享节点，O(1) 复制
+        this.vmAreas = parent.vmAreas.fork();
+        // 复制堆的分配状态，堆页面本身随页表写时复制
+        copyHeapFrom(parent);
+        // 复制文件描述符表，只是一次数组复制，引用计数在 updateInodeOpenCounts 中增加
+        System.arraycopy(parent.fdTable, 0, this.fdTable, 0, fdTable.length);
+    }
+
+    // 深复制父进程的 arena 和块描述符
+    private void copyHeapFrom(ProcessControlBlock parent) {
+        Map<Arena, Arena> arenaMap = new HashMap<>();
+        this.arenas.clear();
+        for (Map.Entry<Integer, Arena> entry : parent.arenas.entrySet()) {
+            Arena arena = entry.getValue();
+            BlockDesc desc = arena.isLarge() ? null : uBlockDesc[indexOf(parent.uBlockDesc, arena.desc)];
+            Arena copy = new Arena(arena, desc);
+            arenaMap.put(arena, copy);
+            this.arenas.put(entry.getKey(), copy);
+        }
+        for (int i = 0; i < uBlockDesc.length; i++) {
+            uBlockDesc[i].copyFrom(parent.uBlockDesc[i], arenaMap);
+        }
+    }
+
+    private static int indexOf(BlockDesc[] descs, BlockDesc desc) {
+        for (int i = 0; i < descs.length; i++) {
+            if (descs[i] == desc) {
+                return i;
+            }
+        }
+        throw new IllegalStateException("Arena does not belong to this process.");
     }
 }
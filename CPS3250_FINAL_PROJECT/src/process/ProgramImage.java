@@ -0,0 +1,106 @@
+package process;
+
+import memory.MappedFileSource;
+import utils.Constants;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// 简单的程序映像格式（大端）：
+//   头部    magic "SIMX" | entry | segmentCount
+//   段表项  vaddr | memSize | fileSize | fileOffset | flags（VmArea.PROT_*）
+// 段的虚拟地址必须按页对齐，按页向上取整后的段尾不能越过 32 位地址空间，memSize 超出 fileSize 的部分为 0（bss）
+public class ProgramImage {
+    public static final int MAGIC = 0x53494D58; // "SIMX"
+    public static final int HEADER_SIZE = 12;
+    public static final int SEGMENT_SIZE = 20;
+
+    public static class Segment {
+        public int vaddr;
+        public int memSize;
+        public int fileSize;
+        public int fileOffset;
+        public int flags;
+        public MappedFileSource source;
+    }
+
+    public int entry;
+    public Segment[] segments;
+
+    // 32 位地址空间的大小。区域以 [start, end) 表示，段尾必须小于它，否则 end 会回绕为 0
+    public static final long ADDRESS_LIMIT = 1L << 32;
+
+    // 段按页向上取整后的结束地址（不含），按无符号数计算，可能超过 ADDRESS_LIMIT
+    public static long segmentEnd(Segment segment) {
+        long memSize = ((long) segment.memSize + Constants.PG_SIZE - 1) & ~(Constants.PG_SIZE - 1);
+        return (segment.vaddr & 0xFFFFFFFFL) + memSize;
+    }
+
+    // 映射并解析映像，只读取头部和段表，段内容在缺页时才从映射中读取
+    public static ProgramImage load(Path path) throws IOException {
+        MappedByteBuffer mapped;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        int fileLength = mapped.capacity();
+        if (fileLength < HEADER_SIZE || mapped.getInt(0) != MAGIC) {
+            throw new IOException("Not a program image: " + path);
+        }
+
+        ProgramImage image = new ProgramImage();
+        image.entry = mapped.getInt(4);
+        int segmentCount = mapped.getInt(8);
+        if (segmentCount < 0 || HEADER_SIZE + (long) segmentCount * SEGMENT_SIZE > fileLength) {
+            throw new IOException("Corrupt segment table in " + path);
+        }
+        image.segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            int at = HEADER_SIZE + i * SEGMENT_SIZE;
+            Segment segment = new Segment();
+            segment.vaddr = mapped.getInt(at);
+            segment.memSize = mapped.getInt(at + 4);
+            segment.fileSize = mapped.getInt(at + 8);
+            segment.fileOffset = mapped.getInt(at + 12);
+            segment.flags = mapped.getInt(at + 16);
+            if ((segment.vaddr & (Constants.PG_SIZE - 1)) != 0 || segment.memSize <= 0
+                    || segment.fileSize < 0 || segment.fileSize > segment.memSize
+                    || segment.fileOffset < 0 || (long) segment.fileOffset + segment.fileSize > fileLength
+                    || segmentEnd(segment) >= ADDRESS_LIMIT) {
+                throw new IOException("Corrupt segment " + i + " in " + path);
+            }
+            segment.source = new MappedFileSource(mapped, segment.fileOffset, segment.fileSize);
+            image.segments[i] = segment;
+        }
+        return image;
+    }
+
+    // 生成映像文件，contents[i] 为第 i 段的文件内容；headers[i] 为 {vaddr, memSize, flags}
+    public static void write(Path path, int entry, int[][] headers, byte[][] contents) throws IOException {
+        int fileOffset = HEADER_SIZE + headers.length * SEGMENT_SIZE;
+        int total = fileOffset;
+        for (byte[] content : contents) {
+            total += content.length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(total);
+        buffer.putInt(MAGIC).putInt(entry).putInt(headers.length);
+        for (int i = 0; i < headers.length; i++) {
+            buffer.putInt(headers[i][0]).putInt(headers[i][1]).putInt(contents[i].length)
+                    .putInt(fileOffset).putInt(headers[i][2]);
+            fileOffset += contents[i].length;
+        }
+        for (byte[] content : contents) {
+            buffer.put(content);
+        }
+        buffer.flip();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package process;
+
+import utils.Constants;
+
+// 进程的系统调用提交队列和完成队列，放在一段映射到进程地址空间的共享内存中，进程和内核访问同一组物理页。
+// 布局（字均为大端序 int，与解释器的 LW/SW 一致）：
+//   [0, 64)       头部：SQ_HEAD、SQ_TAIL、CQ_HEAD、CQ_TAIL、两个队列的容量和起始偏移
+//   SQ 起始处     entries 个 16 字节的提交项：(op << 24 | fd)、arg1、arg2、userData
+//   CQ 起始处     2 * entries 个 8 字节的完成项：userData、result
+// 进程写好提交项后推进 SQ_TAIL，内核处理后推进 SQ_HEAD；内核写完成项后推进 CQ_TAIL，进程读取后推进 CQ_HEAD。
+// 同一时刻只有一个执行流在运行，切换时已同步，不需要额外的内存屏障
+public class SyscallRing {
+    public static final int SQ_HEAD = 0;
+    public static final int SQ_TAIL = 4;
+    public static final int CQ_HEAD = 8;
+    public static final int CQ_TAIL = 12;
+    public static final int SQ_ENTRIES = 16;
+    public static final int CQ_ENTRIES = 20;
+    public static final int SQ_OFFSET = 24;
+    public static final int CQ_OFFSET = 28;
+    public static final int HEADER_SIZE = 64;
+    public static final int SQE_SIZE = 16;
+    public static final int CQE_SIZE = 8;
+    public static final int MAX_ENTRIES = 4096;
+
+    // 提交项的操作
+    public static final int OP_NOP = 0;
+    public static final int OP_READ = 1;   // read(fd, arg1 = vaddr, arg2 = count)
+    public static final int OP_WRITE = 2;  // write(fd, arg1 = vaddr, arg2 = count)
+    public static final int OP_LSEEK = 3;  // lseek(fd, arg1 = offset, arg2 = whence)
+    public static final int OP_CLOSE = 4;
+    public static final int OP_PEEK = 5;   // 结果为 arg1 处的字
+    public static final int OP_POKE = 6;   // 把 arg2 写到 arg1 处的字
+    public static final int OP_GETPID = 7;
+
+    // 完成项结果为 -EAGAIN：轮询线程代替进程执行时操作需要阻塞（如管道空或满），进程应自己重试
+    public static final int EAGAIN = 11;
+
+    public final int address; // 在进程地址空间中的起始地址
+    public final int entries;
+    private final byte[][] pages;
+    private final int sqOffset;
+    private final int cqOffset;
+
+    public SyscallRing(int address, int entries, byte[][] pages) {
+        this.address = address;
+        this.entries = entries;
+        this.pages = pages;
+        this.sqOffset = HEADER_SIZE;
+        this.cqOffset = HEADER_SIZE + entries * SQE_SIZE;
+        putInt(SQ_ENTRIES, entries);
+        putInt(CQ_ENTRIES, 2 * entries);
+        putInt(SQ_OFFSET, sqOffset);
+        putInt(CQ_OFFSET, cqOffset);
+    }
+
+    // entries 个提交项需要的字节数
+    public static int bytesFor(int entries) {
+        return HEADER_SIZE + entries * SQE_SIZE + 2 * entries * CQE_SIZE;
+    }
+
+    public int getInt(int offset) {
+        byte[] page = pages[offset / Constants.PG_SIZE];
+        int o = offset % Constants.PG_SIZE;
+        return (page[o] << 24) | ((page[o + 1] & 0xFF) << 16) | ((page[o + 2] & 0xFF) << 8) | (page[o + 3] & 0xFF);
+    }
+
+    public void putInt(int offset, int value) {
+        byte[] page = pages[offset / Constants.PG_SIZE];
+        int o = offset % Constants.PG_SIZE;
+        page[o] = (byte) (value >>> 24);
+        page[o + 1] = (byte) (value >>> 16);
+        page[o + 2] = (byte) (value >>> 8);
+        page[o + 3] = (byte) value;
+    }
+
+    // ---- 进程一侧，供 Java 代码写的进程使用；解释执行的程序按上面的布局直接读写 ----
+
+    // 追加一个提交项，队列满时返回 false
+    public boolean prepare(int op, int fd, int arg1, int arg2, int userData) {
+        int tail = getInt(SQ_TAIL);
+        if (tail - getInt(SQ_HEAD) >= entries) {
+            return false;
+        }
+        int entry = sqOffset + (tail & (entries - 1)) * SQE_SIZE;
+        putInt(entry, op << 24 | (fd & 0xFFFFFF));
+        putInt(entry + 4, arg1);
+        putInt(entry + 8, arg2);
+        putInt(entry + 12, userData);
+        putInt(SQ_TAIL, tail + 1);
+        return true;
+    }
+
+    // 取出最多 max 个完成项，返回个数
+    public int reap(int[] userData, int[] results, int max) {
+        int head = getInt(CQ_HEAD);
+        int n = Math.min(max, getInt(CQ_TAIL) - head);
+        int mask = 2 * entries - 1;
+        for (int i = 0; i < n; i++) {
+            int entry = cqOffset + ((head + i) & mask) * CQE_SIZE;
+            userData[i] = getInt(entry);
+            results[i] = getInt(entry + 4);
+        }
+        putInt(CQ_HEAD, head + n);
+        return n;
+    }
+
+    // ---- 内核一侧 ----
+
+    // 待处理的提交项数。队列指针由进程写入，不可信，越界时返回 -1
+    public int submitted() {
+        int n = getInt(SQ_TAIL) - getInt(SQ_HEAD);
+        return n < 0 || n > entries ? -1 : n;
+    }
+
+    public int completionSpace() {
+        int used = getInt(CQ_TAIL) - getInt(CQ_HEAD);
+        return used < 0 || used > 2 * entries ? 0 : 2 * entries - used;
+    }
+
+    // 第 i 个待处理提交项的第 word 个字
+    public int sqe(int i, int word) {
+        return getInt(sqOffset + ((getInt(SQ_HEAD) + i) & (entries - 1)) * SQE_SIZE + word * 4);
+    }
+
+    public void consume(int n) {
+        putInt(SQ_HEAD, getInt(SQ_HEAD) + n);
+    }
+
+    // 写入一个完成项，调用者已确认有空间
+    public void complete(int userData, int result) {
+        int tail = getInt(CQ_TAIL);
+        int entry = cqOffset + (tail & (2 * entries - 1)) * CQE_SIZE;
+        putInt(entry, userData);
+        putInt(entry + 4, result);
+        putInt(CQ_TAIL, tail + 1);
+    }
+}
@@ -3,5 +3,9 @@ package process;
 public enum TaskStatus {
     TASK_READY,
     TASK_RUNNING,
+    TASK_BLOCKED,
+    TASK_WAITING,
+    TASK_HANGING, // 已退出、等待父进程回收
+    TASK_DIED,
     // 其他状态...
 }
@@ -1,5 +1,7 @@
 package process;
 
+import utils.Constants;
+
 public class UserProgVAddr {
     public Bitmap vaddrBitmap;
     public int vaddrStart;
@@ -9,9 +11,43 @@ public class UserProgVAddr {
         this.vaddrBitmap = new Bitmap(bitmapSize);
     }
 
-    // 拷贝构造函数
+    // 拷贝构造函数，位图与原进程写时复制共享
     public UserProgVAddr(UserProgVAddr other) {
         this.vaddrStart = other.vaddrStart;
         this.vaddrBitmap = new Bitmap(other.vaddrBitmap);
     }
+
+    // 分配 pgCnt 个连续的虚拟页，返回起始虚拟地址，空间不足时返回 -1
+    public int allocVirtualPages(int pgCnt) {
+        int bitIdxStart = vaddrBitmap.scan(pgCnt);
+        if (bitIdxStart == -1) {
+            return -1;
+        }
+        vaddrBitmap.setRange(bitIdxStart, pgCnt);
+        return vaddrStart + bitIdxStart * Constants.PG_SIZE;
+    }
+
+    // 占用从 vaddr 开始的 pgCnt 个指定的虚拟页，其中有已占用的页时返回 false
+    public boolean reserveVirtualPages(int vaddr, int pgCnt) {
+        int bitIdxStart = (vaddr - vaddrStart) / Constants.PG_SIZE;
+        for (int i = 0; i < pgCnt; i++) {
+            if (vaddrBitmap.test(bitIdxStart + i)) {
+                return false;
+            }
+        }
+        vaddrBitmap.setRange(bitIdxStart, pgCnt);
+        return true;
+    }
+
+    // [vaddr, vaddr + pgCnt 页) 是否全部落在位图管理的范围内
+    public boolean contains(int vaddr, int pgCnt) {
+        long first = ((long) vaddr - vaddrStart) / Constants.PG_SIZE;
+        return vaddr >= vaddrStart && first + pgCnt <= vaddrBitmap.size();
+    }
+
+    // 释放从 vaddr 开始的 pgCnt 个虚拟页
+    public void freeVirtualPages(int vaddr, int pgCnt) {
+        int bitIdxStart = (vaddr - vaddrStart) / Constants.PG_SIZE;
+        vaddrBitmap.clearRange(bitIdxStart, pgCnt);
+    }
 }
@@ -0,0 +1,188 @@
+package simulation;
+
+import utils.ChromeTrace;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// 无界面的批量运行：读入场景文件（格式见 Scenario），把展开后的全部场景放到工作窃取线程池中并行运行，
+// 每个场景用自己的 Kernel 和事件引擎，互不共享状态。每个场景完成后立即输出一行结果，顺序与完成顺序相同。
+// 指定 --trace 目录时每个场景的内核记录 Chrome 跟踪事件，写到目录下的 <场景名>.json。
+// 用法：BatchRunner [--threads N] [--format csv|json] [--out 文件] [--trace 目录] 场景文件...
+public class BatchRunner {
+    static final String[] COLUMNS = {
+            "name", "seed", "processes", "fanout", "pages", "forkRatio", "writeRatio", "ioRatio", "duration",
+            "actions", "wallMs", "events", "simulatedMs", "forks", "exits", "reaps", "writes", "cowFaults", "ios",
+            "switches", "preemptions", "cpuBusy", "peakProcesses", "framesInUse", "trace"};
+
+    final PrintWriter out;
+    final boolean json;
+    final Path traceDir;
+    int failures;
+
+    BatchRunner(PrintWriter out, boolean json, Path traceDir) {
+        this.out = out;
+        this.json = json;
+        this.traceDir = traceDir;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        String format = "csv";
+        String outPath = null;
+        Path traceDir = null;
+        List<Scenario> scenarios = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "--format":
+                    format = args[++i];
+                    break;
+                case "--out":
+                    outPath = args[++i];
+                    break;
+                case "--trace":
+                    traceDir = Files.createDirectories(Paths.get(args[++i]));
+                    break;
+                default:
+                    scenarios.addAll(Scenario.load(Paths.get(args[i])));
+            }
+        }
+        if (scenarios.isEmpty() || !(format.equals("csv") || format.equals("json"))) {
+            System.err.println("Usage: BatchRunner [--threads N] [--format csv|json] [--out file] [--trace dir] "
+                    + "scenario-file...");
+            System.exit(2);
+        }
+
+        PrintWriter out = new PrintWriter(outPath == null
+                ? new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8))
+                : Files.newBufferedWriter(Paths.get(outPath), StandardCharsets.UTF_8));
+        BatchRunner runner = new BatchRunner(out, format.equals("json"), traceDir);
+        if (!runner.json) {
+            out.println(String.join(",", COLUMNS));
+            out.flush();
+        }
+        long start = System.nanoTime();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        pool.invoke(runner.new Sweep(scenarios, 0, scenarios.size()));
+        pool.shutdown();
+        out.close();
+        System.err.printf("%d scenarios on %d threads in %.1f s, %d failed%n",
+                scenarios.size(), threads, (System.nanoTime() - start) / 1e9, runner.failures);
+        if (runner.failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    // 场景区间对半拆分，空闲的工作线程从其他线程的队列中窃取尚未开始的一半。
+    // ForkJoinTask 实现了 Serializable，但任务只在本进程内执行，不会被序列化
+    @SuppressWarnings("serial")
+    final class Sweep extends RecursiveAction {
+        final List<Scenario> scenarios;
+        final int from;
+        final int to;
+
+        Sweep(List<Scenario> scenarios, int from, int to) {
+            this.scenarios = scenarios;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                run(scenarios.get(from));
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new Sweep(scenarios, from, mid), new Sweep(scenarios, mid, to));
+        }
+    }
+
+    void run(Scenario scenario) {
+        Object[] row;
+        EventDrivenSimulation sim = null;
+        try {
+            sim = new EventDrivenSimulation(scenario);
+            ChromeTrace trace = traceDir == null ? null : sim.kernel.startChromeTrace(scenario.toString());
+            long start = System.nanoTime();
+            sim.run();
+            long elapsed = System.nanoTime() - start;
+            if (trace != null) {
+                trace.write(traceDir.resolve(scenario.name + ".json"));
+            }
+            long simulated = sim.loop.now();
+            row = new Object[]{
+                    scenario.name, scenario.seed, scenario.processes, scenario.fanout, scenario.pages,
+                    scenario.forkRatio, scenario.writeRatio, scenario.ioRatio, scenario.duration, scenario.actions,
+                    round(elapsed / 1e6), sim.loop.eventsProcessed, round(simulated / 1e6), sim.forks, sim.exits,
+                    sim.reaps, sim.writes, sim.faults, sim.ios, sim.switches, sim.preemptions,
+                    round(simulated == 0 ? 0 : (double) sim.busyNanos / simulated), sim.peakProcesses,
+                    sim.kernel.memory.framesInUse(), String.format("%016x", sim.trace)};
+        } catch (RuntimeException | IOException e) {
+            synchronized (this) {
+                failures++;
+            }
+            System.err.println(scenario + " failed: " + e);
+            return;
+        } finally {
+            // 每个场景一个内核，用完停止它的日志线程
+            if (sim != null) {
+                sim.kernel.log.close();
+            }
+        }
+        String line = json ? toJson(row) : toCsv(row);
+        synchronized (out) {
+            out.println(line);
+            out.flush();
+        }
+    }
+
+    static double round(double value) {
+        return Math.round(value * 1000) / 1000.0;
+    }
+
+    static String toCsv(Object[] row) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < row.length; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(format(row[i]));
+        }
+        return sb.toString();
+    }
+
+    static String toJson(Object[] row) {
+        StringBuilder sb = new StringBuilder("{");
+        for (int i = 0; i < row.length; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append('"').append(COLUMNS[i]).append("\":");
+            if (row[i] instanceof String) {
+                sb.append('"').append(((String) row[i]).replace("\\", "\\\\").replace("\"", "\\\"")).append('"');
+            } else {
+                sb.append(format(row[i]));
+            }
+        }
+        return sb.append('}').toString();
+    }
+
+    static String format(Object value) {
+        return value instanceof Double ? String.format(Locale.ROOT, "%s", value) : String.valueOf(value);
+    }
+}
@@ -0,0 +1,91 @@
+package simulation;
+
+import cpu.Assembler;
+import process.ProcessControlBlock;
+import utils.EventLog;
+
+import static cpu.Opcodes.*;
+
+// 上下文切换开销：若干个解释执行的进程轮流运行，每个反复用 call/ret 访问自己的 16 页数据。
+// 比较 TLB 带地址空间号（切换不清空）和每次切换清空整个 TLB，在不同时间片长度下的切换延迟分布、TLB 未命中数和吞吐
+// 用法：ContextSwitchBenchmark [进程数] [遍数]
+public class ContextSwitchBenchmark {
+    static final Kernel kernel = new Kernel();
+    static final int DATA_PAGES = 16;
+
+    public static void main(String[] args) {
+        int processes = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int passes = args.length > 1 ? Integer.parseInt(args[1]) : 20_000;
+        kernel.log.level = EventLog.OFF;
+
+        // 预热
+        run(true, 1 << 10, processes, passes / 10, false);
+
+        System.out.println(processes + " processes x " + DATA_PAGES + " pages x " + passes + " passes");
+        for (boolean tagging : new boolean[]{true, false}) {
+            for (int quantum : new int[]{1 << 10, 1 << 14, 1 << 16}) {
+                run(tagging, quantum, processes, passes, true);
+            }
+        }
+    }
+
+    static void run(boolean tagging, int quantum, int processes, int passes, boolean print) {
+        kernel.cpu.tlbTagging = tagging;
+        kernel.cpu.quantum = quantum;
+        ProcessControlBlock shell = InterpreterBenchmark.shell(kernel);
+        int[] text = toucher(passes);
+        for (int i = 0; i < processes; i++) {
+            // 多一页放栈
+            long pid = kernel.spawnProgram("toucher", text, DATA_PAGES + 1);
+            kernel.setParent(kernel.getProcessByPid(pid), shell);
+        }
+
+        kernel.cpu.switchLatency.reset();
+        kernel.cpu.tlb.misses = 0;
+        kernel.cpu.tlb.flushes = 0;
+        long switches = kernel.cpu.switches;
+        long instructions = kernel.cpu.instructionsRetired;
+        long start = System.nanoTime();
+        while (kernel.schedule()) {
+            // 运行到所有进程结束
+        }
+        long elapsed = System.nanoTime() - start;
+        instructions = kernel.cpu.instructionsRetired - instructions;
+        switches = kernel.cpu.switches - switches;
+
+        int[] status = new int[1];
+        long pid;
+        while ((pid = kernel.sysWait(shell, status)) > 0) {
+            if (status[0] != passes) {
+                throw new IllegalStateException("PID " + pid + " exited with " + status[0] + ", expected " + passes);
+            }
+        }
+        kernel.releaseProcess(shell);
+        if (print) {
+            System.out.printf("tagged=%-5b quantum=%-6d %7d switches %9d TLB misses %7d flushes %7.1f MIPS%n",
+                    tagging, quantum, switches, kernel.cpu.tlb.misses, kernel.cpu.tlb.flushes, instructions / (elapsed / 1e3));
+            System.out.println("    switch " + kernel.cpu.switchLatency.summary());
+        }
+    }
+
+    // 每遍对每页调用一次 touch，把页首的字加 1；退出状态为第一页页首的值，即遍数
+    static int[] toucher(int passes) {
+        int data = Kernel.USER_DATA;
+        return new Assembler()
+                .li(1, data).li(2, data + DATA_PAGES * 4096).li(7, passes).li(8, 0)
+                .label("pass").cmp(8, 7).jge("done")
+                .mov(4, 1)
+                .label("loop").cmp(4, 2).jge("endpass")
+                .call("touch")
+                .addi(4, 4, 4096)
+                .jmp("loop")
+                .label("endpass").addi(8, 8, 1)
+                .jmp("pass")
+                .label("done").lw(1, 1, 0).syscall(SYS_EXIT)
+                .label("touch").push(5)
+                .lw(5, 4, 0).addi(5, 5, 1).sw(5, 4, 0)
+                .pop(5)
+                .ret()
+                .assemble();
+    }
+}
@@ -0,0 +1,303 @@
+package simulation;
+
+import cpu.CPU;
+import filesystem.LatencyModel;
+import memory.PageTableEntry;
+import process.ProcessControlBlock;
+import process.TaskStatus;
+import utils.EventLog;
+import utils.EventLoop;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// 用离散事件引擎驱动内核：时钟中断、CPU 区间结束、I/O 完成都是模拟时钟上的事件，
+// 事件处理函数调用真实的 sysFork、写时复制缺页、sysWait/sysExit 和就绪队列，只有耗时是模拟的。
+// 所有随机选择（CPU 区间长度、下一步操作、访问的页和块）以及 PID 都来自固定种子，
+// 同一种子两次运行的事件序列逐个相同，用事件序列的散列比较。负载参数见 Scenario，BatchRunner 用它批量运行。
+// 用法：EventDrivenSimulation [种子] [根进程操作数] [最大进程数] [倍速，0 为尽快运行]
+public class EventDrivenSimulation {
+    // 事件类型
+    static final int EV_TIMER = 0;
+    static final int EV_BURST_END = 1;
+    static final int EV_IO_DONE = 2;
+
+    // 模拟耗时（纳秒）
+    static final long TICK = 250_000;        // 时钟中断周期
+    static final int QUANTUM_TICKS = 4;      // 时间片
+    static final long SWITCH_COST = 2_000;   // 上下文切换
+    static final long FORK_COST = 20_000;    // fork 的固定开销，另外每个页表项 PTE_COST
+    static final long PTE_COST = 200;
+    static final long FAULT_COST = 3_000;    // 写时复制缺页
+    static final long WRITE_COST = 100;
+    static final long MEAN_BURST = 150_000;  // CPU 区间的平均长度
+    static final int DISK_BLOCKS = 1 << 20;
+
+    // 模拟中的一个进程
+    static final class Task {
+        final ProcessControlBlock pcb;
+        long remaining;   // 当前 CPU 区间还要运行的时间，0 表示需要新的区间
+        long generation;  // 每安排一次区间结束事件加一，被抢占后旧事件作废
+        int actionsLeft;  // 做完这些操作后回收子进程并退出
+
+        Task(ProcessControlBlock pcb, int actionsLeft) {
+            this.pcb = pcb;
+            this.actionsLeft = actionsLeft;
+        }
+    }
+
+    final Kernel kernel = new Kernel(); // 每次运行用一个新的内核，互不影响
+    final EventLoop loop;
+    final Scenario scenario;
+    final LatencyModel disk = LatencyModel.ssd();
+    final Map<Long, Task> tasks = new HashMap<>(); // 未退出的进程
+    final byte[] writeBuffer = new byte[8];
+    final int[] status = new int[1];
+
+    Task running;
+    long runStart;   // running 开始执行的时刻
+    int sliceTicks;  // 时间片剩余的时钟中断数
+    long diskFreeAt;
+    int diskHead;
+
+    // 统计
+    long forks, exits, reaps, faults, writes, ios, preemptions, switches, busyNanos;
+    int peakProcesses;
+    long trace = 0xcbf29ce484222325L; // 事件序列的 FNV-1a 散列
+
+    EventDrivenSimulation(Scenario scenario) {
+        this.loop = new EventLoop(scenario.seed);
+        this.scenario = scenario;
+        kernel.log.level = EventLog.OFF;
+        kernel.pids.seed(scenario.seed);
+        loop.on(EV_TIMER, (arg, payload) -> timer());
+        loop.on(EV_BURST_END, (arg, payload) -> burstEnd((Task) payload, arg));
+        loop.on(EV_IO_DONE, (arg, payload) -> ioDone((Task) payload));
+    }
+
+    public static void main(String[] args) {
+        long seed = args.length > 0 ? Long.parseLong(args[0]) : 42;
+        int rootActions = args.length > 1 ? Integer.parseInt(args[1]) : 20_000;
+        int maxProcesses = args.length > 2 ? Integer.parseInt(args[2]) : 64;
+        double speed = args.length > 3 ? Double.parseDouble(args[3]) : 0;
+
+        engineThroughput(seed, 1024, 5_000_000);
+
+        // 同一种子运行两次，事件序列应当完全相同
+        Scenario scenario = new Scenario();
+        scenario.seed = seed;
+        scenario.actions = rootActions;
+        scenario.processes = maxProcesses;
+        long first = runOnce(scenario, speed);
+        long second = runOnce(scenario, speed);
+        System.out.printf("trace %016x vs %016x: %s%n", first, second,
+                first == second ? "reproducible" : "DIFFERENT");
+        if (first != second) {
+            throw new IllegalStateException("Runs with the same seed diverged");
+        }
+    }
+
+    // 引擎本身的吞吐：timers 个定时器，每次触发后以随机间隔重新安排自己
+    static void engineThroughput(long seed, int timers, long events) {
+        EventLoop loop = new EventLoop(seed);
+        loop.on(0, (arg, payload) -> {
+            if (loop.eventsProcessed + loop.pending() <= events) {
+                loop.after(1 + loop.random.nextInt(1_000_000), 0, arg, null);
+            }
+        });
+        for (int i = 0; i < timers; i++) {
+            loop.at(loop.random.nextInt(1_000_000), 0, i, null);
+        }
+        long start = System.nanoTime();
+        long processed = loop.run();
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("engine   %9d events %8.1f ms %6.2f M events/s (%d pending timers)%n",
+                processed, elapsed / 1e6, processed / (elapsed / 1e3), timers);
+    }
+
+    static long runOnce(Scenario scenario, double speed) {
+        EventDrivenSimulation sim = new EventDrivenSimulation(scenario);
+        sim.loop.speed = speed;
+        long start = System.nanoTime();
+        sim.run();
+        long elapsed = System.nanoTime() - start;
+        sim.kernel.log.close();
+        if (!sim.tasks.isEmpty() || !sim.kernel.readyQueue.isEmpty()) {
+            throw new IllegalStateException(sim.tasks.size() + " processes did not finish");
+        }
+        long simulated = sim.loop.now();
+        System.out.printf("kernel   %9d events %8.1f ms %6.2f M events/s, simulated %.1f ms (%.1fx real time), "
+                        + "CPU busy %.0f%%%n",
+                sim.loop.eventsProcessed, elapsed / 1e6, sim.loop.eventsProcessed / (elapsed / 1e3),
+                simulated / 1e6, (double) simulated / elapsed, 100.0 * sim.busyNanos / simulated);
+        System.out.printf("         forks=%d exits=%d reaped=%d writes=%d cowFaults=%d io=%d switches=%d "
+                        + "preemptions=%d%n",
+                sim.forks, sim.exits, sim.reaps, sim.writes, sim.faults, sim.ios, sim.switches, sim.preemptions);
+        return sim.trace;
+    }
+
+    // 运行场景：设置了时长时运行到该模拟时刻为止，否则运行到所有进程退出
+    void run() {
+        start();
+        if (scenario.duration > 0) {
+            loop.runUntil(scenario.duration * 1_000_000);
+        } else {
+            loop.run();
+        }
+    }
+
+    // 和 ForkSimulation.main 一样创建带数据页的根进程
+    void start() {
+        ProcessControlBlock root = kernel.createParentProcess("root", scenario.pages);
+        tasks.put(root.pid, new Task(root, scenario.actions == 0 ? Integer.MAX_VALUE : scenario.actions));
+        peakProcesses = 1;
+        root.status = TaskStatus.TASK_READY;
+        kernel.readyQueue.add(root);
+        loop.at(TICK, EV_TIMER, 0, null);
+        dispatchIfIdle();
+    }
+
+    // 时钟中断：时间片用完且有进程在等待时抢占
+    void timer() {
+        kernel.ticks++;
+        if (running != null && --sliceTicks <= 0 && !kernel.readyQueue.isEmpty()) {
+            Task task = running;
+            task.remaining = Math.max(1, task.remaining - (loop.now() - runStart));
+            busyNanos += Math.max(0, loop.now() - runStart);
+            task.generation++;
+            task.pcb.status = TaskStatus.TASK_READY;
+            kernel.readyQueue.add(task.pcb);
+            running = null;
+            preemptions++;
+            record(EV_TIMER, task.pcb.pid);
+        }
+        if (!tasks.isEmpty()) {
+            loop.after(TICK, EV_TIMER, 0, null);
+        }
+        dispatchIfIdle();
+    }
+
+    void burstEnd(Task task, long generation) {
+        if (task != running || generation != task.generation) {
+            return; // 区间结束前已被抢占
+        }
+        busyNanos += loop.now() - runStart;
+        task.remaining = 0;
+        record(EV_BURST_END, task.pcb.pid);
+        long cost = act(task);
+        if (running == task) {
+            // 还在 CPU 上，开始下一个区间
+            runStart = loop.now() + cost;
+            task.remaining = burst();
+            loop.at(runStart + task.remaining, EV_BURST_END, ++task.generation, task);
+        }
+        dispatchIfIdle();
+    }
+
+    void ioDone(Task task) {
+        record(EV_IO_DONE, task.pcb.pid);
+        kernel.threadUnblock(task.pcb);
+        dispatchIfIdle();
+    }
+
+    void dispatchIfIdle() {
+        if (running != null || kernel.readyQueue.isEmpty()) {
+            return;
+        }
+        ProcessControlBlock next = kernel.readyQueue.remove(0);
+        Task task = tasks.get(next.pid);
+        next.status = TaskStatus.TASK_RUNNING;
+        kernel.setRunningProcess(next);
+        running = task;
+        sliceTicks = QUANTUM_TICKS;
+        switches++;
+        runStart = loop.now() + SWITCH_COST;
+        if (task.remaining == 0) {
+            task.remaining = burst();
+        }
+        loop.at(runStart + task.remaining, EV_BURST_END, ++task.generation, task);
+    }
+
+    // 进程在 CPU 区间结束时做一次操作，返回操作的模拟耗时。阻塞或退出时让出 CPU
+    long act(Task task) {
+        ProcessControlBlock pcb = task.pcb;
+        if (--task.actionsLeft <= 0) {
+            // 先回收子进程，没有子进程了才退出
+            long pid = kernel.sysWait(pcb, status);
+            if (pid > 0) {
+                reaps++;
+                return SWITCH_COST;
+            }
+            if (pid == 0) {
+                pcb.status = TaskStatus.TASK_WAITING;
+                running = null;
+                return 0;
+            }
+            tasks.remove(pcb.pid);
+            running = null;
+            exits++;
+            kernel.sysExit(pcb, (int) (pcb.pid & 0x7F));
+            return 0;
+        }
+
+        double roll = loop.random.nextDouble();
+        if (roll < scenario.forkRatio) {
+            // 一次创建 fanout 个子进程，进程数到上限后不再创建
+            long cost = 0;
+            for (int i = 0; i < scenario.fanout && tasks.size() < scenario.processes; i++) {
+                kernel.setRunningProcess(pcb);
+                long childPid = kernel.sysFork();
+                cost += FORK_COST;
+                if (childPid <= 0) {
+                    break;
+                }
+                ProcessControlBlock child = kernel.getProcessByPid(childPid);
+                tasks.put(childPid, new Task(child, 5 + loop.random.nextInt(50)));
+                forks++;
+                record(-1, childPid);
+                cost += PTE_COST * child.pageDirectory.pageTableEntries.size();
+            }
+            peakProcesses = Math.max(peakProcesses, tasks.size());
+            return cost;
+        }
+        roll -= scenario.forkRatio;
+        if (roll < scenario.writeRatio) {
+            int address = 0x8048000 + loop.random.nextInt(scenario.pages) * Kernel.PG_SIZE
+                    + loop.random.nextInt(Kernel.PG_SIZE - writeBuffer.length);
+            PageTableEntry entry = pcb.pageDirectory.getPageTableEntry(address & ~(Kernel.PG_SIZE - 1));
+            boolean fault = entry == null || entry.readOnly;
+            kernel.writeMemory(pcb, address, writeBuffer);
+            writes++;
+            if (fault) {
+                faults++;
+                return FAULT_COST;
+            }
+            return WRITE_COST;
+        }
+        roll -= scenario.writeRatio;
+        if (roll < scenario.ioRatio) {
+            // 单队列磁盘，按到达顺序服务
+            int block = loop.random.nextInt(DISK_BLOCKS);
+            long service = disk.serviceNanos(diskHead, block, 1, Kernel.PG_SIZE);
+            diskFreeAt = Math.max(loop.now(), diskFreeAt) + service;
+            diskHead = block + 1;
+            pcb.status = TaskStatus.TASK_BLOCKED;
+            running = null;
+            ios++;
+            loop.at(diskFreeAt, EV_IO_DONE, 0, task);
+            return 0;
+        }
+        return 0;
+    }
+
+    // 指数分布的 CPU 区间
+    long burst() {
+        return 1 + (long) (-Math.log(1 - loop.random.nextDouble()) * MEAN_BURST);
+    }
+
+    void record(int kind, long pid) {
+        trace = (trace ^ loop.now()) * 0x100000001b3L;
+        trace = (trace ^ kind) * 0x100000001b3L;
+        trace = (trace ^ pid) * 0x100000001b3L;
+    }
+}
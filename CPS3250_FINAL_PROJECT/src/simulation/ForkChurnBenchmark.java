@@ -0,0 +1,94 @@
+package simulation;
+
+import process.ProcessControlBlock;
+import utils.EventLog;
+
+import javax.management.JMException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+
+// fork/exit 循环压测：父进程不断 fork 子进程，子进程写一页触发写时复制后退出，父进程 wait 回收。
+// 用法：ForkChurnBenchmark [迭代次数] [--no-pool]，定期输出物理页、PID、进程表和堆的占用，用来确认没有泄漏，
+// 以及每次 fork 的分配字节数和 GC 次数/耗时，用来对比有无内核对象缓存。
+// 运行期间内核指标以 simulation:type=Kernel,name=fork-churn 导出到 JMX，可以用 jconsole 观察，结束时输出一次快照
+public class ForkChurnBenchmark {
+    static final Kernel kernel = new Kernel();
+
+    public static void main(String[] args) throws JMException {
+        long iterations = args.length > 0 ? Long.parseLong(args[0]) : 10_000_000L;
+        long reportEvery = Math.max(1, iterations / 10);
+        boolean pooling = !Arrays.asList(args).contains("--no-pool");
+
+        kernel.log.level = EventLog.OFF;
+        kernel.setPoolingEnabled(pooling);
+        kernel.metrics.registerMBean("fork-churn");
+        System.out.println("pooling=" + pooling);
+        ProcessControlBlock parentProcess = kernel.createParentProcess("parent");
+        kernel.setRunningProcess(parentProcess);
+
+        byte[] data = new byte[]{1, 2, 3, 4};
+        int[] status = new int[1];
+        long startTime = System.nanoTime();
+        long lastAllocated = allocatedBytes();
+        long lastGcCount = gcCount();
+        long lastGcTime = gcTime();
+        for (long i = 1; i <= iterations; i++) {
+            long childPid = kernel.sysFork();
+            ProcessControlBlock child = kernel.getProcessByPid(childPid);
+            kernel.writeMemory(child, parentProcess.userProgVAddr.vaddrStart, data);
+            kernel.sysExit(child, 0);
+            if (kernel.sysWait(parentProcess, status) != childPid) {
+                throw new IllegalStateException("Child PID " + childPid + " was not reaped.");
+            }
+
+            if (i % reportEvery == 0) {
+                Runtime runtime = Runtime.getRuntime();
+                long usedHeap = (runtime.totalMemory() - runtime.freeMemory()) / (1024 * 1024);
+                long elapsed = (System.nanoTime() - startTime) / 1_000_000;
+                long allocated = allocatedBytes();
+                long gcCount = gcCount();
+                long gcTime = gcTime();
+                System.out.println("forks=" + i
+                        + " frames=" + kernel.memory.framesInUse()
+                        + " pids=" + kernel.pids.assignedCount()
+                        + " processes=" + kernel.allProcesses.size()
+                        + " heapMB=" + usedHeap
+                        + " allocBytesPerFork=" + (allocated - lastAllocated) / reportEvery
+                        + " gcCount=" + (gcCount - lastGcCount)
+                        + " gcMs=" + (gcTime - lastGcTime)
+                        + " elapsedMs=" + elapsed);
+                lastAllocated = allocated;
+                lastGcCount = gcCount;
+                lastGcTime = gcTime;
+            }
+        }
+        System.out.println(kernel.metrics.snapshot());
+    }
+
+    // 当前线程累计分配的字节数，JVM 不支持时返回 0
+    private static long allocatedBytes() {
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        if (threadBean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threadBean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+        }
+        return count;
+    }
+
+    private static long gcTime() {
+        long time = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            time += Math.max(0, gc.getCollectionTime());
+        }
+        return time;
+    }
+}
@@ -1,8 +1,7 @@
 package simulation;
 
-import cpu.*;
-import filesystem.*;
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.beans.property.*;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
@@ -12,13 +11,14 @@ import javafx.scene.control.*;
 import javafx.scene.chart.*;
 import javafx.scene.layout.*;
 import javafx.stage.Stage;
-import memory.*;
-//import memory.PageTableEntry;
-//import memory.PhysicalMemoryManager;
-import process.*;
-//import utils.PIDGenerator;
+import process.ProcessControlBlock;
+import utils.EventLog;
+import utils.LatencyHistogram;
+import utils.Metrics;
 
-import java.util.*;
+import javax.management.JMException;
+import java.util.Arrays;
+import java.util.concurrent.ScheduledFuture;
 
 public class ForkSimulationGUI extends Application {
     private final ObservableList<Process> processes = FXCollections.observableArrayList();
@@ -32,26 +32,16 @@ public class ForkSimulationGUI extends Application {
 
 
     private final Label initTimeLabel = new Label("Initialization Time: N/A");
-    private static final Label copyOnWriteTimeLabel = new Label("Copy-On-Write Time: N/A");
-
-
-    private String duration;
-    private static String cowDuration;
-
-
+    private final Label copyOnWriteTimeLabel = new Label("Copy-On-Write Time: N/A");
+    // 内核指标，每 500 毫秒按快照刷新一次
+    private final Label metricsLabel = new Label();
+    private ScheduledFuture<?> metricsRefresh;
 
     // 新增：用于显示日志信息的文本区域
-    private static final TextArea logTextArea = new TextArea();
-
-    // 保持与 ForkSimulation 中相同的静态变量
-    static final int PG_SIZE = 4096;
-    static final int BITMAP_MASK = 1;
+    private final TextArea logTextArea = new TextArea();
 
-    static List<ProcessControlBlock> readyQueue = new LinkedList<>();
-    static List<ProcessControlBlock> allProcesses = new LinkedList<>();
-
-    // 模拟当前运行的进程
-    static ProcessControlBlock runningProcess;
+    // 界面驱动的内核，fork、写时复制和进程表都由它完成，内核日志输出到日志区域
+    private final Kernel kernel = new Kernel();
 
 
     public static void main(String[] args) {
@@ -61,6 +51,18 @@ public class ForkSimulationGUI extends Application {
     @Override
     public void start(Stage primaryStage) {
         primaryStage.setTitle("Process Management Simulation");
+        // 内核日志由后台线程格式化，每批文本在界面线程上追加一次
+        kernel.log.level = EventLog.DEBUG;
+        kernel.log.sink = text -> Platform.runLater(() -> logTextArea.appendText(text + "\n"));
+        try {
+            kernel.metrics.registerMBean("gui");
+        } catch (JMException e) {
+            log("Failed to register kernel metrics with JMX: " + e.getMessage());
+        }
+        metricsRefresh = kernel.metrics.every(500, snapshot -> {
+            String text = metricsText(snapshot);
+            Platform.runLater(() -> metricsLabel.setText(text));
+        });
 
         // Task tree representing process hierarchy
         rootItem.setExpanded(true);
@@ -113,7 +115,7 @@ public class ForkSimulationGUI extends Application {
         chartsBox.setPrefWidth(400);
 
         // Timing labels setup
-        HBox timeBox = new HBox(10, initTimeLabel, copyOnWriteTimeLabel);
+        HBox timeBox = new HBox(10, initTimeLabel, copyOnWriteTimeLabel, metricsLabel);
         timeBox.setPadding(new Insets(10));
         timeBox.setStyle("-fx-background-color: #f4f4f4;");
 
@@ -213,14 +215,9 @@ public class ForkSimulationGUI extends Application {
     private void addParentProcess() {
         long startTime = System.nanoTime(); // start timing
 
-        // 原有的父进程创建逻辑
-        ProcessControlBlock parentProcess = new ProcessControlBlock("parent");
-        parentProcess.pid = PIDGenerator.forkPid();
-        parentProcess.userProgVAddr = new UserProgVAddr(0x8048000, 1024);
-
-        initParentProcess(parentProcess); // Initialization
-        setRunningProcess(parentProcess);
-        allProcesses.add(parentProcess);
+        // 在内核中创建父进程并初始化它的内存
+        ProcessControlBlock parentProcess = kernel.createParentProcess("parent");
+        kernel.setRunningProcess(parentProcess);
 
         long endTime = System.nanoTime(); // end timing
         long duration = (endTime - startTime) / 1_000_000; // switching to millisecond
@@ -257,10 +254,11 @@ public class ForkSimulationGUI extends Application {
             return;
         }
 
-        // 模拟 sysFork 创建子进程
-        ProcessControlBlock childPcb = new ProcessControlBlock("child");
-        long childPid = sysFork(parentProcess.getPcb(), childPcb);
-        if (childPid == -1) {
+        // 以选中的进程为当前进程调用 sysFork 创建子进程
+        kernel.setRunningProcess(parentProcess.getPcb());
+        long childPid = kernel.sysFork();
+        ProcessControlBlock childPcb = kernel.getProcessByPid(childPid);
+        if (childPid == -1 || childPcb == null) {
             log("Fork failed.");
             showAlert("Fork Failed", "Unable to create child process.");
             return;
@@ -327,234 +325,50 @@ public class ForkSimulationGUI extends Application {
         alert.showAndWait();
     }
 
-    // 日志输出方法
-    private static void log(String message) {
-        logTextArea.appendText(message + "\n");
-    }
-
-    // 模拟 initParentProcess 方法
-    private void initParentProcess(ProcessControlBlock parentProcess) {
-        log("Initializing parent process memory and bitmap.");
-
-        for (int i = 0; i < 10; i++) {
-            int idx = i;
-            int virtualAddress = parentProcess.userProgVAddr.vaddrStart + idx * PG_SIZE;
-            // 分配物理页面
-            int physicalAddress = PhysicalMemoryManager.allocatePhysicalPage();
-
-            // 填充数据
-            byte[] data = new byte[PG_SIZE];
-            for (int j = 0; j < PG_SIZE; j++) {
-                data[j] = (byte) (i + j);
-            }
-            PhysicalMemoryManager.writePhysicalMemory(physicalAddress, data);
-
-            // 创建页表项
-            PageTableEntry entry = new PageTableEntry(physicalAddress, false);
-            parentProcess.pageDirectory.addPageTableEntry(virtualAddress, entry);
-
-
-            // 设置位图
-            int idxByte = idx / 8;
-            int idxBit = idx % 8;
-            parentProcess.userProgVAddr.vaddrBitmap.bits[idxByte] |= (BITMAP_MASK << idxBit);
-        }
-    }
-
-    // 模拟 sysFork 方法
-    public static long sysFork(ProcessControlBlock parentProcess, ProcessControlBlock childProcess) {
-        logStatic("Starting fork operation for parent PID " + parentProcess.pid + ".");
-
-        if (childProcess == null) {
-            logStatic("Failed to create child process.");
-            return -1;
-        }
-
-        // 调用 copyProcess 复制父进程的资源到子进程
-        if (copyProcess(childProcess, parentProcess) == -1) {
-            logStatic("Failed to copy process.");
-            return -1;
-        }
-
-        // 将子进程添加到就绪队列和所有进程列表
-        logStatic("Adding child PID " + childProcess.pid + " to ready queue and all processes list.");
-        readyQueue.add(childProcess);
-        allProcesses.add(childProcess);
-
-        // 父进程返回子进程的 PID
-        return childProcess.pid;
-    }
-
-    // 模拟 copyProcess 方法
-    public static int copyProcess(ProcessControlBlock childProcess, ProcessControlBlock parentProcess) {
-        logStatic("Copying process from parent PID " + parentProcess.pid + " to child.");
-
-        // a. 复制父进程的 PCB、虚拟地址位图、内核栈到子进程
-        logStatic("Copying PCB, virtual address bitmap, and kernel stack.");
-        if (copyPcbVaddrBitmap(childProcess, parentProcess) == -1) {
-            return -1;
-        }
-
-        // b. 为子进程创建新的页目录
-        logStatic("Creating new page directory for child process.");
-        childProcess.pageDirectory = new PageDirectory();
-
-        // c. 遍历父进程的页表项，为子进程创建对应的页表项
-        for (Map.Entry<Integer, PageTableEntry> entry : parentProcess.pageDirectory.pageTableEntries.entrySet()) {
-            int virtualAddress = entry.getKey();
-            PageTableEntry parentEntry = entry.getValue();
-
-            // 创建子进程的页表项，指向相同的物理地址，标记为只读
-            PageTableEntry childEntry = new PageTableEntry(parentEntry.physicalAddress, true);
-
-            // 将页表项添加到子进程的页目录中
-            childProcess.pageDirectory.addPageTableEntry(virtualAddress, childEntry);
-
-            // 增加物理页的引用计数
-            PhysicalMemoryManager.increaseReferenceCount(parentEntry.physicalAddress);
-
-            // 将父进程的页表项也标记为只读
-            parentEntry.readOnly = true;
-        }
-
-        // d. 构建子进程的线程栈，并修改返回值 PID
-        logStatic("Building child thread stack and modifying return value.");
-        buildChildStack(childProcess);
-
-        // e. 更新文件 inode 的打开数
-        logStatic("Updating inode open counts.");
-        updateInodeOpenCounts(childProcess);
-
-        return 0;
-    }
-
-    // 模拟 copyPcbVaddrBitmap 方法
-    public static int copyPcbVaddrBitmap(ProcessControlBlock childProcess, ProcessControlBlock parentProcess) {
-        logStatic("Copying PCB and virtual address bitmap from parent PID " + parentProcess.pid + " to child.");
-
-        // 复制父进程的内容到子进程
-        childProcess.copyFrom(parentProcess);
-
-        // 修改子进程的特定字段
-        childProcess.pid = PIDGenerator.forkPid();
-        logStatic("Assigned PID " + childProcess.pid + " to child process.");
-        childProcess.elapsedTicks = 0;
-        childProcess.status = TaskStatus.TASK_READY;
-        childProcess.ticks = childProcess.priority;
-        childProcess.parentPid = parentProcess.pid;
-        childProcess.generalTag.prev = null;
-        childProcess.generalTag.next = null;
-        childProcess.allListTag.prev = null;
-        childProcess.allListTag.next = null;
-        blockDescInit(childProcess.uBlockDesc);
-
-        // 复制父进程的虚拟地址位图
-        int bitmapSize = parentProcess.userProgVAddr.vaddrBitmap.btmpBytesLen;
-        byte[] vaddrBtmp = new byte[bitmapSize];
-        System.arraycopy(parentProcess.userProgVAddr.vaddrBitmap.bits, 0, vaddrBtmp, 0, bitmapSize);
-        childProcess.userProgVAddr.vaddrBitmap.bits = vaddrBtmp;
-
-        if (childProcess.name.length() >= 999999999) {
-            throw new AssertionError("Process name too long");
-        }
-        childProcess.name = childProcess.name + "_fork";
-
-        return 0;
-    }
-
-    // 初始化块描述符数组
-    public static void blockDescInit(BlockDesc[] uBlockDesc) {
-        for (BlockDesc blockDesc : uBlockDesc) {
-            blockDesc.init();
+    @Override
+    public void stop() throws JMException {
+        if (metricsRefresh != null) {
+            metricsRefresh.cancel(false);
         }
+        kernel.metrics.unregisterMBean();
+        kernel.log.close();
     }
 
-    // 为子进程构建线程栈，并修改返回值
-    public static int buildChildStack(ProcessControlBlock childProcess) {
-        logStatic("Building child thread stack and modifying return value.");
-
-        // a. 使子进程的 PID 返回值为 0
-        IntrStack intr0Stack = new IntrStack();
-        intr0Stack.eax = 0;
-
-        // b. 为 switch_to 构建 ThreadStack，将其构建在紧邻 IntrStack 之下的空间
-        ThreadStack threadStack = new ThreadStack();
-        threadStack.eip = CPU.intrExit;
-
-        // 把构建的 threadStack 的栈顶作为 switch_to 恢复数据时的栈顶
-        childProcess.selfKStack = threadStack;
-
-        // 将 IntrStack 和 ThreadStack 保存到子进程的内核栈中
-        childProcess.kernelStack = new KernelStack();
-        childProcess.kernelStack.intrStack = intr0Stack;
-        childProcess.kernelStack.threadStack = threadStack;
-
-        return 0;
+    private static String metricsText(Metrics.Snapshot snapshot) {
+        LatencyHistogram fork = snapshot.histogram("fork");
+        return String.format("Forks: %d  COW faults: %d  Frames: %d  Shared pages: %d  Fork p50/p99: %.1f/%.1f us",
+                snapshot.counter("forks"), snapshot.counter("cow.faults"), snapshot.gauge("frames.inUse"),
+                snapshot.gauge("pages.shared"), fork.percentile(50) / 1e3, fork.percentile(99) / 1e3);
     }
 
-    // 更新文件 inode 的打开数（这里简单模拟）
-    public static void updateInodeOpenCounts(ProcessControlBlock process) {
-        logStatic("Updating inode open counts for child PID " + process.pid + ".");
-        // 假设我们有一个文件描述符表
-        // 增加每个打开文件的引用计数
-        for (FileDescriptor fd : process.openFiles) {
-            fd.inode.openCount++;
-        }
+    // 日志输出方法，与内核日志经过同一个缓冲区，保持先后顺序
+    private void log(String message) {
+        kernel.log.emit(EventLog.MESSAGE, message);
     }
 
-    // 模拟进程执行
-    public static void simulateProcessExecution(ProcessControlBlock process) {
-
+    // 在内核上执行进程，然后让它写内存。页面与父进程共享时写入会触发写时复制，记录这次写入的耗时
+    private void simulateProcessExecution(ProcessControlBlock process) {
         if (process == null) return;
 
-        log("Simulating process execution for PID " + process.pid + ".");
-        // 模拟进程切换
-        CPU.switchTo(process);
-
-        // 模拟子进程写入内存，触发写时复制
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-        long startTime = System.nanoTime(); // Start timing
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
+        kernel.simulateProcessExecution(process);
 
         int testVirtualAddress = 0x8048000; // 测试的虚拟地址
         byte[] testData = new byte[]{1, 2, 3, 4};
 
         log("Process PID " + process.pid + " attempting to write to memory.");
-        writeMemory(process, testVirtualAddress, testData);
+        // 内核在复制页面时计时，这次写入触发了写时复制就显示它的耗时
+        long copies = kernel.copyOnWriteLatency.count();
+        kernel.writeMemory(process, testVirtualAddress, testData);
+        if (kernel.copyOnWriteLatency.count() > copies) {
+            String text = String.format("Copy-On-Write Time: %.1f us", kernel.copyOnWriteLatency.last() / 1e3);
+            log(text);
+            copyOnWriteTimeLabel.setText(text);
+        }
 
         // 验证父进程的内存未被修改
-        ProcessControlBlock parentProcess = getProcessByPid(process.parentPid);
-        if (parentProcess != null) {
-            byte[] parentData = PhysicalMemoryManager.readPhysicalMemory(
+        ProcessControlBlock parentProcess = kernel.getProcessByPid(process.parentPid);
+        if (parentProcess != null && parentProcess.pageDirectory.getPageTableEntry(testVirtualAddress) != null) {
+            byte[] parentData = kernel.memory.readPhysicalMemory(
                     parentProcess.pageDirectory.getPageTableEntry(testVirtualAddress).physicalAddress);
 
             log("Verifying that parent process memory is unchanged.");
@@ -566,118 +380,6 @@ public class ForkSimulationGUI extends Application {
         }
     }
 
-    // 模拟写入内存，触发写时复制
-    public static void writeMemory(ProcessControlBlock process, int virtualAddress, byte[] data) {
-        PageTableEntry entry = process.pageDirectory.getPageTableEntry(virtualAddress);
-        if (entry == null) {
-            logStatic("Invalid memory access at virtual address " + virtualAddress);
-            return;
-        }
-
-        if (entry.readOnly) {
-            logStatic("Process PID " + process.pid + " is writing to a shared page at virtual address " + virtualAddress + ". Triggering copy-on-write.");
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-            long endTime = System.nanoTime(); // End timing
-            long startTime = 0;
-            long duration = (endTime - startTime) / 1_000_000; // Convert to milliseconds
-            System.out.println("Copy-On-Write Time: " + duration + " ms");
-            log("Copy-On-Write Time: " + duration + " ms");
-
-
-
-
-
-
-
-            copyOnWriteTimeLabel.setText("Copy-On-Write Time: " + duration + " ms");
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-            // a. 分配新的物理页面
-            int newPhysicalAddress = PhysicalMemoryManager.allocatePhysicalPage();
-
-            // b. 复制原始数据到新页面
-            byte[] originalData = PhysicalMemoryManager.readPhysicalMemory(entry.physicalAddress);
-            PhysicalMemoryManager.writePhysicalMemory(newPhysicalAddress, originalData);
-
-            // c. 更新页表项
-            int oldPhysicalAddress = entry.physicalAddress; // 保存旧的物理地址
-            entry.physicalAddress = newPhysicalAddress;
-            entry.readOnly = false;
-
-            // d. 更新引用计数
-            PhysicalMemoryManager.decreaseReferenceCount(oldPhysicalAddress);
-        }
-
-        // 写入数据到物理内存
-        PhysicalMemoryManager.writePhysicalMemory(entry.physicalAddress, data);
-    }
-    
-
-    // 根据 PID 获取进程 PCB
-    public static ProcessControlBlock getProcessByPid(long pid) {
-        for (ProcessControlBlock process : allProcesses) {
-            if (process.pid == pid) {
-                return process;
-            }
-        }
-        return null;
-    }
-
-    // 设置当前运行的进程
-    public static void setRunningProcess(ProcessControlBlock process) {
-        runningProcess = process;
-    }
-
-    // 日志输出方法，用于静态方法中
-    private static void logStatic(String message) {
-        // 由于静态方法无法直接访问实例变量，这里简单打印到控制台
-        System.out.println(message);
-    }
-
     // Process data model
     public static class Process {
         private final SimpleStringProperty pid;
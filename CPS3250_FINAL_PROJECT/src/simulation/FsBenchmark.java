@@ -0,0 +1,81 @@
+package simulation;
+
+import filesystem.FileSystem;
+import process.ProcessControlBlock;
+import utils.EventLog;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+// 文件系统顺序/随机 4KB 读写吞吐。
+// 用法：FsBenchmark [文件 MB 数] [--no-cache]，在临时磁盘映像上通过 sysOpen/sysRead/sysWrite/sysLseek 测试
+public class FsBenchmark {
+    static final Kernel kernel = new Kernel();
+    static final int IO_SIZE = 4096;
+
+    public static void main(String[] args) throws IOException {
+        int fileMb = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        boolean cached = !(args.length > 1 && args[1].equals("--no-cache"));
+        int blocks = fileMb * 1024 * 1024 / IO_SIZE;
+        kernel.log.level = EventLog.OFF;
+
+        Path image = Files.createTempFile("fs", ".img");
+        FileSystem fs = FileSystem.format(kernel.memory, image, blocks + blocks / 512 + 64, 1024,
+                cached ? FileSystem.DEFAULT_CACHE_BLOCKS : 0);
+        kernel.mountFileSystem(fs);
+        ProcessControlBlock process = kernel.newProcess("fs");
+        process.pid = kernel.pids.forkPid();
+
+        kernel.sysMkdir("/bench");
+        int fd = kernel.sysOpen(process, "/bench/data", FileSystem.O_RDWR | FileSystem.O_CREAT);
+        byte[] buf = new byte[IO_SIZE];
+        Random random = new Random(42);
+        random.nextBytes(buf);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < blocks; i++) {
+            kernel.sysWrite(process, fd, buf, IO_SIZE);
+        }
+        fs.sync();
+        report("seq write", blocks, System.nanoTime() - start);
+
+        kernel.sysLseek(process, fd, 0, Kernel.SEEK_SET);
+        start = System.nanoTime();
+        for (int i = 0; i < blocks; i++) {
+            kernel.sysRead(process, fd, buf, IO_SIZE);
+        }
+        report("seq read", blocks, System.nanoTime() - start);
+
+        start = System.nanoTime();
+        for (int i = 0; i < blocks; i++) {
+            kernel.sysLseek(process, fd, random.nextInt(blocks) * IO_SIZE, Kernel.SEEK_SET);
+            kernel.sysWrite(process, fd, buf, IO_SIZE);
+        }
+        fs.sync();
+        report("rand write", blocks, System.nanoTime() - start);
+
+        start = System.nanoTime();
+        for (int i = 0; i < blocks; i++) {
+            kernel.sysLseek(process, fd, random.nextInt(blocks) * IO_SIZE, Kernel.SEEK_SET);
+            kernel.sysRead(process, fd, buf, IO_SIZE);
+        }
+        report("rand read", blocks, System.nanoTime() - start);
+
+        kernel.sysClose(process, fd);
+        kernel.sysUnlink("/bench/data");
+        System.out.println("free blocks after unlink: " + fs.freeBlocks());
+        if (fs.cache != null) {
+            System.out.println("buffer cache: " + fs.cache.stats());
+        }
+        fs.close();
+        Files.delete(image);
+    }
+
+    static void report(String name, int ops, long nanos) {
+        double seconds = nanos / 1e9;
+        System.out.printf("%-10s %8d ops  %8.1f MB/s  %8.0f ops/s%n",
+                name, ops, ops * (double) IO_SIZE / (1 << 20) / seconds, ops / seconds);
+    }
+}
@@ -0,0 +1,211 @@
+package simulation;
+
+import cpu.Assembler;
+import process.ProcessControlBlock;
+import utils.EventLog;
+
+import static cpu.Opcodes.*;
+
+// 解释器吞吐：计算（试除法数素数）、访存（反复读写一段数据区）、fork/wait、管道读写四种用户程序，
+// 输出每种负载执行的指令数和每秒百万条指令数，并用退出状态检查结果。
+// 用法：InterpreterBenchmark [素数上限] [数据页数] [遍数]
+public class InterpreterBenchmark {
+    static final Kernel kernel = new Kernel();
+    static final int ZERO = 15; // 程序约定 r15 恒为 0
+
+    public static void main(String[] args) {
+        int primeLimit = args.length > 0 ? Integer.parseInt(args[0]) : 400_000;
+        int dataPages = args.length > 1 ? Integer.parseInt(args[1]) : 256;
+        int passes = args.length > 2 ? Integer.parseInt(args[2]) : 32;
+        kernel.log.level = EventLog.OFF;
+
+        // 预热，让解释循环先被编译
+        run("warmup", primes(20_000), 0, countPrimes(20_000));
+
+        run("compute", primes(primeLimit), 0, countPrimes(primeLimit));
+        run("memory", memory(dataPages, passes), dataPages, expectedMemorySum(dataPages, passes));
+        run("fork", forkWait(1000, 2000), 1, 1000);
+        runPipe(4096);
+    }
+
+    static void run(String name, int[] text, int dataPages, int expected) {
+        ProcessControlBlock shell = shell(kernel);
+        long pid = kernel.spawnProgram(name, text, dataPages);
+        kernel.setParent(kernel.getProcessByPid(pid), shell);
+        report(name, shell, new long[]{pid}, new int[]{expected});
+    }
+
+    // 写者把一页写 pages 次后退出，读者读到文件尾，退出状态为读到的页数
+    static void runPipe(int pages) {
+        ProcessControlBlock shell = shell(kernel);
+        int[] fds = new int[2];
+        kernel.sysPipe(shell, fds);
+        long reader = kernel.spawnProgram("reader", pipeReader(0), 1);
+        long writer = kernel.spawnProgram("writer", pipeWriter(0, pages), 1);
+        ProcessControlBlock readerProcess = kernel.getProcessByPid(reader);
+        ProcessControlBlock writerProcess = kernel.getProcessByPid(writer);
+        kernel.setParent(readerProcess, shell);
+        kernel.setParent(writerProcess, shell);
+        // 两个程序都从本地 fd 0 读写
+        int readGlobal = kernel.fdLocal2Global(shell, fds[0]);
+        int writeGlobal = kernel.fdLocal2Global(shell, fds[1]);
+        kernel.fileTable.dup(readGlobal);
+        kernel.fileTable.dup(writeGlobal);
+        kernel.pcbFdInstall(readerProcess, readGlobal);
+        kernel.pcbFdInstall(writerProcess, writeGlobal);
+        kernel.sysClose(shell, fds[0]);
+        kernel.sysClose(shell, fds[1]);
+        report("pipe", shell, new long[]{reader, writer}, new int[]{pages, 0});
+    }
+
+    // 在 kernel 上创建一个不运行的父进程，用来 wait 测试程序
+    static ProcessControlBlock shell(Kernel kernel) {
+        ProcessControlBlock shell = kernel.newProcess("shell");
+        shell.pid = kernel.pids.forkPid();
+        kernel.setParent(shell, kernel.getInitProcess());
+        kernel.allProcesses.add(shell);
+        return shell;
+    }
+
+    static void report(String name, ProcessControlBlock shell, long[] pids, int[] expected) {
+        long instructions = kernel.cpu.instructionsRetired;
+        long start = System.nanoTime();
+        while (kernel.schedule()) {
+            // 运行到所有进程结束
+        }
+        long elapsed = System.nanoTime() - start;
+        instructions = kernel.cpu.instructionsRetired - instructions;
+
+        // 回收子进程，检查退出状态
+        int[] status = new int[1];
+        long pid;
+        while ((pid = kernel.sysWait(shell, status)) > 0) {
+            for (int i = 0; i < pids.length; i++) {
+                if (pids[i] == pid && status[0] != expected[i]) {
+                    throw new IllegalStateException(name + ": PID " + pid + " exited with " + status[0]
+                            + ", expected " + expected[i]);
+                }
+            }
+        }
+        kernel.releaseProcess(shell);
+        if (!name.equals("warmup")) {
+            System.out.printf("%-8s %12d instructions %9.1f ms %8.1f MIPS%n",
+                    name, instructions, elapsed / 1e6, instructions / (elapsed / 1e3));
+        }
+    }
+
+    // 数 limit 以下的素数，退出状态为个数
+    static int[] primes(int limit) {
+        return new Assembler()
+                .li(ZERO, 0).li(1, limit).li(2, 2).li(3, 0)
+                .label("outer").bge(2, 1, "done")
+                .li(4, 2)
+                .label("inner").mul(5, 4, 4)
+                .blt(2, 5, "prime")
+                .rem(6, 2, 4)
+                .beq(6, ZERO, "next")
+                .addi(4, 4, 1)
+                .jmp("inner")
+                .label("prime").addi(3, 3, 1)
+                .label("next").addi(2, 2, 1)
+                .jmp("outer")
+                .label("done").mov(1, 3).syscall(SYS_EXIT)
+                .assemble();
+    }
+
+    static int countPrimes(int limit) {
+        int count = 0;
+        for (int n = 2; n < limit; n++) {
+            boolean prime = true;
+            for (int d = 2; d * d <= n; d++) {
+                if (n % d == 0) {
+                    prime = false;
+                    break;
+                }
+            }
+            if (prime) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // 每遍把数据区每个字加上遍号并累加，退出状态为累加和
+    static int[] memory(int pages, int passes) {
+        return new Assembler()
+                .li(1, Kernel.USER_DATA).li(2, Kernel.USER_DATA + pages * 4096)
+                .li(7, passes).li(8, 0).li(3, 0)
+                .label("pass").bge(8, 7, "done")
+                .mov(4, 1)
+                .label("loop").bge(4, 2, "endpass")
+                .lw(5, 4, 0)
+                .add(5, 5, 8)
+                .sw(5, 4, 0)
+                .add(3, 3, 5)
+                .addi(4, 4, 4)
+                .jmp("loop")
+                .label("endpass").addi(8, 8, 1)
+                .jmp("pass")
+                .label("done").mov(1, 3).syscall(SYS_EXIT)
+                .assemble();
+    }
+
+    static int expectedMemorySum(int pages, int passes) {
+        int words = pages * 4096 / 4;
+        int sum = 0;
+        int value = 0;
+        for (int p = 0; p < passes; p++) {
+            value += p;
+            sum += words * value;
+        }
+        return sum;
+    }
+
+    // fork 出 children 个子进程，每个空转 spin 次后以状态 1 退出，父进程逐个 wait 并累加状态
+    static int[] forkWait(int children, int spin) {
+        return new Assembler()
+                .li(ZERO, 0).li(8, 0).li(7, children).li(9, 0)
+                .label("loop").bge(8, 7, "done")
+                .syscall(SYS_FORK)
+                .beq(0, ZERO, "child")
+                .li(1, Kernel.USER_DATA).syscall(SYS_WAIT)
+                .li(1, Kernel.USER_DATA).lw(2, 1, 0)
+                .add(9, 9, 2)
+                .addi(8, 8, 1)
+                .jmp("loop")
+                .label("child").li(2, 0).li(3, spin)
+                .label("spin").bge(2, 3, "exit")
+                .addi(2, 2, 1)
+                .jmp("spin")
+                .label("exit").li(1, 1).syscall(SYS_EXIT)
+                .label("done").mov(1, 9).syscall(SYS_EXIT)
+                .assemble();
+    }
+
+    static int[] pipeWriter(int fd, int pages) {
+        return new Assembler()
+                .li(8, 0).li(7, pages)
+                .label("loop").bge(8, 7, "done")
+                .li(1, Kernel.USER_DATA).sw(8, 1, 0)
+                .li(1, fd).li(2, Kernel.USER_DATA).li(3, 4096).syscall(SYS_WRITE)
+                .addi(8, 8, 1)
+                .jmp("loop")
+                .label("done").li(1, 0).syscall(SYS_EXIT)
+                .assemble();
+    }
+
+    // 检查每页开头的序号，错序时以状态 -1 退出
+    static int[] pipeReader(int fd) {
+        return new Assembler()
+                .li(ZERO, 0).li(8, 0).li(9, -1)
+                .label("loop").li(1, fd).li(2, Kernel.USER_DATA).li(3, 4096).syscall(SYS_READ)
+                .beq(0, ZERO, "done")
+                .li(1, Kernel.USER_DATA).lw(2, 1, 0)
+                .bne(2, 8, "bad")
+                .addi(8, 8, 1)
+                .jmp("loop")
+                .label("bad").mov(1, 9).syscall(SYS_EXIT)
+                .label("done").mov(1, 8).syscall(SYS_EXIT)
+                .assemble();
+    }
+}
@@ -0,0 +1,92 @@
+package simulation;
+
+import filesystem.BlockDevice;
+import filesystem.FileSystem;
+import filesystem.IoRequest;
+import filesystem.IoScheduler;
+import filesystem.LatencyModel;
+import process.ProcessControlBlock;
+import utils.EventLog;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+// 块设备 I/O 调度器对比：若干模拟进程同时读写同一块设备，每轮异步提交 DEPTH 个单块请求后阻塞等待全部完成。
+// 顺序负载下每个进程读自己的一段连续区域，随机负载下读写位置随机。
+// 用法：IoSchedulerBenchmark [进程数] [每进程请求数]，分别在硬盘和固态盘模型上比较 noop、deadline、C-LOOK
+public class IoSchedulerBenchmark {
+    static final Kernel kernel = new Kernel();
+    static final int DEVICE_BLOCKS = 65536; // 256 MB
+    static final int DEPTH = 8;
+
+    public static void main(String[] args) throws IOException {
+        int processCount = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int requestsPerProcess = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        kernel.log.level = EventLog.OFF;
+
+        Path image = Files.createTempFile("iosched", ".img");
+        String[] devices = {"hdd", "ssd"};
+        String[] workloads = {"sequential", "random", "mixed"};
+        String[] schedulers = {"noop", "deadline", "clook"};
+        for (String deviceName : devices) {
+            LatencyModel latency = deviceName.equals("hdd") ? LatencyModel.hdd(DEVICE_BLOCKS) : LatencyModel.ssd();
+            for (String workload : workloads) {
+                for (String schedulerName : schedulers) {
+                    BlockDevice device = BlockDevice.create(image, latency, IoScheduler.byName(schedulerName));
+                    long start = System.nanoTime();
+                    long idleBefore = kernel.idleNanos;
+                    for (int p = 0; p < processCount; p++) {
+                        int id = p;
+                        kernel.spawnProcess("io" + p,
+                                () -> run(device, workload, id, processCount, requestsPerProcess));
+                    }
+                    while (kernel.schedule()) {
+                        // 运行到所有进程结束
+                    }
+                    long elapsed = System.nanoTime() - start;
+                    long idle = kernel.idleNanos - idleBefore;
+                    long total = (long) processCount * requestsPerProcess;
+                    System.out.printf("%-3s %-10s %-8s %8.1f ms %8.0f IOPS  merge=%5.2f  avgLatency=%9.1f us  "
+                                    + "cpuIdle=%3.0f%%%n",
+                            deviceName, workload, schedulerName, elapsed / 1e6, total / (elapsed / 1e9),
+                            device.mergeFactor(), device.avgLatencyMicros(), 100.0 * idle / elapsed);
+                    device.close();
+                }
+            }
+        }
+        Files.delete(image);
+    }
+
+    // 一个进程的负载，在它自己的执行流上运行
+    static void run(BlockDevice device, String workload, int id, int processCount, int requests) {
+        ProcessControlBlock process = kernel.runningProcess();
+        Random random = new Random(id);
+        int region = DEVICE_BLOCKS / processCount;
+        int next = id * region;
+        IoRequest[] batch = new IoRequest[DEPTH];
+        for (int done = 0; done < requests; done += DEPTH) {
+            int n = Math.min(DEPTH, requests - done);
+            for (int i = 0; i < n; i++) {
+                int blockNo;
+                boolean write;
+                if (workload.equals("sequential")) {
+                    blockNo = next++;
+                    write = false;
+                } else {
+                    blockNo = random.nextInt(DEVICE_BLOCKS);
+                    write = workload.equals("mixed") && random.nextInt(4) == 0;
+                }
+                byte[] buf = new byte[FileSystem.BLOCK_SIZE];
+                batch[i] = write ? IoRequest.write(blockNo, buf) : IoRequest.read(blockNo, buf);
+                kernel.sysSubmitIo(process, device, batch[i]);
+            }
+            for (int i = 0; i < n; i++) {
+                kernel.sysWaitIo(process, batch[i]);
+            }
+            // 处理读到的数据
+            kernel.threadYield();
+        }
+    }
+}
@@ -0,0 +1,1858 @@
+package simulation;
+
+import cpu.*;
+import filesystem.BlockDevice;
+import filesystem.FileDescriptor;
+import filesystem.FilePageSource;
+import filesystem.FileSystem;
+import filesystem.FileTable;
+import filesystem.Inode;
+import filesystem.IoRequest;
+import filesystem.Pipe;
+import memory.*;
+import process.*;
+import utils.ChromeTrace;
+import utils.EventLog;
+import utils.Metrics;
+import utils.ObjectPool;
+import utils.PIDGenerator;
+import utils.TraceEvents;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+// 一个独立的模拟内核：物理内存、CPU、PID 空间、进程表和调度队列、打开文件表、共享内存段表都属于这个实例，
+// 各实例之间不共享可变状态。一个 Kernel 同一时刻只由一个线程驱动（调度循环和它切换到的进程轮流执行），
+// 不同的 Kernel 可以在不同线程上同时运行。命令行和图形界面的前端都通过它完成 fork、写时复制和调度
+public class Kernel {
+    static final int PG_SIZE = 4096;
+
+    public final PhysicalMemoryManager memory = new PhysicalMemoryManager();
+    // 内核日志，级别和去向见 EventLog。默认只输出进程生命周期和错误，DEBUG 级别输出 fork 的每一步
+    public final EventLog log = new EventLog();
+    public final CPU cpu = new CPU(memory, log);
+    public final PIDGenerator pids = new PIDGenerator();
+    public final FileTable fileTable = new FileTable(log);
+    public final SharedMemory sharedMemory = new SharedMemory(memory);
+
+    final List<ProcessControlBlock> readyQueue = new LinkedList<>();
+    final Set<ProcessControlBlock> allProcesses = new LinkedHashSet<>();
+
+    // 模拟当前运行的进程
+    ProcessControlBlock runningProcess;
+
+    // 全局时钟滴答，每次调度加一
+    long ticks;
+
+    // init 进程，收养父进程已退出的孤儿进程
+    static final long INIT_PID = 1;
+    ProcessControlBlock initProcess;
+
+    // 已挂载的文件系统
+    FileSystem fileSystem;
+
+    // 块设备完成的请求，由调度循环取出并唤醒等待它的进程
+    final LinkedBlockingQueue<IoRequest> ioCompletions = new LinkedBlockingQueue<>();
+    // 阻塞等待块设备的进程数
+    int ioWaiters;
+    // 所有进程都在等待 I/O 时 CPU 的空闲时间
+    long idleNanos;
+    // sysRingEnter 的次数和处理的请求数
+    long ringBatches;
+    long ringOps;
+
+    // 运行指标。fork 和写时复制每次计时，页表查找每 16 次抽样计时一次
+    public final Metrics metrics = new Metrics();
+    final LongAdder forks = metrics.counter("forks");
+    final LongAdder copyOnWriteFaults = metrics.counter("cow.faults");
+    final Metrics.Histogram forkLatency = metrics.histogram("fork");
+    final Metrics.Histogram copyOnWriteLatency = metrics.histogram("cow");
+    final Metrics.Histogram pageLookupLatency = metrics.histogram("page.lookup");
+    private int pageLookups;
+
+    // fork、缺页和切换的时间线：JFR 事件（见 TraceEvents）总是提交，只在 JFR 记录时生效；
+    // Chrome 跟踪在 startChromeTrace 之后才记录
+    ChromeTrace chromeTrace;
+    static final int TRACE_FORK = ChromeTrace.define("sysFork", "childPid");
+    static final int TRACE_COPY_PROCESS = ChromeTrace.define("copyProcess", "parentPid");
+    static final int TRACE_COPY_PCB = ChromeTrace.define("copyPcbVaddrBitmap", "childPid");
+    static final int TRACE_BUILD_CHILD_STACK = ChromeTrace.define("buildChildStack", "childPid");
+    static final int TRACE_PAGE_FAULT = ChromeTrace.define("pageFault", "address");
+
+    public Kernel() {
+        metrics.counter("pages.allocated", memory::pagesAllocated);
+        metrics.counter("pages.freed", memory::pagesFreed);
+        metrics.counter("refcount.ops", memory::referenceOps);
+        metrics.counter("context.switches", () -> cpu.switches);
+        metrics.counter("timer.ticks", () -> ticks);
+        metrics.counter("ring.batches", () -> ringBatches);
+        metrics.gauge("frames.inUse", memory::framesInUse);
+        metrics.gauge("pages.shared", memory::sharedFrames);
+        metrics.gauge("processes", allProcesses::size);
+    }
+
+    // 解释执行的进程可读写数据区的起始地址
+    static final int USER_DATA = 0x40000000;
+
+    // lseek 的 whence
+    static final int SEEK_SET = 1;
+    static final int SEEK_CUR = 2;
+    static final int SEEK_END = 3;
+
+    // 内核日志事件
+    static final int LOG_IO_FAILED = EventLog.define(EventLog.WARN, "I/O on block %d failed: %s");
+    static final int LOG_PROCESS_IO_FAILED = EventLog.define(EventLog.WARN,
+            "Process PID %d I/O on block %d failed: %s");
+    static final int LOG_EXIT = EventLog.define(EventLog.INFO, "Process PID %d exiting with status %d.");
+    static final int LOG_REAP = EventLog.define(EventLog.INFO, "Reaping process PID %d.");
+    static final int LOG_INIT_PARENT = EventLog.define(EventLog.DEBUG,
+            "Initializing parent process memory and bitmap.");
+    static final int LOG_COPY_PCB = EventLog.define(EventLog.DEBUG,
+            "Copying PCB and virtual address bitmap from parent PID %d to child.");
+    static final int LOG_ASSIGN_PID = EventLog.define(EventLog.DEBUG, "Assigned PID %d to child process.");
+    static final int LOG_COPY_PROCESS = EventLog.define(EventLog.DEBUG, "Copying process from parent PID %d to child.");
+    static final int LOG_COPY_KERNEL_STACK = EventLog.define(EventLog.DEBUG,
+            "Copying PCB, virtual address bitmap, and kernel stack.");
+    static final int LOG_REUSE_PAGE_DIRECTORY = EventLog.define(EventLog.DEBUG,
+            "Reusing the child's empty page directory.");
+    static final int LOG_BUILD_STACK = EventLog.define(EventLog.DEBUG,
+            "Building child thread stack and modifying return value.");
+    static final int LOG_INODE_COUNTS = EventLog.define(EventLog.DEBUG, "Updating inode open counts.");
+    static final int LOG_FILE_REFERENCES = EventLog.define(EventLog.DEBUG,
+            "Updating open file references for child PID %d.");
+    static final int LOG_TOO_MANY_FILES = EventLog.define(EventLog.WARN, "Process PID %d has too many open files.");
+    static final int LOG_NO_FILE_SYSTEM = EventLog.define(EventLog.WARN, "No file system mounted.");
+    static final int LOG_OPEN_FAILED = EventLog.define(EventLog.WARN, "Open %s failed: %s");
+    static final int LOG_NOT_FOUND = EventLog.define(EventLog.WARN, "File %s not found.");
+    static final int LOG_FILE_TABLE_FULL = EventLog.define(EventLog.WARN, "System file table is full.");
+    static final int LOG_READ_FAILED = EventLog.define(EventLog.WARN, "Read fd %d failed: %s");
+    static final int LOG_WRITE_FAILED = EventLog.define(EventLog.WARN, "Write fd %d failed: %s");
+    static final int LOG_UNLINK_FAILED = EventLog.define(EventLog.WARN, "Unlink %s failed: %s");
+    static final int LOG_MKDIR_FAILED = EventLog.define(EventLog.WARN, "Mkdir %s failed: %s");
+    static final int LOG_BROKEN_PIPE = EventLog.define(EventLog.WARN, "Process PID %d wrote to a pipe with no reader.");
+    static final int LOG_CLOSE_FAILED = EventLog.define(EventLog.WARN, "Close inode %d failed: %s");
+    static final int LOG_MAP_DIRTY_FAILED = EventLog.define(EventLog.WARN,
+            "PID %d: shared mapping at virtual address %d could not be marked dirty, the write may be lost.");
+    static final int LOG_FORK = EventLog.define(EventLog.INFO, "Starting fork operation for parent PID %d.");
+    static final int LOG_FORK_NO_CHILD = EventLog.define(EventLog.WARN, "Failed to create child process.");
+    static final int LOG_NO_PID = EventLog.define(EventLog.WARN, "PID space exhausted.");
+    static final int LOG_FORK_COPY_FAILED = EventLog.define(EventLog.WARN, "Failed to copy process.");
+    static final int LOG_FORK_READY = EventLog.define(EventLog.DEBUG,
+            "Adding child PID %d to ready queue and all processes list.");
+    static final int LOG_KILLED = EventLog.define(EventLog.WARN, "Process PID %d killed at pc %d with status %d.");
+    static final int LOG_BAD_SYSCALL = EventLog.define(EventLog.WARN, "Process PID %d made unknown system call %d.");
+    static final int LOG_EXEC = EventLog.define(EventLog.INFO, "Process PID %d executing %s.");
+    static final int LOG_EXEC_FAILED = EventLog.define(EventLog.WARN, "Exec failed: %s");
+    static final int LOG_EXEC_OVERLAP = EventLog.define(EventLog.WARN, "Exec failed: overlapping segments in %s");
+    static final int LOG_VERIFY = EventLog.define(EventLog.DEBUG,
+            "Verifying memory of child PID %d against parent PID %d.");
+    static final int LOG_VERIFY_MISSING = EventLog.define(EventLog.WARN,
+            "Child process is missing page at virtual address %d");
+    static final int LOG_VERIFY_MISMATCH = EventLog.define(EventLog.WARN,
+            "Physical address mismatch at virtual address %d");
+    static final int LOG_VERIFY_OK = EventLog.define(EventLog.DEBUG, "Child process memory copied successfully.");
+    static final int LOG_SIMULATE = EventLog.define(EventLog.DEBUG, "Simulating process execution for: %s with PID %d");
+    static final int LOG_MMAP_OVERLAP = EventLog.define(EventLog.WARN,
+            "Mapping at virtual address %d overlaps an existing region.");
+    static final int LOG_SHM_NO_ROOM = EventLog.define(EventLog.WARN, "No room to attach shared memory segment %d.");
+    static final int LOG_RING_CORRUPT = EventLog.define(EventLog.WARN, "Process PID %d corrupted its syscall ring.");
+    static final int LOG_BAD_FREE = EventLog.define(EventLog.WARN, "Invalid free at virtual address %d");
+    static final int LOG_COPY_ON_WRITE = EventLog.define(EventLog.DEBUG,
+            "Process PID %d is writing to a shared page at virtual address %d. Triggering copy-on-write.");
+    static final int LOG_BAD_ACCESS = EventLog.define(EventLog.WARN, "Invalid memory access at virtual address %d");
+
+    // fork/exit 路径上内核对象的回收缓存，复用时先重置
+    static final int POOL_CAPACITY = 4096;
+    static final int ENTRY_POOL_CAPACITY = 1 << 16;
+    final ObjectPool<PageTableEntry> entryPool =
+            new ObjectPool<>(ENTRY_POOL_CAPACITY, () -> new PageTableEntry(0, false), entry -> { });
+    final ObjectPool<ProcessControlBlock> pcbPool =
+            new ObjectPool<>(POOL_CAPACITY, () -> newProcess("child"), pcb -> pcb.reset("child"));
+    final ObjectPool<IntrStack> intrStackPool =
+            new ObjectPool<>(POOL_CAPACITY, IntrStack::new, IntrStack::reset);
+    final ObjectPool<ThreadStack> threadStackPool =
+            new ObjectPool<>(POOL_CAPACITY, ThreadStack::new, ThreadStack::reset);
+    final ObjectPool<KernelStack> kernelStackPool =
+            new ObjectPool<>(POOL_CAPACITY, KernelStack::new, KernelStack::reset);
+
+    // 开始记录 Chrome 跟踪事件，返回事件缓存，由调用者写出
+    public ChromeTrace startChromeTrace(String name) {
+        chromeTrace = new ChromeTrace(name);
+        cpu.chromeTrace = chromeTrace;
+        return chromeTrace;
+    }
+
+    // Chrome 跟踪的起始时刻，没有开启时不读时钟
+    private long traceClock() {
+        return chromeTrace != null ? System.nanoTime() : 0;
+    }
+
+    private void traceSpan(int event, long start, long arg) {
+        if (chromeTrace != null) {
+            chromeTrace.complete(event, start, System.nanoTime(), arg);
+        }
+    }
+
+    // 新建属于本内核的 PCB，页目录使用本内核的页表项缓存
+    public ProcessControlBlock newProcess(String name) {
+        ProcessControlBlock process = new ProcessControlBlock(name);
+        process.pageDirectory.entryPool = entryPool;
+        return process;
+    }
+
+    public ProcessControlBlock runningProcess() {
+        return runningProcess;
+    }
+
+    public void setRunningProcess(ProcessControlBlock process) {
+        runningProcess = process;
+    }
+
+    // 从就绪队列取出下一个进程并切换过去，进程让出 CPU、阻塞或结束后返回
+    public boolean schedule() {
+        deliverIoCompletions();
+        if (readyQueue.isEmpty()) {
+            if (ioWaiters == 0) {
+                return false;
+            }
+            // 没有可运行的进程，CPU 空闲到下一个请求完成
+            long idleStart = System.nanoTime();
+            try {
+                wakeIoWaiter(ioCompletions.take());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            idleNanos += System.nanoTime() - idleStart;
+            cpu.resetSwitchClock();
+            deliverIoCompletions();
+            if (readyQueue.isEmpty()) {
+                return true;
+            }
+        }
+        ProcessControlBlock next = readyQueue.remove(0);
+        next.status = TaskStatus.TASK_RUNNING;
+        setRunningProcess(next);
+        ticks++;
+        cpu.switchTo(next);
+
+        if (next.status == TaskStatus.TASK_RUNNING) {
+            if (next.continuation != null && !next.continuation.isDone()) {
+                // 仍处于运行态说明是主动让出 CPU，重新放回就绪队列
+                next.status = TaskStatus.TASK_READY;
+                readyQueue.add(next);
+            } else {
+                // 执行流结束却没有调用 exit，相当于从 main 返回
+                sysExit(next, 0);
+            }
+        }
+        return true;
+    }
+
+    // 由运行中的进程调用：让出 CPU，等待下次调度
+    public void threadYield() {
+        Continuation.yieldCurrent();
+    }
+
+    // 由运行中的进程调用：以指定状态阻塞自己，直到 threadUnblock 把它放回就绪队列
+    public void threadBlock(TaskStatus status) {
+        ProcessControlBlock current = runningProcess();
+        current.status = status;
+        Continuation.yieldCurrent();
+    }
+
+    // 唤醒阻塞的进程
+    public void threadUnblock(ProcessControlBlock process) {
+        if (process.status == TaskStatus.TASK_READY || process.status == TaskStatus.TASK_RUNNING) {
+            return;
+        }
+        process.status = TaskStatus.TASK_READY;
+        readyQueue.add(process);
+    }
+
+    private void deliverIoCompletions() {
+        IoRequest request;
+        while ((request = ioCompletions.poll()) != null) {
+            wakeIoWaiter(request);
+        }
+    }
+
+    private void wakeIoWaiter(IoRequest request) {
+        ProcessControlBlock waiter = (ProcessControlBlock) request.waiter;
+        if (waiter != null && waiter.status == TaskStatus.TASK_BLOCKED) {
+            threadUnblock(waiter);
+        }
+    }
+
+    // 向块设备异步提交请求后立即返回，完成时唤醒进程。之后用 sysWaitIo 等待它
+    public void sysSubmitIo(ProcessControlBlock process, BlockDevice device, IoRequest request) {
+        request.waiter = process;
+        request.onComplete = ioCompletions::add;
+        device.submit(request);
+    }
+
+    // 阻塞直到请求完成，成功返回 0，设备出错返回 -1。
+    // 不在执行流中的调用者无法让出 CPU，直接等待设备
+    public int sysWaitIo(ProcessControlBlock process, IoRequest request) {
+        if (Continuation.current() == null) {
+            try {
+                request.await();
+            } catch (IOException e) {
+                log.emit(LOG_IO_FAILED, request.blockNo, e.getMessage());
+                return -1;
+            }
+            return 0;
+        }
+        while (!request.isDone()) {
+            ioWaiters++;
+            threadBlock(TaskStatus.TASK_BLOCKED);
+            ioWaiters--;
+        }
+        if (request.error() != null) {
+            log.emit(LOG_PROCESS_IO_FAILED, process.pid, request.blockNo, request.error().getMessage());
+            return -1;
+        }
+        return 0;
+    }
+
+    public int sysBlockRead(ProcessControlBlock process, BlockDevice device, int blockNo, byte[] buf) {
+        IoRequest request = IoRequest.read(blockNo, buf);
+        sysSubmitIo(process, device, request);
+        return sysWaitIo(process, request);
+    }
+
+    public int sysBlockWrite(ProcessControlBlock process, BlockDevice device, int blockNo, byte[] buf) {
+        IoRequest request = IoRequest.write(blockNo, buf);
+        sysSubmitIo(process, device, request);
+        return sysWaitIo(process, request);
+    }
+
+    // 以时钟滴答为单位休眠，期间不断让出 CPU
+    public void sysSleep(long sleepTicks) {
+        long startTick = ticks;
+        while (ticks - startTick < sleepTicks) {
+            threadYield();
+        }
+    }
+
+    // 设置进程的父进程，同时维护双方的子进程表。退出时过继子进程和 wait 只查看子进程表，改变父进程都要经过这里
+    public void setParent(ProcessControlBlock child, ProcessControlBlock parent) {
+        if (child.parent != null) {
+            child.parent.children.remove(child);
+        }
+        child.parent = parent;
+        child.parentPid = parent.pid;
+        parent.children.add(child);
+    }
+
+    // init 进程在第一次使用时创建，不占用随机 PID
+    public ProcessControlBlock getInitProcess() {
+        if (initProcess == null) {
+            initProcess = newProcess("init");
+            initProcess.pid = INIT_PID;
+            initProcess.status = TaskStatus.TASK_BLOCKED;
+            allProcesses.add(initProcess);
+        }
+        return initProcess;
+    }
+
+    // 进程退出：释放地址空间和打开的文件，把子进程过继给 init，自身成为僵尸进程等待父进程回收
+    public void sysExit(ProcessControlBlock process, int status) {
+        log.emit(LOG_EXIT, process.pid, status);
+        process.exitStatus = status;
+        // 正在运行或阻塞的进程不在就绪队列中，不必扫描
+        if (process.status == TaskStatus.TASK_READY) {
+            readyQueue.remove(process);
+        }
+
+        // a. 一次性解除所有映射，批量归还物理页
+        process.ring = null;
+        detachSharedMemory(process);
+        int[] physicalAddresses = process.pageDirectory.unmapAll();
+        memory.decreaseReferenceCounts(physicalAddresses, physicalAddresses.length);
+        cpu.tlb.flushAsid(process.asid);
+        releaseFileMappings(fileMappings(process.vmAreas.toList()));
+        process.vmAreas = new VmAreaTree();
+        if (process.userProgVAddr != null) {
+            process.userProgVAddr.vaddrBitmap.release();
+        }
+        process.arenas.clear();
+
+        // b. 关闭打开的文件
+        for (int localFd = 0; localFd < process.fdTable.length; localFd++) {
+            if (process.fdTable[localFd] != -1) {
+                sysClose(process, localFd);
+            }
+        }
+
+        // c. 把子进程过继给 init，已经退出的子进程由 init 直接回收
+        ProcessControlBlock init = getInitProcess();
+        for (ProcessControlBlock child : new ArrayList<>(process.children)) {
+            setParent(child, init);
+            if (child.status == TaskStatus.TASK_HANGING) {
+                releaseProcess(child);
+            }
+        }
+
+        // d. 成为僵尸进程，唤醒正在 wait 的父进程
+        process.status = TaskStatus.TASK_HANGING;
+        ProcessControlBlock parent = process.parent;
+        if (parent == null || parent == init) {
+            releaseProcess(process);
+        } else if (parent.status == TaskStatus.TASK_WAITING) {
+            threadUnblock(parent);
+        }
+    }
+
+    // 等待任一子进程退出并回收它，返回子进程 PID；没有子进程时返回 -1。
+    // 不在执行流中的调用者无法阻塞，子进程都未退出时返回 0
+    public long sysWait(ProcessControlBlock parent, int[] status) {
+        while (true) {
+            if (parent.children.isEmpty()) {
+                return -1;
+            }
+            for (ProcessControlBlock child : parent.children) {
+                if (child.status == TaskStatus.TASK_HANGING) {
+                    if (status != null) {
+                        status[0] = child.exitStatus;
+                    }
+                    long childPid = child.pid;
+                    releaseProcess(child);
+                    return childPid;
+                }
+            }
+            if (Continuation.current() == null) {
+                return 0;
+            }
+            threadBlock(TaskStatus.TASK_WAITING);
+        }
+    }
+
+    // 回收僵尸进程的 PCB 和 PID，PCB 与内核栈放回缓存，之后可能被新的进程复用
+    void releaseProcess(ProcessControlBlock process) {
+        log.emit(LOG_REAP, process.pid);
+        allProcesses.remove(process);
+        if (process.parent != null) {
+            process.parent.children.remove(process);
+            process.parent = null;
+        }
+        pids.releasePid(process.pid);
+        process.status = TaskStatus.TASK_DIED;
+        process.continuation = null;
+        if (process.kernelStack != null) {
+            intrStackPool.release(process.kernelStack.intrStack);
+            threadStackPool.release(process.kernelStack.threadStack);
+            kernelStackPool.release(process.kernelStack);
+        }
+        process.kernelStack = null;
+        process.selfKStack = null;
+        if (process != initProcess) {
+            pcbPool.release(process);
+        }
+    }
+
+    // 开关内核对象缓存，用于对比有无缓存时的分配开销
+    public void setPoolingEnabled(boolean enabled) {
+        int capacity = enabled ? POOL_CAPACITY : 0;
+        pcbPool.setCapacity(capacity);
+        intrStackPool.setCapacity(capacity);
+        threadStackPool.setCapacity(capacity);
+        kernelStackPool.setCapacity(capacity);
+        entryPool.setCapacity(enabled ? ENTRY_POOL_CAPACITY : 0);
+    }
+
+    public ProcessControlBlock getProcessByPid(long pid) {
+        for (ProcessControlBlock process : allProcesses) {
+            if (process.pid == pid) {
+                return process;
+            }
+        }
+        return null;
+    }
+
+    // 创建以 init 为父进程、带 10 页已填充数据的进程，尚未放入就绪队列。命令行和图形界面的演示都从它开始 fork
+    public ProcessControlBlock createParentProcess(String name) {
+        return createParentProcess(name, 10);
+    }
+
+    // 同上，带 pages 页数据，从 0x8048000 开始
+    public ProcessControlBlock createParentProcess(String name, int pages) {
+        ProcessControlBlock process = newProcess(name);
+        process.pid = pids.forkPid();
+        cpu.assignAsid(process);
+        // 位图至少 1024 字节，数据页之后还留出同样多的堆空间
+        process.userProgVAddr = new UserProgVAddr(0x8048000, Math.max(1024, (pages + 3) / 4));
+        setParent(process, getInitProcess());
+        allProcesses.add(process);
+        initParentProcess(process, pages);
+        return process;
+    }
+
+    // 初始化父进程的内存和位图
+    void initParentProcess(ProcessControlBlock parentProcess, int pages) {
+        log.emit(LOG_INIT_PARENT);
+        // 在位图中分配 pages 个连续的虚拟页
+        int vaddrStart = parentProcess.userProgVAddr.allocVirtualPages(pages);
+        for (int i = 0; i < pages; i++) {
+            int virtualAddress = vaddrStart + i * PG_SIZE;
+            // 分配物理页面
+            int physicalAddress = memory.allocatePhysicalPage();
+
+            // 填充数据
+            byte[] data = new byte[PG_SIZE];
+            for (int j = 0; j < PG_SIZE; j++) {
+                data[j] = (byte) (i + j);
+            }
+            memory.writePhysicalMemory(physicalAddress, data);
+
+            // 创建页表项
+            PageTableEntry entry = new PageTableEntry(physicalAddress, false);
+            parentProcess.pageDirectory.addPageTableEntry(virtualAddress, entry);
+        }
+        // 登记对应的可读写匿名区域
+        parentProcess.vmAreas.insert(new VmArea(vaddrStart, vaddrStart + pages * PG_SIZE, VmArea.PROT_READ | VmArea.PROT_WRITE));
+    }
+
+    // 复制 PCB 和虚拟地址位图
+    public int copyPcbVaddrBitmap(ProcessControlBlock childProcess, ProcessControlBlock parentProcess) {
+        TraceEvents.CopyPcb event = new TraceEvents.CopyPcb();
+        event.begin();
+        long start = traceClock();
+        log.emit(LOG_COPY_PCB, parentProcess.pid);
+
+        // 先分配 PID，PID 用完时子进程还没有任何资源，直接失败
+        long pid = pids.forkPid();
+        if (pid == -1) {
+            log.emit(LOG_NO_PID);
+            return -1;
+        }
+
+        // 复制父进程的内容到子进程
+        childProcess.copyFrom(parentProcess);
+
+        // 修改子进程的特定字段
+        childProcess.pid = pid;
+        log.emit(LOG_ASSIGN_PID, childProcess.pid);
+        // 子进程有自己的地址空间，分配新的地址空间号
+        cpu.assignAsid(childProcess);
+        childProcess.elapsedTicks = 0;
+        childProcess.status = TaskStatus.TASK_READY;
+        childProcess.ticks = childProcess.priority;
+        setParent(childProcess, parentProcess);
+        childProcess.generalTag.prev = null;
+        childProcess.generalTag.next = null;
+        childProcess.allListTag.prev = null;
+        childProcess.allListTag.next = null;
+        // 块描述符和 arena 已在 copyFrom 中复制，子进程继承父进程的堆
+
+        // 虚拟地址位图已在 copyFrom 中与父进程写时复制共享，任意一方分配或释放虚拟页时才真正复制
+
+        if (childProcess.name.length() >= 999999999) {
+            throw new AssertionError("Process name too long");
+        }
+        childProcess.name = childProcess.name + "_fork";
+
+        if (event.shouldCommit()) {
+            event.childPid = childProcess.pid;
+            event.commit();
+        }
+        traceSpan(TRACE_COPY_PCB, start, childProcess.pid);
+        return 0;
+    }
+
+    // 初始化块描述符数组
+    public void blockDescInit(BlockDesc[] uBlockDesc) {
+        int blockSize = 16;
+        for (BlockDesc blockDesc : uBlockDesc) {
+            blockDesc.init(blockSize);
+            blockSize *= 2;
+        }
+    }
+
+    // 复制进程，使用写时复制机制
+    public int copyProcess(ProcessControlBlock childProcess, ProcessControlBlock parentProcess) {
+        TraceEvents.CopyProcess event = new TraceEvents.CopyProcess();
+        event.begin();
+        long start = traceClock();
+        log.emit(LOG_COPY_PROCESS, parentProcess.pid);
+
+        // a. 复制父进程的 PCB、虚拟地址位图、内核栈到子进程
+        log.emit(LOG_COPY_KERNEL_STACK);
+        if (copyPcbVaddrBitmap(childProcess, parentProcess) == -1) {
+            return -1;
+        }
+
+        // b. 子进程的页目录在 PCB 创建或回收时已清空，直接复用
+        log.emit(LOG_REUSE_PAGE_DIRECTORY);
+
+        // c. 遍历父进程的页表项，为子进程创建对应的页表项
+        for (Map.Entry<Integer, PageTableEntry> entry : parentProcess.pageDirectory.pageTableEntries.entrySet()) {
+            int virtualAddress = entry.getKey();
+            PageTableEntry parentEntry = entry.getValue();
+
+            // 共享映射的页父子进程照常共用，不参与写时复制
+            VmArea area = parentProcess.vmAreas.find(virtualAddress);
+            if (area != null && area.isShared()) {
+                childProcess.pageDirectory.mapPage(virtualAddress, parentEntry.physicalAddress, parentEntry.readOnly);
+                memory.increaseReferenceCount(parentEntry.physicalAddress);
+                continue;
+            }
+
+            // 为子进程创建页表项，指向相同的物理地址，标记为只读
+            childProcess.pageDirectory.mapPage(virtualAddress, parentEntry.physicalAddress, true);
+
+            // 增加物理页的引用计数
+            memory.increaseReferenceCount(parentEntry.physicalAddress);
+
+            // 将父进程的页表项也标记为只读
+            parentEntry.readOnly = true;
+        }
+
+        // 子进程继承父进程挂接的共享内存段和文件映射
+        List<VmArea> childAreas = childProcess.vmAreas.toList();
+        for (VmArea area : childAreas) {
+            if (isShmAttachment(area)) {
+                ((SharedMemorySegment) area.source).attach();
+            }
+        }
+        for (FilePageSource file : fileMappings(childAreas)) {
+            file.inode.fs.inodeDup(file.inode);
+        }
+
+        // d. 构建子进程的线程栈，并修改返回值 PID
+        log.emit(LOG_BUILD_STACK);
+        buildChildStack(childProcess);
+
+        // e. 更新文件 inode 的打开数
+        log.emit(LOG_INODE_COUNTS);
+        updateInodeOpenCounts(childProcess);
+
+        if (event.shouldCommit()) {
+            event.parentPid = parentProcess.pid;
+            event.pages = parentProcess.pageDirectory.pageTableEntries.size();
+            event.commit();
+        }
+        traceSpan(TRACE_COPY_PROCESS, start, parentProcess.pid);
+        return 0;
+    }
+
+    // 为子进程构建 thread_stack 并修改返回值
+    public int buildChildStack(ProcessControlBlock childProcess) {
+        TraceEvents.BuildChildStack event = new TraceEvents.BuildChildStack();
+        event.begin();
+        long start = traceClock();
+        log.emit(LOG_BUILD_STACK);
+
+        // a. 使子进程的 PID 返回值为 0
+        // 获取子进程 0 级栈栈顶
+        IntrStack intr0Stack = intrStackPool.acquire();
+        // 修改子进程的返回值为 0
+        intr0Stack.eax = 0;
+        // 子进程从父进程 fork 返回的位置继续执行，解释执行的进程还要继承上下文（陷入内核时已保存在 IntrStack 中），
+        // fork 的返回值寄存器 r0 为 0
+        ProcessControlBlock parentProcess = childProcess.parent;
+        if (parentProcess != null && parentProcess.kernelStack != null) {
+            intr0Stack.eip = parentProcess.kernelStack.intrStack.eip;
+            System.arraycopy(parentProcess.kernelStack.intrStack.context, 0, intr0Stack.context, 0, Context.SIZE);
+            intr0Stack.context[0] = 0;
+            intr0Stack.context[Context.PDBR] = childProcess.asid;
+        }
+
+        // b. 为 switch_to 构建 ThreadStack，将其构建在紧邻 IntrStack 之下的空间
+        ThreadStack threadStack = threadStackPool.acquire();
+        // switch_to 的返回地址更新为 intr_exit，直接从中断返回；解释执行的进程回到用户态继续解释
+        threadStack.eip = childProcess.text != null ? () -> runUser(childProcess) : cpu.intrExit;
+
+        // 把构建的 threadStack 的栈顶作为 switch_to 恢复数据时的栈顶
+        childProcess.selfKStack = threadStack;
+
+        // 将 IntrStack 和 ThreadStack 保存到子进程的内核栈中
+        childProcess.kernelStack = kernelStackPool.acquire();
+        childProcess.kernelStack.intrStack = intr0Stack;
+        childProcess.kernelStack.threadStack = threadStack;
+
+        if (event.shouldCommit()) {
+            event.childPid = childProcess.pid;
+            event.commit();
+        }
+        traceSpan(TRACE_BUILD_CHILD_STACK, start, childProcess.pid);
+        return 0;
+    }
+
+    // 子进程继承了父进程的文件描述符表，为其中每个打开文件表项增加引用计数。
+    // 父子进程共享表项（和文件指针），inode 的打开数不变
+    public void updateInodeOpenCounts(ProcessControlBlock process) {
+        log.emit(LOG_FILE_REFERENCES, process.pid);
+        for (int globalFd : process.fdTable) {
+            if (globalFd != -1) {
+                fileTable.dup(globalFd);
+            }
+        }
+    }
+
+    // 把系统打开文件表下标安装到进程的文件描述符表，返回本地 fd，表满时返回 -1
+    public int pcbFdInstall(ProcessControlBlock process, int globalFd) {
+        for (int localFd = 0; localFd < process.fdTable.length; localFd++) {
+            if (process.fdTable[localFd] == -1) {
+                process.fdTable[localFd] = globalFd;
+                return localFd;
+            }
+        }
+        log.emit(LOG_TOO_MANY_FILES, process.pid);
+        return -1;
+    }
+
+    // 本地 fd 对应的系统打开文件表下标，fd 无效时返回 -1
+    public int fdLocal2Global(ProcessControlBlock process, int localFd) {
+        if (localFd < 0 || localFd >= process.fdTable.length) {
+            return -1;
+        }
+        return process.fdTable[localFd];
+    }
+
+    // 关闭本地 fd
+    public int sysClose(ProcessControlBlock process, int localFd) {
+        int globalFd = fdLocal2Global(process, localFd);
+        if (globalFd == -1) {
+            return -1;
+        }
+        process.fdTable[localFd] = -1;
+        Pipe pipe = fileTable.get(globalFd).inode.pipe;
+        fileTable.close(globalFd);
+        if (pipe != null) {
+            // 另一端可能在等待这一端的数据或空间，唤醒它重新检查管道状态
+            wakePipeWaiter(pipe.readWaiter);
+            wakePipeWaiter(pipe.writeWaiter);
+        }
+        return 0;
+    }
+
+    public void mountFileSystem(FileSystem fs) {
+        fileSystem = fs;
+        if (fs.cache != null) {
+            fs.cache.log = log;
+        }
+    }
+
+    // 打开文件，返回本地 fd，失败返回 -1
+    public int sysOpen(ProcessControlBlock process, String path, int flags) {
+        if (fileSystem == null) {
+            log.emit(LOG_NO_FILE_SYSTEM);
+            return -1;
+        }
+        Inode inode;
+        try {
+            inode = fileSystem.open(path, flags);
+        } catch (IOException e) {
+            log.emit(LOG_OPEN_FAILED, path, e.getMessage());
+            return -1;
+        }
+        if (inode == null) {
+            log.emit(LOG_NOT_FOUND, path);
+            return -1;
+        }
+        int globalFd = fileTable.install(new FileDescriptor(inode, 0, flags));
+        if (globalFd == -1) {
+            log.emit(LOG_FILE_TABLE_FULL);
+            closeInode(inode);
+            return -1;
+        }
+        int localFd = pcbFdInstall(process, globalFd);
+        if (localFd == -1) {
+            fileTable.close(globalFd);
+        }
+        return localFd;
+    }
+
+    // 从 fd 的文件指针处读取最多 count 字节，返回读到的字节数，失败返回 -1
+    public int sysRead(ProcessControlBlock process, int localFd, byte[] buf, int count) {
+        FileDescriptor pipeFd = pipeOf(process, localFd);
+        if (pipeFd != null) {
+            return pipeRead(process, pipeFd, buf, count);
+        }
+        FileDescriptor fd = fileOf(process, localFd);
+        if (fd == null || (fd.flags & 3) == FileSystem.O_WRONLY) {
+            return -1;
+        }
+        count = Math.min(count, buf.length);
+        if (fd.position < fd.inode.size) {
+            // 顺序读时先发出异步预读，与本次读和之后的计算重叠
+            long window = fd.readahead.onRead(fd.position, count);
+            if (window != -1) {
+                fileSystem.readahead(fd.inode, (int) (window >>> 32), (int) window);
+            }
+        }
+        try {
+            int n = fileSystem.read(fd.inode, fd.position, buf, 0, count);
+            fd.position += n;
+            return n;
+        } catch (IOException e) {
+            log.emit(LOG_READ_FAILED, localFd, e.getMessage());
+            return -1;
+        }
+    }
+
+    // 把 buf 的前 count 字节写到 fd 的文件指针处，返回写入的字节数，失败返回 -1
+    public int sysWrite(ProcessControlBlock process, int localFd, byte[] buf, int count) {
+        FileDescriptor pipeFd = pipeOf(process, localFd);
+        if (pipeFd != null) {
+            return pipeWrite(process, pipeFd, buf, count);
+        }
+        FileDescriptor fd = fileOf(process, localFd);
+        if (fd == null || (fd.flags & 3) == FileSystem.O_RDONLY) {
+            return -1;
+        }
+        try {
+            int n = fileSystem.write(fd.inode, fd.position, buf, 0, Math.min(count, buf.length));
+            fd.position += n;
+            return n;
+        } catch (IOException e) {
+            log.emit(LOG_WRITE_FAILED, localFd, e.getMessage());
+            return -1;
+        }
+    }
+
+    // 移动文件指针，返回新的位置，失败返回 -1
+    public int sysLseek(ProcessControlBlock process, int localFd, int offset, int whence) {
+        FileDescriptor fd = fileOf(process, localFd);
+        if (fd == null) {
+            return -1;
+        }
+        int position;
+        switch (whence) {
+            case SEEK_SET:
+                position = offset;
+                break;
+            case SEEK_CUR:
+                position = fd.position + offset;
+                break;
+            case SEEK_END:
+                position = fd.inode.size + offset;
+                break;
+            default:
+                return -1;
+        }
+        if (position < 0) {
+            return -1;
+        }
+        fd.position = position;
+        return position;
+    }
+
+    public int sysUnlink(String path) {
+        try {
+            return fileSystem != null && fileSystem.unlink(path) ? 0 : -1;
+        } catch (IOException e) {
+            log.emit(LOG_UNLINK_FAILED, path, e.getMessage());
+            return -1;
+        }
+    }
+
+    public int sysMkdir(String path) {
+        try {
+            return fileSystem != null && fileSystem.mkdir(path) ? 0 : -1;
+        } catch (IOException e) {
+            log.emit(LOG_MKDIR_FAILED, path, e.getMessage());
+            return -1;
+        }
+    }
+
+    // 本地 fd 对应的系统打开文件表项，只接受文件系统中的文件
+    private FileDescriptor fileOf(ProcessControlBlock process, int localFd) {
+        int globalFd = fdLocal2Global(process, localFd);
+        if (globalFd == -1) {
+            return null;
+        }
+        FileDescriptor fd = fileTable.get(globalFd);
+        return fd.inode.fs == null ? null : fd;
+    }
+
+    // 本地 fd 对应的管道表项，不是管道时返回 null
+    private FileDescriptor pipeOf(ProcessControlBlock process, int localFd) {
+        int globalFd = fdLocal2Global(process, localFd);
+        if (globalFd == -1) {
+            return null;
+        }
+        FileDescriptor fd = fileTable.get(globalFd);
+        return fd.inode.pipe == null ? null : fd;
+    }
+
+    // 创建管道，fds[0] 为读端，fds[1] 为写端。成功返回 0，失败返回 -1
+    public int sysPipe(ProcessControlBlock process, int[] fds) {
+        Inode inode = new Inode();
+        inode.type = Inode.FT_PIPE;
+        inode.pipe = new Pipe(memory);
+        inode.openCount.set(2);
+        int readGlobal = fileTable.install(new FileDescriptor(inode, 0, FileSystem.O_RDONLY));
+        int writeGlobal = fileTable.install(new FileDescriptor(inode, 0, FileSystem.O_WRONLY));
+        if (readGlobal == -1 || writeGlobal == -1) {
+            log.emit(LOG_FILE_TABLE_FULL);
+            if (readGlobal != -1) {
+                fileTable.close(readGlobal);
+            }
+            if (writeGlobal != -1) {
+                fileTable.close(writeGlobal);
+            }
+            return -1;
+        }
+        fds[0] = pcbFdInstall(process, readGlobal);
+        fds[1] = fds[0] == -1 ? -1 : pcbFdInstall(process, writeGlobal);
+        if (fds[1] == -1) {
+            if (fds[0] != -1) {
+                sysClose(process, fds[0]);
+            } else {
+                fileTable.close(readGlobal);
+            }
+            fileTable.close(writeGlobal);
+            return -1;
+        }
+        return 0;
+    }
+
+    // 从管道读，管道空时阻塞直到有数据；写端全部关闭且管道已空时返回 0
+    private int pipeRead(ProcessControlBlock process, FileDescriptor fd, byte[] buf, int count) {
+        if ((fd.flags & 3) != FileSystem.O_RDONLY) {
+            return -1;
+        }
+        Pipe pipe = fd.inode.pipe;
+        count = Math.min(count, buf.length);
+        while (true) {
+            int n = pipe.read(buf, 0, count);
+            if (n > 0 || count == 0) {
+                wakePipeWaiter(pipe.writeWaiter);
+                return n;
+            }
+            if (pipe.isWriteClosed()) {
+                return 0;
+            }
+            if (!waitPipe(process, pipe, false)) {
+                return -SyscallRing.EAGAIN;
+            }
+        }
+    }
+
+    // 向管道写，全部写完才返回，管道满时阻塞。读端已关闭时返回 -1
+    private int pipeWrite(ProcessControlBlock process, FileDescriptor fd, byte[] buf, int count) {
+        if ((fd.flags & 3) != FileSystem.O_WRONLY) {
+            return -1;
+        }
+        Pipe pipe = fd.inode.pipe;
+        count = Math.min(count, buf.length);
+        int written = 0;
+        while (written < count) {
+            if (pipe.isReadClosed()) {
+                log.emit(LOG_BROKEN_PIPE, process.pid);
+                return -1;
+            }
+            int n = pipe.write(buf, written, count - written);
+            if (n > 0) {
+                written += n;
+                wakePipeWaiter(pipe.readWaiter);
+            } else if (!waitPipe(process, pipe, true)) {
+                return written > 0 ? written : -SyscallRing.EAGAIN;
+            }
+        }
+        return written;
+    }
+
+    // 把进程 [vaddr, vaddr + length) 的页直接交给管道而不复制。vaddr 须按页对齐，不足一页的尾部按普通写复制。
+    // 交出的页在进程中变为只读，进程之后再写会触发写时复制，已在管道中的数据不受影响。
+    // 共享区域（共享内存、MAP_SHARED）的页写入时不复制，也按普通写复制。返回写入的字节数，失败返回 -1
+    public int sysVmsplice(ProcessControlBlock process, int localFd, int vaddr, int length) {
+        FileDescriptor fd = pipeOf(process, localFd);
+        if (fd == null || (fd.flags & 3) != FileSystem.O_WRONLY || (vaddr & (PG_SIZE - 1)) != 0) {
+            return -1;
+        }
+        Pipe pipe = fd.inode.pipe;
+        int moved = 0;
+        while (length - moved >= PG_SIZE) {
+            if (pipe.isReadClosed()) {
+                return -1;
+            }
+            if (pipe.isFull()) {
+                if (!waitPipe(process, pipe, true)) {
+                    return moved == 0 ? -SyscallRing.EAGAIN : moved;
+                }
+                continue;
+            }
+            int pageAddress = vaddr + moved;
+            VmArea area = process.vmAreas.find(pageAddress);
+            if (area == null) {
+                return moved == 0 ? -1 : moved;
+            }
+            if (area.isShared()) {
+                byte[] page = readMemory(process, pageAddress, PG_SIZE);
+                int n = page == null ? -1 : pipeWrite(process, fd, page, PG_SIZE);
+                if (n < 0) {
+                    return moved == 0 ? n : moved;
+                }
+                moved += n;
+                if (n < PG_SIZE) {
+                    return moved;
+                }
+                continue;
+            }
+            PageTableEntry entry = process.pageDirectory.getPageTableEntry(pageAddress);
+            if (entry == null) {
+                if (!handlePageFault(process, pageAddress, false)) {
+                    return moved == 0 ? -1 : moved;
+                }
+                entry = process.pageDirectory.getPageTableEntry(pageAddress);
+            }
+            memory.increaseReferenceCount(entry.physicalAddress);
+            entry.readOnly = true;
+            pipe.give(entry.physicalAddress, PG_SIZE);
+            moved += PG_SIZE;
+            wakePipeWaiter(pipe.readWaiter);
+        }
+        if (moved < length) {
+            // pipeWrite 可能只写入一部分（轮询线程代替进程执行时返回 -EAGAIN 或已写入的字节数）
+            byte[] rest = readMemory(process, vaddr + moved, length - moved);
+            int n = rest == null ? -1 : pipeWrite(process, fd, rest, rest.length);
+            if (n < 0) {
+                return moved == 0 ? n : moved;
+            }
+            moved += n;
+        }
+        return moved;
+    }
+
+    // 把管道中的整页直接映射到进程 [vaddr, vaddr + length)，替换原来的页，映射为只读，写入时写时复制。
+    // vaddr 须按页对齐且位于已建立的区域内；不是整页的数据和共享区域按普通读复制。
+    // 返回读到的字节数，写端关闭且管道为空时返回 0，失败返回 -1
+    public int sysVmspliceMap(ProcessControlBlock process, int localFd, int vaddr, int length) {
+        FileDescriptor fd = pipeOf(process, localFd);
+        if (fd == null || (fd.flags & 3) != FileSystem.O_RDONLY || (vaddr & (PG_SIZE - 1)) != 0) {
+            return -1;
+        }
+        Pipe pipe = fd.inode.pipe;
+        int moved = 0;
+        while (moved < length) {
+            int pageAddress = vaddr + moved;
+            VmArea area = process.vmAreas.find(pageAddress);
+            if (area == null) {
+                return moved == 0 ? -1 : moved;
+            }
+            if (pipe.isEmpty()) {
+                if (moved > 0 || pipe.isWriteClosed()) {
+                    break;
+                }
+                if (!waitPipe(process, pipe, false)) {
+                    return -SyscallRing.EAGAIN;
+                }
+                continue;
+            }
+            // 共享区域写入时不复制，换入的页会被直接改写，写端仍映射着它；换页还会使该页脱离共享段或文件
+            int frame = length - moved >= PG_SIZE && !area.isShared() ? pipe.takeFrame() : -1;
+            if (frame == -1) {
+                // 队首不是整页或目标是共享区域，复制到进程内存
+                byte[] chunk = new byte[Math.min(PG_SIZE, length - moved)];
+                int n = pipe.read(chunk, 0, chunk.length);
+                writeMemory(process, pageAddress, n == chunk.length ? chunk : Arrays.copyOf(chunk, n));
+                moved += n;
+                wakePipeWaiter(pipe.writeWaiter);
+                if (n < PG_SIZE) {
+                    break;
+                }
+                continue;
+            }
+            PageTableEntry entry = process.pageDirectory.getPageTableEntry(pageAddress);
+            if (entry == null) {
+                process.pageDirectory.mapPage(pageAddress, frame, true);
+            } else {
+                memory.decreaseReferenceCount(entry.physicalAddress);
+                entry.physicalAddress = frame;
+                entry.readOnly = true;
+            }
+            moved += PG_SIZE;
+            wakePipeWaiter(pipe.writeWaiter);
+        }
+        return moved;
+    }
+
+    // 等待管道的数据（写端为 false）或空间（写端为 true），之后由调用者重试。
+    // 不在执行流中的调用者无法阻塞，让出线程。代替别的进程执行时（轮询线程处理提交队列）
+    // 阻塞的会是当前执行流而不是 process，唤醒也找不到它，返回 false，调用者返回 -EAGAIN
+    private boolean waitPipe(ProcessControlBlock process, Pipe pipe, boolean writer) {
+        if (Continuation.current() == null) {
+            Thread.yield();
+            return true;
+        }
+        if (process != runningProcess) {
+            return false;
+        }
+        if (writer) {
+            pipe.writeWaiter = process;
+            threadBlock(TaskStatus.TASK_BLOCKED);
+            pipe.writeWaiter = null;
+        } else {
+            pipe.readWaiter = process;
+            threadBlock(TaskStatus.TASK_BLOCKED);
+            pipe.readWaiter = null;
+        }
+        return true;
+    }
+
+    private void wakePipeWaiter(Object waiter) {
+        if (waiter != null && ((ProcessControlBlock) waiter).status == TaskStatus.TASK_BLOCKED) {
+            threadUnblock((ProcessControlBlock) waiter);
+        }
+    }
+
+    private void closeInode(Inode inode) {
+        try {
+            inode.fs.inodeClose(inode);
+        } catch (IOException e) {
+            log.emit(LOG_CLOSE_FAILED, inode.ino, e.getMessage());
+        }
+    }
+
+    // sysFork 方法
+    public long sysFork() {
+        TraceEvents.Fork event = new TraceEvents.Fork();
+        event.begin();
+        long start = System.nanoTime();
+        ProcessControlBlock parentProcess = runningProcess();
+        log.emit(LOG_FORK, parentProcess.pid);
+
+        // 为子进程创建 PCB
+        ProcessControlBlock childProcess = pcbPool.acquire();
+        if (childProcess == null) {
+            log.emit(LOG_FORK_NO_CHILD);
+            return -1;
+        }
+
+        // 调用 copyProcess 复制父进程的资源到子进程
+        if (copyProcess(childProcess, parentProcess) == -1) {
+            log.emit(LOG_FORK_COPY_FAILED);
+            pcbPool.release(childProcess);
+            return -1;
+        }
+
+        // 将子进程添加到就绪队列和所有线程队列
+        log.emit(LOG_FORK_READY, childProcess.pid);
+        readyQueue.add(childProcess);
+        allProcesses.add(childProcess);
+        forks.increment();
+        long end = System.nanoTime();
+        forkLatency.record(end - start);
+        if (event.shouldCommit()) {
+            event.parentPid = parentProcess.pid;
+            event.childPid = childProcess.pid;
+            event.pages = childProcess.pageDirectory.pageTableEntries.size();
+            event.commit();
+        }
+        if (chromeTrace != null) {
+            chromeTrace.complete(TRACE_FORK, start, end, childProcess.pid);
+        }
+
+        // 父进程返回子进程的 PID
+        return childProcess.pid;
+    }
+
+    // 创建一个以 init 为父进程、在自己的执行流上运行 body 的进程，放入就绪队列，返回 PID，PID 用完时返回 -1
+    public long spawnProcess(String name, Runnable body) {
+        long pid = pids.forkPid();
+        if (pid == -1) {
+            log.emit(LOG_NO_PID);
+            return -1;
+        }
+        ProcessControlBlock process = pcbPool.acquire();
+        process.name = name;
+        process.pid = pid;
+        setParent(process, getInitProcess());
+        cpu.assignAsid(process);
+        ThreadStack threadStack = threadStackPool.acquire();
+        threadStack.eip = body;
+        process.selfKStack = threadStack;
+        process.kernelStack = kernelStackPool.acquire();
+        process.kernelStack.intrStack = intrStackPool.acquire();
+        process.kernelStack.threadStack = threadStack;
+        process.status = TaskStatus.TASK_READY;
+        readyQueue.add(process);
+        allProcesses.add(process);
+        return process.pid;
+    }
+
+    // 创建解释执行 text 的进程，从 text[0] 开始执行。进程在 USER_DATA 处有 dataPages 页可读写的匿名内存，
+    // 栈指针指向这段内存的末尾，向下增长；堆从 0x8048000 开始。返回 PID
+    public long spawnProgram(String name, int[] text, int dataPages) {
+        long pid = spawnProcess(name, () -> runUser(runningProcess()));
+        if (pid == -1) {
+            return -1;
+        }
+        ProcessControlBlock process = getProcessByPid(pid);
+        process.text = text;
+        process.kernelStack.intrStack.context[Context.PC] = 0;
+        process.kernelStack.intrStack.context[Context.SP] = USER_DATA + dataPages * PG_SIZE;
+        process.userProgVAddr = new UserProgVAddr(0x8048000, 1024);
+        if (dataPages > 0) {
+            mmapRegion(process, USER_DATA, dataPages * PG_SIZE, VmArea.PROT_READ | VmArea.PROT_WRITE, null, 0);
+        }
+        return pid;
+    }
+
+    // 解释执行进程的用户态代码，直到它退出
+    void runUser(ProcessControlBlock process) {
+        int status = Interpreter.run(cpu, process, trapHandler);
+        if (status >= Opcodes.EXIT_SIGILL && status <= Opcodes.EXIT_SIGSEGV) {
+            log.emit(LOG_KILLED, process.pid, process.kernelStack.intrStack.context[Context.PC], status);
+        }
+        sysExit(process, status);
+    }
+
+    // 解释器陷入内核的处理
+    final TrapHandler trapHandler = new TrapHandler() {
+        @Override
+        public boolean pageFault(ProcessControlBlock process, int virtualAddress, boolean write) {
+            return handlePageFault(process, virtualAddress, write);
+        }
+
+        @Override
+        public int syscall(ProcessControlBlock process, int number, int arg1, int arg2, int arg3) {
+            switch (number) {
+                case Opcodes.SYS_FORK:
+                    return (int) sysFork();
+                case Opcodes.SYS_READ:
+                    return userRead(process, arg1, arg2, arg3);
+                case Opcodes.SYS_WRITE:
+                    return userWrite(process, arg1, arg2, arg3);
+                case Opcodes.SYS_WAIT: {
+                    int[] status = new int[1];
+                    long pid = sysWait(process, status);
+                    if (pid > 0 && arg1 != 0 && !copyToUser(process, arg1, intBytes(status[0]), 4)) {
+                        return -1;
+                    }
+                    return (int) pid;
+                }
+                case Opcodes.SYS_YIELD:
+                    threadYield();
+                    return 0;
+                case Opcodes.SYS_GETPID:
+                    return (int) process.pid;
+                case Opcodes.SYS_RING_SETUP:
+                    return sysRingSetup(process, arg1);
+                case Opcodes.SYS_RING_ENTER:
+                    return sysRingEnter(process);
+                default:
+                    log.emit(LOG_BAD_SYSCALL, process.pid, number);
+                    return -1;
+            }
+        }
+
+        @Override
+        public void preempt(ProcessControlBlock process) {
+            threadYield();
+        }
+    };
+
+    // read 系统调用：读到内核缓冲区后复制到用户内存
+    private int userRead(ProcessControlBlock process, int localFd, int vaddr, int count) {
+        if (count < 0) {
+            return -1;
+        }
+        byte[] buf = new byte[count];
+        int n = sysRead(process, localFd, buf, count);
+        if (n > 0 && !copyToUser(process, vaddr, buf, n)) {
+            return -1;
+        }
+        return n;
+    }
+
+    private int userWrite(ProcessControlBlock process, int localFd, int vaddr, int count) {
+        if (count < 0) {
+            return -1;
+        }
+        byte[] buf = new byte[count];
+        if (!copyFromUser(process, vaddr, buf, count)) {
+            return -1;
+        }
+        return sysWrite(process, localFd, buf, count);
+    }
+
+    // 把 buf 的前 length 字节逐页写到用户内存，地址非法时返回 false
+    boolean copyToUser(ProcessControlBlock process, int vaddr, byte[] buf, int length) {
+        int done = 0;
+        while (done < length) {
+            int addr = vaddr + done;
+            int n = Math.min(length - done, PG_SIZE - (addr & (PG_SIZE - 1)));
+            VmArea area = process.vmAreas.find(addr);
+            if (area == null || !area.isWritable()) {
+                return false;
+            }
+            writeMemory(process, addr, Arrays.copyOfRange(buf, done, done + n));
+            done += n;
+        }
+        return true;
+    }
+
+    boolean copyFromUser(ProcessControlBlock process, int vaddr, byte[] buf, int length) {
+        int done = 0;
+        while (done < length) {
+            int addr = vaddr + done;
+            int n = Math.min(length - done, PG_SIZE - (addr & (PG_SIZE - 1)));
+            byte[] chunk = readMemory(process, addr, n);
+            if (chunk == null) {
+                return false;
+            }
+            System.arraycopy(chunk, 0, buf, done, n);
+            done += n;
+        }
+        return true;
+    }
+
+    private static byte[] intBytes(int value) {
+        return new byte[]{(byte) (value >>> 24), (byte) (value >>> 16), (byte) (value >>> 8), (byte) value};
+    }
+
+    // 用程序映像替换进程的地址空间。先解析映像，成功后才拆除旧的页目录；
+    // 段内容在第一次访问时才从内存映射的映像文件中调入，启动开销只与访问到的页数有关
+    public int sysExec(ProcessControlBlock process, String path) {
+        log.emit(LOG_EXEC, process.pid, path);
+        ProgramImage image;
+        try {
+            image = ProgramImage.load(Paths.get(path));
+        } catch (IOException e) {
+            log.emit(LOG_EXEC_FAILED, e.getMessage());
+            return -1;
+        }
+
+        // a. 为每个段建立文件映射区域，段之间重叠则放弃
+        VmAreaTree vmAreas = new VmAreaTree();
+        int imageEnd = 0;
+        // 所有检查都在拆除旧地址空间之前完成，失败时进程保持原样
+        for (ProgramImage.Segment segment : image.segments) {
+            if (segment.memSize <= 0 || ProgramImage.segmentEnd(segment) >= ProgramImage.ADDRESS_LIMIT) {
+                log.emit(LOG_EXEC_FAILED, "segment out of address space in " + path);
+                return -1;
+            }
+            int segmentEnd = (int) ProgramImage.segmentEnd(segment);
+            if (!vmAreas.insert(new VmArea(segment.vaddr, segmentEnd, segment.flags, segment.source, 0))) {
+                log.emit(LOG_EXEC_OVERLAP, path);
+                return -1;
+            }
+            if (Integer.compareUnsigned(segmentEnd, imageEnd) > 0) {
+                imageEnd = segmentEnd;
+            }
+        }
+
+        // b. 拆除旧的地址空间和堆
+        process.ring = null;
+        detachSharedMemory(process);
+        int[] physicalAddresses = process.pageDirectory.unmapAll();
+        memory.decreaseReferenceCounts(physicalAddresses, physicalAddresses.length);
+        cpu.tlb.flushAsid(process.asid);
+        releaseFileMappings(fileMappings(process.vmAreas.toList()));
+        process.vmAreas = vmAreas;
+        process.arenas.clear();
+        blockDescInit(process.uBlockDesc);
+
+        // c. 堆从映像末尾开始分配
+        if (process.userProgVAddr != null) {
+            process.userProgVAddr.vaddrBitmap.release();
+        }
+        process.userProgVAddr = new UserProgVAddr(imageEnd, 1024);
+
+        // d. 返回用户态后从映像入口开始执行
+        if (process.kernelStack == null) {
+            ThreadStack threadStack = threadStackPool.acquire();
+            threadStack.eip = cpu.intrExit;
+            process.selfKStack = threadStack;
+            process.kernelStack = kernelStackPool.acquire();
+            process.kernelStack.intrStack = intrStackPool.acquire();
+            process.kernelStack.threadStack = threadStack;
+        }
+        process.kernelStack.intrStack.eip = image.entry;
+        process.name = Paths.get(path).getFileName().toString();
+        return 0;
+    }
+
+    // 验证子进程的内存数据是否与父进程一致
+    void verifyChildProcess(ProcessControlBlock childProcess, ProcessControlBlock parentProcess) {
+        log.emit(LOG_VERIFY, childProcess.pid, parentProcess.pid);
+        for (int virtualAddress : parentProcess.pageDirectory.pageTableEntries.keySet()) {
+            PageTableEntry parentEntry = parentProcess.pageDirectory.getPageTableEntry(virtualAddress);
+            PageTableEntry childEntry = childProcess.pageDirectory.getPageTableEntry(virtualAddress);
+
+            if (childEntry == null) {
+                log.emit(LOG_VERIFY_MISSING, virtualAddress);
+                continue;
+            }
+
+            if (parentEntry.physicalAddress != childEntry.physicalAddress) {
+                log.emit(LOG_VERIFY_MISMATCH, virtualAddress);
+                return;
+            }
+        }
+        log.emit(LOG_VERIFY_OK);
+    }
+
+    // 模拟进程执行
+    public void simulateProcessExecution(ProcessControlBlock process) {
+        log.emit(LOG_SIMULATE, process.pid, process.name);
+        // 模拟进程切换
+        cpu.switchTo(process);
+    }
+
+    // 在进程地址空间中建立 [start, start + length) 的映射，页面在第一次访问时才分配
+    public boolean mmapRegion(ProcessControlBlock process, int start, int length, int prot,
+                                     PageSource source, long fileOffset) {
+        return mmapRegion(process, start, length, prot, source, fileOffset, VmArea.MAP_PRIVATE);
+    }
+
+    public boolean mmapRegion(ProcessControlBlock process, int start, int length, int prot,
+                                     PageSource source, long fileOffset, int flags) {
+        int end = start + ((length + PG_SIZE - 1) & ~(PG_SIZE - 1));
+        if (!process.vmAreas.insert(new VmArea(start, end, prot, source, fileOffset, flags))) {
+            log.emit(LOG_MMAP_OVERLAP, start);
+            return false;
+        }
+        process.vmAreas.mergeAround(start);
+        return true;
+    }
+
+    // 解除 [start, start + length) 的映射并归还已分配的物理页
+    public void munmapRegion(ProcessControlBlock process, int start, int length) {
+        int end = start + ((length + PG_SIZE - 1) & ~(PG_SIZE - 1));
+        List<FilePageSource> files = fileMappings(process.vmAreas.overlapping(start, end));
+        process.vmAreas.unmap(start, end);
+        int[] physicalAddresses = process.pageDirectory.unmapRange(start, end);
+        memory.decreaseReferenceCounts(physicalAddresses, physicalAddresses.length);
+        if (!files.isEmpty()) {
+            // 只部分解除的文件映射仍由剩下的区域持有引用
+            files.removeAll(fileMappings(process.vmAreas.toList()));
+            releaseFileMappings(files);
+        }
+    }
+
+    // 区域中映射的文件，每个文件映射只出现一次。一个地址空间对它的每个文件映射持有一次 inode 打开引用：
+    // mmap 和 fork 时取得，该地址空间中最后一段属于这个映射的区域解除（munmap、exit、exec）时归还
+    private static List<FilePageSource> fileMappings(List<VmArea> areas) {
+        List<FilePageSource> files = new ArrayList<>();
+        for (VmArea area : areas) {
+            if (area.source instanceof FilePageSource && !files.contains(area.source)) {
+                files.add((FilePageSource) area.source);
+            }
+        }
+        return files;
+    }
+
+    // 页表已拆除后调用，最后一个引用归还时文件可能被释放
+    private void releaseFileMappings(List<FilePageSource> files) {
+        for (FilePageSource file : files) {
+            closeInode(file.inode);
+        }
+    }
+
+    // 在堆上分配 pgCnt 个连续的虚拟页，物理页在第一次访问时才分配，失败返回 -1
+    public int mallocPages(ProcessControlBlock process, int pgCnt) {
+        int vaddr = process.userProgVAddr.allocVirtualPages(pgCnt);
+        if (vaddr == -1) {
+            return -1;
+        }
+        mmapRegion(process, vaddr, pgCnt * PG_SIZE, VmArea.PROT_READ | VmArea.PROT_WRITE, null, 0);
+        return vaddr;
+    }
+
+    public void freePages(ProcessControlBlock process, int vaddr, int pgCnt) {
+        munmapRegion(process, vaddr, pgCnt * PG_SIZE);
+        process.userProgVAddr.freeVirtualPages(vaddr, pgCnt);
+    }
+
+    // 把 fd 对应文件从 offset 开始的 length 字节映射到进程地址空间，返回起始虚拟地址，失败返回 -1。
+    // flags 为 VmArea.MAP_SHARED 或 VmArea.MAP_PRIVATE
+    public int sysMmap(ProcessControlBlock process, int localFd, int length, int prot, int flags, int offset) {
+        FileDescriptor fd = fileOf(process, localFd);
+        if (fd == null || fd.inode.fs == null || length <= 0 || (offset & (PG_SIZE - 1)) != 0) {
+            return -1;
+        }
+        int pgCnt = (length + PG_SIZE - 1) / PG_SIZE;
+        int vaddr = process.userProgVAddr.allocVirtualPages(pgCnt);
+        if (vaddr == -1) {
+            return -1;
+        }
+        if (!mmapRegion(process, vaddr, length, prot, new FilePageSource(fd.inode), offset, flags)) {
+            process.userProgVAddr.freeVirtualPages(vaddr, pgCnt);
+            return -1;
+        }
+        // 映射持有自己的 inode 引用，关闭 fd 或删除文件后仍可访问
+        fd.inode.fs.inodeDup(fd.inode);
+        return vaddr;
+    }
+
+    public int sysMunmap(ProcessControlBlock process, int vaddr, int length) {
+        if ((vaddr & (PG_SIZE - 1)) != 0 || length <= 0) {
+            return -1;
+        }
+        freePages(process, vaddr, (length + PG_SIZE - 1) / PG_SIZE);
+        return 0;
+    }
+
+    public int sysShmget(int key, int size, int flags) {
+        return sharedMemory.get(key, size, flags);
+    }
+
+    // 把共享内存段挂接到进程地址空间，shmaddr 为 0 时由内核选择地址，否则须按页对齐。
+    // 返回挂接的虚拟地址，失败返回 -1
+    public int sysShmat(ProcessControlBlock process, int shmid, int shmaddr) {
+        SharedMemorySegment segment = sharedMemory.segment(shmid);
+        if (segment == null || (shmaddr & (PG_SIZE - 1)) != 0) {
+            return -1;
+        }
+        int pgCnt = segment.pageCount();
+        int vaddr = shmaddr;
+        boolean fromBitmap = process.userProgVAddr != null
+                && (shmaddr == 0 || process.userProgVAddr.contains(shmaddr, pgCnt));
+        if (shmaddr == 0) {
+            vaddr = fromBitmap ? process.userProgVAddr.allocVirtualPages(pgCnt) : -1;
+        } else if (fromBitmap && !process.userProgVAddr.reserveVirtualPages(shmaddr, pgCnt)) {
+            vaddr = -1;
+        }
+        if (vaddr == -1) {
+            log.emit(LOG_SHM_NO_ROOM, shmid);
+            return -1;
+        }
+        if (!mmapRegion(process, vaddr, segment.size, VmArea.PROT_READ | VmArea.PROT_WRITE, segment, 0,
+                VmArea.MAP_SHARED)) {
+            if (fromBitmap) {
+                process.userProgVAddr.freeVirtualPages(vaddr, pgCnt);
+            }
+            return -1;
+        }
+        segment.attach();
+        return vaddr;
+    }
+
+    // 解除挂接在 shmaddr 处的共享内存段，成功返回 0，失败返回 -1
+    public int sysShmdt(ProcessControlBlock process, int shmaddr) {
+        VmArea area = process.vmAreas.find(shmaddr);
+        if (area == null || area.start != shmaddr || !isShmAttachment(area)) {
+            return -1;
+        }
+        SharedMemorySegment segment = (SharedMemorySegment) area.source;
+        munmapRegion(process, shmaddr, segment.size);
+        if (process.userProgVAddr != null && process.userProgVAddr.contains(shmaddr, segment.pageCount())) {
+            process.userProgVAddr.freeVirtualPages(shmaddr, segment.pageCount());
+        }
+        segment.detach();
+        return 0;
+    }
+
+    // 删除共享内存段，已挂接的进程在解除挂接前继续使用
+    public int sysShmctl(int shmid, int cmd) {
+        if (cmd != SharedMemory.IPC_RMID) {
+            return -1;
+        }
+        return sharedMemory.remove(shmid);
+    }
+
+    // 建立 entries 项（2 的幂）的系统调用队列，映射到进程地址空间，返回起始地址，失败返回 -1。
+    // 队列放在一个私有的共享内存段中，进程退出或 exec 时随挂接一起释放
+    public int sysRingSetup(ProcessControlBlock process, int entries) {
+        if (process.ring != null || entries <= 0 || entries > SyscallRing.MAX_ENTRIES
+                || (entries & (entries - 1)) != 0) {
+            return -1;
+        }
+        int shmid = sharedMemory.get(SharedMemory.IPC_PRIVATE, SyscallRing.bytesFor(entries), SharedMemory.IPC_CREAT);
+        if (shmid == -1) {
+            return -1;
+        }
+        int vaddr = sysShmat(process, shmid, 0);
+        SharedMemorySegment segment = sharedMemory.segment(shmid);
+        sysShmctl(shmid, SharedMemory.IPC_RMID);
+        if (vaddr == -1) {
+            return -1;
+        }
+        // 内核直接访问段中的物理页
+        byte[][] pages = new byte[segment.pageCount()][];
+        for (int i = 0; i < pages.length; i++) {
+            pages[i] = memory.readPhysicalMemory(segment.frame(i));
+        }
+        process.ring = new SyscallRing(vaddr, entries, pages);
+        return vaddr;
+    }
+
+    // 一次陷入内核处理提交队列中的全部请求（完成队列满时停下），返回处理的个数，队列损坏时返回 -1
+    public int sysRingEnter(ProcessControlBlock process) {
+        SyscallRing ring = process.ring;
+        if (ring == null) {
+            return -1;
+        }
+        int n = ring.submitted();
+        if (n == -1) {
+            log.emit(LOG_RING_CORRUPT, process.pid);
+            return -1;
+        }
+        n = Math.min(n, ring.completionSpace());
+        for (int i = 0; i < n; i++) {
+            int word = ring.sqe(i, 0);
+            int result = ringOp(process, word >>> 24, word & 0xFFFFFF, ring.sqe(i, 1), ring.sqe(i, 2));
+            ring.complete(ring.sqe(i, 3), result);
+        }
+        ring.consume(n);
+        ringBatches++;
+        ringOps += n;
+        return n;
+    }
+
+    private int ringOp(ProcessControlBlock process, int op, int fd, int arg1, int arg2) {
+        switch (op) {
+            case SyscallRing.OP_NOP:
+                return 0;
+            case SyscallRing.OP_READ:
+                return userRead(process, fd, arg1, arg2);
+            case SyscallRing.OP_WRITE:
+                return userWrite(process, fd, arg1, arg2);
+            case SyscallRing.OP_LSEEK:
+                return sysLseek(process, fd, arg1, arg2);
+            case SyscallRing.OP_CLOSE:
+                return sysClose(process, fd);
+            case SyscallRing.OP_PEEK: {
+                byte[] word = (arg1 & 3) == 0 ? readMemory(process, arg1, 4) : null;
+                return word == null ? -1 : (word[0] << 24) | ((word[1] & 0xFF) << 16) | ((word[2] & 0xFF) << 8)
+                        | (word[3] & 0xFF);
+            }
+            case SyscallRing.OP_POKE:
+                return (arg1 & 3) == 0 && copyToUser(process, arg1, intBytes(arg2), 4) ? 0 : -1;
+            case SyscallRing.OP_GETPID:
+                return (int) process.pid;
+            default:
+                return -1;
+        }
+    }
+
+    // 启动一个内核线程代替进程处理提交队列：进程只需写入提交项、读取完成项，不必陷入内核。
+    // 轮询线程与进程轮流占用 CPU，没有进程持有队列时退出。需要阻塞的管道操作完成为 -EAGAIN
+    public long startRingPoller() {
+        return spawnProcess("sqpoll", () -> {
+            while (true) {
+                boolean any = false;
+                for (ProcessControlBlock process : new ArrayList<>(allProcesses)) {
+                    if (process.ring != null && process.status != TaskStatus.TASK_HANGING) {
+                        any = true;
+                        if (process.ring.submitted() != 0) {
+                            sysRingEnter(process);
+                            // 复制到进程内存时可能写时复制换了页，作废进程的 TLB 表项
+                            cpu.tlb.flushAsid(process.asid);
+                        }
+                    }
+                }
+                if (!any) {
+                    return;
+                }
+                threadYield();
+            }
+        });
+    }
+
+    // 挂接共享内存段时建立的区域。部分解除映射后剩下的后半部分不算，避免重复计数
+    private static boolean isShmAttachment(VmArea area) {
+        return area.source instanceof SharedMemorySegment && area.fileOffset == 0;
+    }
+
+    // 进程退出或 exec 时解除全部共享内存挂接，页表由调用者随后拆除
+    private void detachSharedMemory(ProcessControlBlock process) {
+        for (VmArea area : process.vmAreas.toList()) {
+            if (isShmAttachment(area)) {
+                ((SharedMemorySegment) area.source).detach();
+            }
+        }
+    }
+
+    // 在进程堆上分配 size 字节，返回虚拟地址，失败返回 0（NULL）。
+    // 不超过 1024 字节时从对应规格的 arena 中取块，更大的请求直接分配整页
+    public int sysMalloc(ProcessControlBlock process, int size) {
+        if (size <= 0) {
+            return 0;
+        }
+        BlockDesc[] descs = process.uBlockDesc;
+        if (size > descs[descs.length - 1].blockSize) {
+            int pgCnt = (size + PG_SIZE - 1) / PG_SIZE;
+            int vaddr = mallocPages(process, pgCnt);
+            if (vaddr == -1) {
+                return 0;
+            }
+            process.arenas.put(vaddr, new Arena(vaddr, pgCnt));
+            return vaddr;
+        }
+
+        // 找到能容纳 size 的最小规格
+        int descIdx = 0;
+        while (descs[descIdx].blockSize < size) {
+            descIdx++;
+        }
+        BlockDesc desc = descs[descIdx];
+        int vaddr = desc.allocBlock();
+        if (vaddr == 0) {
+            // 没有空闲块，新建一个 arena
+            int pageVaddr = mallocPages(process, 1);
+            if (pageVaddr == -1) {
+                return 0;
+            }
+            Arena arena = new Arena(desc, pageVaddr);
+            process.arenas.put(pageVaddr, arena);
+            desc.addArena(arena);
+            vaddr = desc.allocBlock();
+        }
+        return vaddr;
+    }
+
+    // 释放 sysMalloc 分配的内存。不是 sysMalloc 返回的地址或已经释放过时只记录日志，不改动堆
+    public void sysFree(ProcessControlBlock process, int vaddr) {
+        Arena arena = process.arenas.get(vaddr & ~(PG_SIZE - 1));
+        if (arena == null || !arena.isAllocated(vaddr)) {
+            log.emit(LOG_BAD_FREE, vaddr);
+            return;
+        }
+        if (arena.isLarge()) {
+            process.arenas.remove(arena.vaddr);
+            freePages(process, arena.vaddr, arena.pgCnt);
+        } else if (arena.desc.freeBlock(arena, vaddr)) {
+            // arena 中的块已全部空闲，归还整页
+            process.arenas.remove(arena.vaddr);
+            freePages(process, arena.vaddr, 1);
+        }
+    }
+
+    // 缺页处理：先查虚拟内存区域确认访问合法，再按需分配页面或执行写时复制。返回 false 表示非法访问
+    public boolean handlePageFault(ProcessControlBlock process, int virtualAddress, boolean write) {
+        TraceEvents.PageFault event = new TraceEvents.PageFault();
+        event.begin();
+        long start = traceClock();
+        boolean handled = resolvePageFault(process, virtualAddress, write);
+        if (event.shouldCommit()) {
+            event.pid = process.pid;
+            event.address = virtualAddress;
+            event.write = write;
+            event.commit();
+        }
+        traceSpan(TRACE_PAGE_FAULT, start, virtualAddress);
+        return handled;
+    }
+
+    private boolean resolvePageFault(ProcessControlBlock process, int virtualAddress, boolean write) {
+        VmArea area = process.vmAreas.find(virtualAddress);
+        if (area == null || (write && !area.isWritable())) {
+            return false;
+        }
+        int pageAddress = virtualAddress & ~(PG_SIZE - 1);
+        PageTableEntry entry = process.pageDirectory.getPageTableEntry(pageAddress);
+
+        long fileOffset = area.fileOffset + (pageAddress - area.start);
+
+        if (entry == null && !area.isAnonymous()) {
+            // 页缓存中的文件页直接映射，所有映射者共用一个物理页。
+            // 私有映射只读映射，写入时写时复制；共享映射写入时通知文件系统该页已脏
+            int physicalAddress = area.source.sharedFrame(fileOffset);
+            if (physicalAddress != -1) {
+                boolean writable = write && area.isShared();
+                if (writable && !area.source.markDirty(fileOffset)) {
+                    log.emit(LOG_MAP_DIRTY_FAILED, process.pid, pageAddress);
+                }
+                entry = process.pageDirectory.mapPage(pageAddress, physicalAddress, !writable);
+                if (write && !writable) {
+                    copyOnWrite(process, pageAddress, entry);
+                }
+                return true;
+            }
+        }
+
+        if (entry == null) {
+            // 第一次访问：匿名区域分配零页，文件区域从后备数据读入
+            int physicalAddress = memory.allocatePhysicalPage();
+            if (!area.isAnonymous()) {
+                area.source.readPage(fileOffset, memory.readPhysicalMemory(physicalAddress));
+            }
+            process.pageDirectory.mapPage(pageAddress, physicalAddress, false);
+            return true;
+        }
+
+        if (write && entry.readOnly) {
+            if (area.isShared()) {
+                // 共享映射不复制，恢复可写即可
+                entry.readOnly = false;
+                if (!area.isAnonymous() && !area.source.markDirty(fileOffset)) {
+                    log.emit(LOG_MAP_DIRTY_FAILED, process.pid, pageAddress);
+                }
+            } else {
+                copyOnWrite(process, pageAddress, entry);
+            }
+        }
+        return true;
+    }
+
+    // 查页表，抽样记录耗时
+    private PageTableEntry lookup(ProcessControlBlock process, int pageAddress) {
+        if ((++pageLookups & 15) != 0) {
+            return process.pageDirectory.getPageTableEntry(pageAddress);
+        }
+        long start = System.nanoTime();
+        PageTableEntry entry = process.pageDirectory.getPageTableEntry(pageAddress);
+        pageLookupLatency.record(System.nanoTime() - start);
+        return entry;
+    }
+
+    // 写时复制：为写入方复制一份私有页面
+    private void copyOnWrite(ProcessControlBlock process, int virtualAddress, PageTableEntry entry) {
+        if (memory.getReferenceCount(entry.physicalAddress) == 1) {
+            // 其他共享者都已退出，直接恢复可写，无需复制
+            entry.readOnly = false;
+            return;
+        }
+
+        log.emit(LOG_COPY_ON_WRITE, process.pid, virtualAddress);
+        long start = System.nanoTime();
+
+        // a. 分配新的物理页面
+        int newPhysicalAddress = memory.allocatePhysicalPage();
+
+        // b. 复制原始数据到新页面
+        byte[] originalData = memory.readPhysicalMemory(entry.physicalAddress);
+        memory.writePhysicalMemory(newPhysicalAddress, originalData);
+
+        // c. 更新页表项
+        int oldPhysicalAddress = entry.physicalAddress; // 保存旧的物理地址
+        entry.physicalAddress = newPhysicalAddress;
+        entry.readOnly = false;
+
+        // d. 更新引用计数
+        memory.decreaseReferenceCount(oldPhysicalAddress);
+        copyOnWriteFaults.increment();
+        copyOnWriteLatency.record(System.nanoTime() - start);
+    }
+
+    // 模拟写入内存，必要时触发缺页或写时复制。数据不能跨页
+    public void writeMemory(ProcessControlBlock process, int virtualAddress, byte[] data) {
+        int pageAddress = virtualAddress & ~(PG_SIZE - 1);
+        PageTableEntry entry = lookup(process, pageAddress);
+        if (entry == null || entry.readOnly) {
+            if (!handlePageFault(process, virtualAddress, true)) {
+                log.emit(LOG_BAD_ACCESS, virtualAddress);
+                return;
+            }
+            entry = process.pageDirectory.getPageTableEntry(pageAddress);
+        }
+
+        // 写入数据到物理内存
+        memory.writePhysicalMemory(entry.physicalAddress, virtualAddress - pageAddress, data);
+    }
+
+    // 模拟读取内存，页面尚未分配时触发缺页。数据不能跨页，非法访问返回 null
+    public byte[] readMemory(ProcessControlBlock process, int virtualAddress, int length) {
+        int pageAddress = virtualAddress & ~(PG_SIZE - 1);
+        PageTableEntry entry = lookup(process, pageAddress);
+        if (entry == null) {
+            if (!handlePageFault(process, virtualAddress, false)) {
+                log.emit(LOG_BAD_ACCESS, virtualAddress);
+                return null;
+            }
+            entry = process.pageDirectory.getPageTableEntry(pageAddress);
+        }
+        byte[] page = memory.readPhysicalMemory(entry.physicalAddress);
+        int offset = virtualAddress - pageAddress;
+        return Arrays.copyOfRange(page, offset, offset + length);
+    }
+}
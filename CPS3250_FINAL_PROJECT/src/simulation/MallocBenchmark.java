@@ -0,0 +1,146 @@
+package simulation;
+
+import process.ProcessControlBlock;
+import process.UserProgVAddr;
+import utils.EventLog;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+// sysMalloc/sysFree 与朴素首次适配分配器的吞吐对比。
+// 用法：MallocBenchmark [操作次数]，两者执行同一串随机的分配/释放序列
+public class MallocBenchmark {
+    static final Kernel kernel = new Kernel();
+    static final int LIVE_SLOTS = 4096;
+    static final int HEAP_PAGES = 4096;
+
+    public static void main(String[] args) {
+        int operations = args.length > 0 ? Integer.parseInt(args[0]) : 5_000_000;
+        kernel.log.level = EventLog.OFF;
+
+        // 预先生成操作序列：每个操作选一个槽位，槽位空闲则分配，否则释放
+        Random random = new Random(42);
+        int[] slots = new int[operations];
+        int[] sizes = new int[operations];
+        for (int i = 0; i < operations; i++) {
+            slots[i] = random.nextInt(LIVE_SLOTS);
+            sizes[i] = random.nextInt(100) < 95 ? 1 + random.nextInt(1024) : 1025 + random.nextInt(4 * 4096);
+        }
+
+        for (int round = 0; round < 3; round++) {
+            ProcessControlBlock process = kernel.newProcess("malloc");
+            process.pid = kernel.pids.forkPid();
+            process.userProgVAddr = new UserProgVAddr(0x8048000, 2 * HEAP_PAGES / 8);
+            long slabNanos = run(slots, sizes, new Allocator() {
+                public int malloc(int size) {
+                    return kernel.sysMalloc(process, size);
+                }
+
+                public void free(int vaddr) {
+                    kernel.sysFree(process, vaddr);
+                }
+            });
+            kernel.pids.releasePid(process.pid);
+
+            FirstFitAllocator firstFit = new FirstFitAllocator(0x8048000, HEAP_PAGES * Kernel.PG_SIZE);
+            long firstFitNanos = run(slots, sizes, firstFit);
+
+            System.out.println("round=" + round
+                    + " slabOpsPerSec=" + (long) (operations / (slabNanos / 1e9))
+                    + " firstFitOpsPerSec=" + (long) (operations / (firstFitNanos / 1e9)));
+        }
+    }
+
+    interface Allocator {
+        int malloc(int size);
+
+        void free(int vaddr);
+    }
+
+    private static long run(int[] slots, int[] sizes, Allocator allocator) {
+        int[] live = new int[LIVE_SLOTS];
+        long startTime = System.nanoTime();
+        for (int i = 0; i < slots.length; i++) {
+            int slot = slots[i];
+            if (live[slot] == 0) {
+                live[slot] = allocator.malloc(sizes[i]);
+            } else {
+                allocator.free(live[slot]);
+                live[slot] = 0;
+            }
+        }
+        return System.nanoTime() - startTime;
+    }
+
+    // 朴素的首次适配分配器：空闲区按地址有序存放，分配时从头线性查找，释放时与相邻空闲区合并
+    static class FirstFitAllocator implements Allocator {
+        private int[] freeStart = new int[16];
+        private int[] freeLength = new int[16];
+        private int freeCount;
+        private final Map<Integer, Integer> allocated = new HashMap<>();
+
+        FirstFitAllocator(int heapStart, int heapSize) {
+            freeStart[0] = heapStart;
+            freeLength[0] = heapSize;
+            freeCount = 1;
+        }
+
+        public int malloc(int size) {
+            size = (size + 15) & ~15;
+            for (int i = 0; i < freeCount; i++) {
+                if (freeLength[i] >= size) {
+                    int vaddr = freeStart[i];
+                    freeStart[i] += size;
+                    freeLength[i] -= size;
+                    if (freeLength[i] == 0) {
+                        removeAt(i);
+                    }
+                    allocated.put(vaddr, size);
+                    return vaddr;
+                }
+            }
+            return 0;
+        }
+
+        public void free(int vaddr) {
+            Integer size = allocated.remove(vaddr);
+            if (size == null) {
+                return;
+            }
+            int i = 0;
+            while (i < freeCount && freeStart[i] < vaddr) {
+                i++;
+            }
+            insertAt(i, vaddr, size);
+            // 与后一个、前一个空闲区合并
+            if (i + 1 < freeCount && freeStart[i] + freeLength[i] == freeStart[i + 1]) {
+                freeLength[i] += freeLength[i + 1];
+                removeAt(i + 1);
+            }
+            if (i > 0 && freeStart[i - 1] + freeLength[i - 1] == freeStart[i]) {
+                freeLength[i - 1] += freeLength[i];
+                removeAt(i);
+            }
+        }
+
+        private void insertAt(int i, int start, int length) {
+            if (freeCount == freeStart.length) {
+                freeStart = Arrays.copyOf(freeStart, freeCount * 2);
+                freeLength = Arrays.copyOf(freeLength, freeCount * 2);
+            }
+            System.arraycopy(freeStart, i, freeStart, i + 1, freeCount - i);
+            System.arraycopy(freeLength, i, freeLength, i + 1, freeCount - i);
+            freeStart[i] = start;
+            freeLength[i] = length;
+            freeCount++;
+        }
+
+        private void removeAt(int i) {
+            System.arraycopy(freeStart, i + 1, freeStart, i, freeCount - i - 1);
+            System.arraycopy(freeLength, i + 1, freeLength, i, freeCount - i - 1);
+            freeCount--;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package simulation;
+
+import filesystem.FilePageSource;
+import filesystem.FileSystem;
+import filesystem.Inode;
+import memory.PageSource;
+import memory.VmArea;
+import process.ProcessControlBlock;
+import process.UserProgVAddr;
+import utils.EventLog;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+// 多个进程映射同一文件时占用的物理页数。
+// 用法：PageCacheBenchmark [进程数] [文件页数]，分别用页缓存共享映射和每个进程私有读入两种方式对比
+public class PageCacheBenchmark {
+    static final Kernel kernel = new Kernel();
+    static final int BASE_VADDR = 0x10000000;
+
+    public static void main(String[] args) throws IOException {
+        int processCount = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int filePages = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        kernel.log.level = EventLog.OFF;
+
+        Path image = Files.createTempFile("pagecache", ".img");
+        FileSystem fs = FileSystem.format(kernel.memory, image, filePages + 256, 64);
+        Inode inode = fs.open("/lib.so", FileSystem.O_RDWR | FileSystem.O_CREAT);
+        byte[] page = new byte[FileSystem.BLOCK_SIZE];
+        for (int i = 0; i < filePages; i++) {
+            page[0] = (byte) i;
+            fs.write(inode, i * page.length, page, 0, page.length);
+        }
+        fs.sync();
+
+        PageSource shared = new FilePageSource(inode);
+        // 只提供 readPage，缺页时每个进程各读入一份
+        PageSource copying = shared::readPage;
+
+        run("page cache", shared, processCount, filePages);
+        run("private copy", copying, processCount, filePages);
+
+        System.out.println("page cache: " + fs.pageCache.stats());
+        fs.inodeClose(inode);
+        fs.close();
+        Files.delete(image);
+    }
+
+    static void run(String name, PageSource source, int processCount, int filePages) {
+        int framesBefore = kernel.memory.framesInUse();
+        long start = System.nanoTime();
+        List<ProcessControlBlock> processes = new ArrayList<>();
+        for (int p = 0; p < processCount; p++) {
+            ProcessControlBlock process = kernel.newProcess("reader");
+            process.pid = kernel.pids.forkPid();
+            process.userProgVAddr = new UserProgVAddr(BASE_VADDR, 1024);
+            kernel.mmapRegion(process, BASE_VADDR, filePages * FileSystem.BLOCK_SIZE,
+                    VmArea.PROT_READ, source, 0);
+            for (int i = 0; i < filePages; i++) {
+                byte[] b = kernel.readMemory(process, BASE_VADDR + i * FileSystem.BLOCK_SIZE, 1);
+                if (b[0] != (byte) i) {
+                    throw new IllegalStateException("Page " + i + " of process " + process.pid + " is wrong");
+                }
+            }
+            processes.add(process);
+        }
+        long elapsed = System.nanoTime() - start;
+        int frames = kernel.memory.framesInUse() - framesBefore;
+        System.out.printf("%-12s %5d processes x %4d pages: %8d frames added  %6.1f ms%n",
+                name, processCount, filePages, frames, elapsed / 1e6);
+
+        for (ProcessControlBlock process : processes) {
+            kernel.munmapRegion(process, BASE_VADDR, filePages * FileSystem.BLOCK_SIZE);
+            kernel.pids.releasePid(process.pid);
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package simulation;
+
+import filesystem.Pipe;
+import process.ProcessControlBlock;
+import process.UserProgVAddr;
+import utils.EventLog;
+
+// 四级进程流水线的管道吞吐：生产者 -> 转发 -> 转发 -> 消费者，相邻两级之间一个管道。
+// 生产者在每页开头写入页序号，中间两级原样转发，消费者检查序号连续。
+// copy 模式用 read/write 在用户缓冲区和管道之间复制；splice 模式用 vmsplice 直接交接物理页。
+// 用法：PipeBenchmark [MB 数]
+public class PipeBenchmark {
+    static final Kernel kernel = new Kernel();
+    static final int STAGES = 4;
+    static final int CHUNK = Pipe.PIPE_PAGES * Pipe.PAGE_SIZE;
+    static final int BASE_VADDR = 0x10000000;
+
+    public static void main(String[] args) {
+        int megabytes = args.length > 0 ? Integer.parseInt(args[0]) : 256;
+        kernel.log.level = EventLog.OFF;
+        long chunks = (long) megabytes * 1024 * 1024 / CHUNK;
+        for (boolean splice : new boolean[]{false, true}) {
+            run(splice, chunks);
+        }
+    }
+
+    static void run(boolean splice, long chunks) {
+        // 由 shell 进程创建管道，每一级继承自己用到的两端，之后 shell 关闭全部管道端
+        ProcessControlBlock shell = kernel.newProcess("shell");
+        shell.pid = kernel.pids.forkPid();
+        int[][] pipes = new int[STAGES - 1][2];
+        for (int[] fds : pipes) {
+            if (kernel.sysPipe(shell, fds) == -1) {
+                throw new IllegalStateException("pipe failed");
+            }
+        }
+        int framesBefore = kernel.memory.framesInUse();
+        long[] checked = new long[1];
+        for (int stage = 0; stage < STAGES; stage++) {
+            int[] ends = {-1, -1}; // 本级的读端、写端
+            long pid = kernel.spawnProcess("stage" + stage, () -> {
+                ProcessControlBlock self = kernel.runningProcess();
+                if (ends[0] == -1) {
+                    produce(self, ends[1], chunks, splice);
+                } else if (ends[1] == -1) {
+                    checked[0] = consume(self, ends[0], splice);
+                } else {
+                    forward(self, ends[0], ends[1], splice);
+                }
+            });
+            ProcessControlBlock process = kernel.getProcessByPid(pid);
+            process.userProgVAddr = new UserProgVAddr(BASE_VADDR, 1024);
+            if (stage > 0) {
+                ends[0] = inherit(shell, pipes[stage - 1][0], process);
+            }
+            if (stage < STAGES - 1) {
+                ends[1] = inherit(shell, pipes[stage][1], process);
+            }
+        }
+        for (int[] fds : pipes) {
+            kernel.sysClose(shell, fds[0]);
+            kernel.sysClose(shell, fds[1]);
+        }
+
+        long start = System.nanoTime();
+        while (kernel.schedule()) {
+            // 运行到流水线结束
+        }
+        long elapsed = System.nanoTime() - start;
+        kernel.pids.releasePid(shell.pid);
+
+        long pages = chunks * Pipe.PIPE_PAGES;
+        if (checked[0] != pages) {
+            throw new IllegalStateException("Consumer saw " + checked[0] + " of " + pages + " pages");
+        }
+        double megabytes = pages * Pipe.PAGE_SIZE / (1024.0 * 1024);
+        System.out.printf("%-6s %4d stages  %6.0f MB  %8.1f ms  %8.1f MB/s  frames leaked=%d%n",
+                splice ? "splice" : "copy", STAGES, megabytes, elapsed / 1e6, megabytes / (elapsed / 1e9),
+                kernel.memory.framesInUse() - framesBefore);
+    }
+
+    // 相当于 fork 时子进程继承父进程的 fd
+    static int inherit(ProcessControlBlock parent, int localFd, ProcessControlBlock child) {
+        int globalFd = kernel.fdLocal2Global(parent, localFd);
+        kernel.fileTable.dup(globalFd);
+        return kernel.pcbFdInstall(child, globalFd);
+    }
+
+    static void produce(ProcessControlBlock self, int out, long chunks, boolean splice) {
+        byte[] buf = new byte[CHUNK];
+        int vaddr = kernel.mallocPages(self, Pipe.PIPE_PAGES);
+        int seq = 0;
+        for (long c = 0; c < chunks; c++) {
+            for (int page = 0; page < Pipe.PIPE_PAGES; page++, seq++) {
+                if (splice) {
+                    kernel.writeMemory(self, vaddr + page * Pipe.PAGE_SIZE, intBytes(seq));
+                } else {
+                    putInt(buf, page * Pipe.PAGE_SIZE, seq);
+                }
+            }
+            int n = splice ? kernel.sysVmsplice(self, out, vaddr, CHUNK)
+                    : kernel.sysWrite(self, out, buf, CHUNK);
+            if (n != CHUNK) {
+                throw new IllegalStateException("Producer wrote " + n + " bytes");
+            }
+        }
+    }
+
+    static void forward(ProcessControlBlock self, int in, int out, boolean splice) {
+        byte[] buf = new byte[CHUNK];
+        int vaddr = kernel.mallocPages(self, Pipe.PIPE_PAGES);
+        while (true) {
+            int n = splice ? kernel.sysVmspliceMap(self, in, vaddr, CHUNK)
+                    : kernel.sysRead(self, in, buf, CHUNK);
+            if (n <= 0) {
+                return;
+            }
+            int written = splice ? kernel.sysVmsplice(self, out, vaddr, n)
+                    : kernel.sysWrite(self, out, buf, n);
+            if (written != n) {
+                throw new IllegalStateException("Stage wrote " + written + " of " + n + " bytes");
+            }
+        }
+    }
+
+    // 返回检查过的页数
+    static long consume(ProcessControlBlock self, int in, boolean splice) {
+        byte[] chunk = new byte[CHUNK];
+        byte[] buf = new byte[CHUNK + Pipe.PAGE_SIZE];
+        int vaddr = kernel.mallocPages(self, Pipe.PIPE_PAGES);
+        long expected = 0;
+        int pending = 0; // copy 模式下 read 读到的不足一页的部分留到下次
+        while (true) {
+            int n = splice ? kernel.sysVmspliceMap(self, in, vaddr, CHUNK)
+                    : kernel.sysRead(self, in, chunk, CHUNK);
+            if (n <= 0) {
+                return expected;
+            }
+            if (splice) {
+                for (int off = 0; off < n; off += Pipe.PAGE_SIZE) {
+                    byte[] head = kernel.readMemory(self, vaddr + off, 4);
+                    check(getInt(head, 0), expected++);
+                }
+            } else {
+                // 读到的数据接在上次剩下的部分之后，按页检查
+                System.arraycopy(chunk, 0, buf, pending, n);
+                int total = pending + n;
+                int off = 0;
+                for (; off + Pipe.PAGE_SIZE <= total; off += Pipe.PAGE_SIZE) {
+                    check(getInt(buf, off), expected++);
+                }
+                pending = total - off;
+                System.arraycopy(buf, off, buf, 0, pending);
+            }
+        }
+    }
+
+    static void check(int seq, long expected) {
+        if (seq != (int) expected) {
+            throw new IllegalStateException("Page " + expected + " arrived as " + seq);
+        }
+    }
+
+    static byte[] intBytes(int value) {
+        byte[] b = new byte[4];
+        putInt(b, 0, value);
+        return b;
+    }
+
+    static void putInt(byte[] b, int off, int value) {
+        b[off] = (byte) (value >>> 24);
+        b[off + 1] = (byte) (value >>> 16);
+        b[off + 2] = (byte) (value >>> 8);
+        b[off + 3] = (byte) value;
+    }
+
+    static int getInt(byte[] b, int off) {
+        return (b[off] << 24) | ((b[off + 1] & 0xFF) << 16) | ((b[off + 2] & 0xFF) << 8) | (b[off + 3] & 0xFF);
+    }
+}
@@ -0,0 +1,84 @@
+package simulation;
+
+import filesystem.BlockDevice;
+import filesystem.DeadlineScheduler;
+import filesystem.FileSystem;
+import filesystem.LatencyModel;
+import process.ProcessControlBlock;
+import utils.EventLog;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+// 顺序预读的效果：冷缓存下逐块读文件，每读一块做一段计算，比较开启与关闭预读时的总耗时，
+// 再做一轮随机读观察窗口是否及时收缩。
+// 用法：ReadaheadBenchmark [文件 MB 数] [每块读延迟 us] [每块计算 us]
+public class ReadaheadBenchmark {
+    static final Kernel kernel = new Kernel();
+    static final int IO_SIZE = 4096;
+
+    public static void main(String[] args) throws IOException {
+        int fileMb = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        long latencyMicros = args.length > 1 ? Long.parseLong(args[1]) : 200;
+        long computeMicros = args.length > 2 ? Long.parseLong(args[2]) : 100;
+        int blocks = fileMb * 1024 * 1024 / IO_SIZE;
+        kernel.log.level = EventLog.OFF;
+
+        Path image = Files.createTempFile("readahead", ".img");
+        FileSystem fs = FileSystem.format(kernel.memory, image, blocks + blocks / 512 + 64, 64);
+        kernel.mountFileSystem(fs);
+        ProcessControlBlock process = kernel.newProcess("reader");
+        process.pid = kernel.pids.forkPid();
+        int fd = kernel.sysOpen(process, "/stream", FileSystem.O_RDWR | FileSystem.O_CREAT);
+        byte[] buf = new byte[IO_SIZE];
+        for (int i = 0; i < blocks; i++) {
+            kernel.sysWrite(process, fd, buf, IO_SIZE);
+        }
+        kernel.sysClose(process, fd);
+        fs.close();
+
+        for (boolean readahead : new boolean[]{false, true}) {
+            // 固态盘模型：每次访问固定延迟，设备线程休眠期间不占用 CPU
+            BlockDevice device = BlockDevice.open(image, LatencyModel.ssd(latencyMicros * 1000, 500),
+                    new DeadlineScheduler());
+            fs = FileSystem.mount(kernel.memory, device, FileSystem.DEFAULT_CACHE_BLOCKS);
+            fs.readaheadEnabled = readahead;
+            kernel.mountFileSystem(fs);
+            fd = kernel.sysOpen(process, "/stream", FileSystem.O_RDONLY);
+
+            long start = System.nanoTime();
+            for (int i = 0; i < blocks; i++) {
+                kernel.sysRead(process, fd, buf, IO_SIZE);
+                compute(computeMicros);
+            }
+            long sequentialNanos = System.nanoTime() - start;
+
+            Random random = new Random(42);
+            start = System.nanoTime();
+            for (int i = 0; i < blocks / 4; i++) {
+                kernel.sysLseek(process, fd, random.nextInt(blocks) * IO_SIZE, Kernel.SEEK_SET);
+                kernel.sysRead(process, fd, buf, IO_SIZE);
+            }
+            long randomNanos = System.nanoTime() - start;
+
+            System.out.printf("readahead %-3s  sequential %8.1f ms (%.1f us/block)  random %8.1f ms%n",
+                    readahead ? "on" : "off", sequentialNanos / 1e6, sequentialNanos / 1e3 / blocks,
+                    randomNanos / 1e6);
+            System.out.println("  page cache: " + fs.pageCache.stats());
+            System.out.println("  device: " + device.stats());
+            kernel.sysClose(process, fd);
+            fs.close();
+        }
+        Files.delete(image);
+    }
+
+    // 模拟处理一块数据的计算
+    static void compute(long micros) {
+        long end = System.nanoTime() + micros * 1000;
+        while (System.nanoTime() < end) {
+            // 忙等
+        }
+    }
+}
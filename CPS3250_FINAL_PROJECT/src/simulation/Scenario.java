@@ -0,0 +1,142 @@
+package simulation;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+// 事件驱动模拟的一组参数。场景文件是 key = value 的属性文件，value 可以是逗号分隔的多个取值，
+// 文件描述的是所有取值的笛卡尔积，例如
+//   fanout = 1, 2, 4, 8
+//   pages  = 10, 100, 1000
+// 展开为 12 个场景，依次命名为 name#0、name#1……（name 缺省为文件名）。没有写出的参数取默认值，默认值就是 EventDrivenSimulation 原来的负载
+public class Scenario {
+    static final List<String> KEYS = Arrays.asList(
+            "seed", "processes", "fanout", "pages", "forkRatio", "writeRatio", "ioRatio", "duration", "actions");
+
+    public String name = "default";
+    public long seed = 42;
+    public int processes = 64;        // 同时存在的进程数上限
+    public int fanout = 1;            // 每次 fork 操作创建的子进程数
+    public int pages = 10;            // 根进程的数据页数，子进程经 fork 继承
+    public double forkRatio = 0.15;   // CPU 区间结束时各种操作的概率，其余为纯计算
+    public double writeRatio = 0.45;
+    public double ioRatio = 0.25;
+    public long duration;             // 模拟时长（毫秒），0 表示运行到所有进程退出
+    public int actions = 20_000;      // 根进程的操作数，0 表示不限（须设置 duration）
+
+    // 读取场景文件，按参数展开为场景列表。文件中出现未知参数或取值非法时抛出 IllegalArgumentException
+    public static List<Scenario> load(Path path) throws IOException {
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+        for (String key : properties.stringPropertyNames()) {
+            if (!KEYS.contains(key) && !key.equals("name")) {
+                throw new IllegalArgumentException(path + ": unknown parameter " + key);
+            }
+        }
+        String base = properties.getProperty("name", path.getFileName().toString().replaceFirst("\\.[^.]*$", ""));
+        List<Scenario> scenarios = new ArrayList<>();
+        scenarios.add(new Scenario());
+        for (String key : KEYS) {
+            String value = properties.getProperty(key);
+            if (value == null) {
+                continue;
+            }
+            // 已展开的每个场景与该参数的每个取值组合
+            List<Scenario> expanded = new ArrayList<>();
+            for (Scenario scenario : scenarios) {
+                for (String item : value.split(",")) {
+                    Scenario copy = scenario.copy();
+                    copy.set(key, item.trim());
+                    expanded.add(copy);
+                }
+            }
+            scenarios = expanded;
+        }
+        for (int i = 0; i < scenarios.size(); i++) {
+            scenarios.get(i).name = base + "#" + i;
+            scenarios.get(i).validate();
+        }
+        return scenarios;
+    }
+
+    Scenario copy() {
+        Scenario copy = new Scenario();
+        copy.name = name;
+        copy.seed = seed;
+        copy.processes = processes;
+        copy.fanout = fanout;
+        copy.pages = pages;
+        copy.forkRatio = forkRatio;
+        copy.writeRatio = writeRatio;
+        copy.ioRatio = ioRatio;
+        copy.duration = duration;
+        copy.actions = actions;
+        return copy;
+    }
+
+    void set(String key, String value) {
+        try {
+            switch (key) {
+                case "seed":
+                    seed = Long.parseLong(value);
+                    break;
+                case "processes":
+                    processes = Integer.parseInt(value);
+                    break;
+                case "fanout":
+                    fanout = Integer.parseInt(value);
+                    break;
+                case "pages":
+                    pages = Integer.parseInt(value);
+                    break;
+                case "forkRatio":
+                    forkRatio = Double.parseDouble(value);
+                    break;
+                case "writeRatio":
+                    writeRatio = Double.parseDouble(value);
+                    break;
+                case "ioRatio":
+                    ioRatio = Double.parseDouble(value);
+                    break;
+                case "duration":
+                    duration = Long.parseLong(value);
+                    break;
+                case "actions":
+                    actions = Integer.parseInt(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown parameter " + key);
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Bad value for " + key + ": " + value);
+        }
+    }
+
+    void validate() {
+        if (processes < 1 || fanout < 1 || pages < 1 || duration < 0 || actions < 0) {
+            throw new IllegalArgumentException(name + ": processes, fanout and pages must be positive, "
+                    + "duration and actions non-negative");
+        }
+        if (forkRatio < 0 || writeRatio < 0 || ioRatio < 0 || forkRatio + writeRatio + ioRatio > 1) {
+            throw new IllegalArgumentException(name + ": ratios must be non-negative and add up to at most 1");
+        }
+        if (actions == 0 && duration == 0) {
+            throw new IllegalArgumentException(name + ": an unlimited root process needs a duration");
+        }
+    }
+
+    @Override
+    public String toString() {
+        return name + " seed=" + seed + " processes=" + processes + " fanout=" + fanout + " pages=" + pages
+                + " forkRatio=" + forkRatio + " writeRatio=" + writeRatio + " ioRatio=" + ioRatio
+                + " duration=" + duration + " actions=" + actions;
+    }
+}
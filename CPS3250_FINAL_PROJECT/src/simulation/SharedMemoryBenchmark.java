@@ -0,0 +1,84 @@
+package simulation;
+
+import memory.SharedMemory;
+import process.ProcessControlBlock;
+import process.UserProgVAddr;
+import utils.EventLog;
+
+// fork 之后子进程写共享内存段与写私有内存的代价对比。
+// 父进程挂接一个共享内存段并分配同样大小的私有堆，都写满后 fork 出若干子进程，每个子进程把两块区域各写一遍：
+// 私有内存每页触发一次写时复制，共享内存直接写入同一物理页，父进程能看到子进程写的数据。
+// 用法：SharedMemoryBenchmark [子进程数] [页数]
+public class SharedMemoryBenchmark {
+    static final Kernel kernel = new Kernel();
+
+    public static void main(String[] args) {
+        int childCount = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        int pages = args.length > 1 ? Integer.parseInt(args[1]) : 1024;
+        kernel.log.level = EventLog.OFF;
+
+        ProcessControlBlock parent = kernel.newProcess("parent");
+        parent.pid = kernel.pids.forkPid();
+        parent.userProgVAddr = new UserProgVAddr(0x8048000, 1024);
+        kernel.setParent(parent, kernel.getInitProcess());
+        kernel.allProcesses.add(parent);
+        kernel.setRunningProcess(parent);
+
+        int shmid = kernel.sysShmget(SharedMemory.IPC_PRIVATE, pages * Kernel.PG_SIZE,
+                SharedMemory.IPC_CREAT);
+        int shared = kernel.sysShmat(parent, shmid, 0);
+        int heap = kernel.mallocPages(parent, pages);
+        byte[] data = new byte[]{1, 2, 3, 4};
+        for (int i = 0; i < pages; i++) {
+            kernel.writeMemory(parent, shared + i * Kernel.PG_SIZE, data);
+            kernel.writeMemory(parent, heap + i * Kernel.PG_SIZE, data);
+        }
+        // 所有挂接者退出后释放段
+        kernel.sysShmctl(shmid, SharedMemory.IPC_RMID);
+        int framesStart = kernel.memory.framesInUse();
+
+        long sharedNanos = 0;
+        long privateNanos = 0;
+        int sharedFrames = 0;
+        int privateFrames = 0;
+        int[] status = new int[1];
+        for (int c = 0; c < childCount; c++) {
+            ProcessControlBlock child = kernel.getProcessByPid(kernel.sysFork());
+            byte[] mark = new byte[]{(byte) c};
+
+            int before = kernel.memory.framesInUse();
+            long start = System.nanoTime();
+            for (int i = 0; i < pages; i++) {
+                kernel.writeMemory(child, shared + i * Kernel.PG_SIZE, mark);
+            }
+            sharedNanos += System.nanoTime() - start;
+            sharedFrames += kernel.memory.framesInUse() - before;
+
+            before = kernel.memory.framesInUse();
+            start = System.nanoTime();
+            for (int i = 0; i < pages; i++) {
+                kernel.writeMemory(child, heap + i * Kernel.PG_SIZE, mark);
+            }
+            privateNanos += System.nanoTime() - start;
+            privateFrames += kernel.memory.framesInUse() - before;
+
+            if (kernel.readMemory(parent, shared, 1)[0] != (byte) c) {
+                throw new IllegalStateException("Parent does not see child " + c + "'s shared write");
+            }
+            if (kernel.readMemory(parent, heap, 1)[0] != 1) {
+                throw new IllegalStateException("Child " + c + "'s private write leaked into the parent");
+            }
+            kernel.sysExit(child, 0);
+            kernel.sysWait(parent, status);
+        }
+
+        System.out.printf("%d children x %d pages%n", childCount, pages);
+        System.out.printf("shared  %8.1f ms  %8d frames copied%n", sharedNanos / 1e6, sharedFrames);
+        System.out.printf("private %8.1f ms  %8d frames copied%n", privateNanos / 1e6, privateFrames);
+
+        kernel.sysShmdt(parent, shared);
+        kernel.freePages(parent, heap, pages);
+        System.out.printf("frames after detach: %d (before children: %d, segments left: %d)%n",
+                kernel.memory.framesInUse(), framesStart, kernel.sharedMemory.segmentCount());
+    }
+}
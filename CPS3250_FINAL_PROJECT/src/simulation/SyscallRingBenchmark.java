@@ -0,0 +1,155 @@
+package simulation;
+
+import cpu.Assembler;
+import cpu.CPU;
+import filesystem.FileSystem;
+import process.ProcessControlBlock;
+import process.SyscallRing;
+import utils.EventLog;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static cpu.Opcodes.*;
+
+// 逐个系统调用与批量提交队列的吞吐对比。解释执行的程序做 ops 次 getpid 或 64 字节的文件写：
+//   call    每次操作一条 SYSCALL
+//   ring    写满一批提交项后一次 SYS_RING_ENTER，再读完成队列
+//   sqpoll  内核轮询线程处理提交队列，程序不陷入内核，只在等完成时让出 CPU
+// 用法：SyscallRingBenchmark [操作数]
+public class SyscallRingBenchmark {
+    static final Kernel kernel = new Kernel();
+    static final int ZERO = 15; // 逐个调用的程序约定 r15 恒为 0
+    static final int WRITE_SIZE = 64;
+
+    public static void main(String[] args) throws IOException {
+        int ops = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        kernel.log.level = EventLog.OFF;
+
+        Path image = Files.createTempFile("ring", ".img");
+        FileSystem fs = FileSystem.format(kernel.memory, image, 16384, 1024, FileSystem.DEFAULT_CACHE_BLOCKS);
+        kernel.mountFileSystem(fs);
+        kernel.sysMkdir("/bench");
+
+        // 预热
+        for (int op : new int[]{SyscallRing.OP_GETPID, SyscallRing.OP_WRITE}) {
+            run("warmup", op, ops / 10, 0, false, false);
+            run("warmup", op, ops / 10, 64, false, false);
+            run("warmup", op, ops / 10, 256, false, false);
+            run("warmup", op, ops / 10, 256, true, false);
+        }
+
+        for (int op : new int[]{SyscallRing.OP_GETPID, SyscallRing.OP_WRITE}) {
+            run("call", op, ops, 0, false, true);
+            for (int batch : new int[]{8, 64, 256}) {
+                run("ring", op, ops, batch, false, true);
+            }
+            run("sqpoll", op, ops, 256, true, true);
+        }
+        fs.close();
+        Files.deleteIfExists(image);
+    }
+
+    static void run(String mode, int op, int ops, int batch, boolean poll, boolean print) {
+        ProcessControlBlock shell = InterpreterBenchmark.shell(kernel);
+        int[] text = batch == 0 ? perCall(op, ops) : batched(op, ops, batch, poll);
+        long pid = kernel.spawnProgram(mode, text, 1);
+        ProcessControlBlock process = kernel.getProcessByPid(pid);
+        kernel.setParent(process, shell);
+        if (op == SyscallRing.OP_WRITE) {
+            // 本地 fd 0
+            kernel.sysOpen(process, "/bench/data", FileSystem.O_WRONLY | FileSystem.O_CREAT);
+        }
+
+        long batches = kernel.ringBatches;
+        long start = System.nanoTime();
+        boolean pollerStarted = false;
+        while (kernel.schedule()) {
+            // 程序建立队列后再启动轮询线程
+            if (poll && !pollerStarted && process.ring != null) {
+                kernel.startRingPoller();
+                pollerStarted = true;
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        batches = kernel.ringBatches - batches;
+
+        int[] status = new int[1];
+        if (kernel.sysWait(shell, status) != pid || status[0] != ops) {
+            throw new IllegalStateException(mode + ": exited with " + status[0] + ", expected " + ops);
+        }
+        kernel.releaseProcess(shell);
+        kernel.sysUnlink("/bench/data");
+        if (print) {
+            System.out.printf("%-6s %-6s batch=%-4d %8d ops %8.1f ms %6.2f M ops/s %8d kernel entries%n",
+                    op == SyscallRing.OP_GETPID ? "getpid" : "write", mode, batch, ops, elapsed / 1e6,
+                    ops / (elapsed / 1e3), batch == 0 ? ops : batches);
+        }
+    }
+
+    // 每次操作一条 SYSCALL，退出状态为成功的次数
+    static int[] perCall(int op, int ops) {
+        Assembler asm = new Assembler()
+                .li(ZERO, 0).li(7, ops).li(8, 0)
+                .label("loop").bge(8, 7, "done");
+        if (op == SyscallRing.OP_GETPID) {
+            asm.syscall(SYS_GETPID);
+        } else {
+            asm.li(1, 0).li(2, Kernel.USER_DATA).li(3, WRITE_SIZE).syscall(SYS_WRITE);
+        }
+        return asm.blt(0, ZERO, "bad")
+                .addi(8, 8, 1)
+                .jmp("loop")
+                .label("bad").li(1, -1).syscall(SYS_EXIT)
+                .label("done").mov(1, 8).syscall(SYS_EXIT)
+                .assemble();
+    }
+
+    // 寄存器：r6 批内序号，r7 总数，r8 已提交，r9 已完成，r10 队列基址，r11 提交队列掩码，r12 完成队列掩码，
+    // r13 提交项起点，r14 完成项起点，r15 批大小。退出状态为成功的完成项数
+    static int[] batched(int op, int ops, int batch, boolean poll) {
+        Assembler asm = new Assembler()
+                .li(1, batch).syscall(SYS_RING_SETUP)
+                .li(1, 0).blt(0, 1, "bad")
+                .mov(10, 0)
+                .li(11, batch - 1).li(12, 2 * batch - 1).li(15, batch)
+                .lw(13, 10, SyscallRing.SQ_OFFSET).add(13, 13, 10)
+                .lw(14, 10, SyscallRing.CQ_OFFSET).add(14, 14, 10)
+                .li(7, ops).li(8, 0).li(9, 0)
+                .label("outer").bge(8, 7, "done")
+                .li(6, 0)
+                // 写一批提交项
+                .label("fill").bge(6, 15, "submit").bge(8, 7, "submit")
+                .lw(1, 10, SyscallRing.SQ_TAIL)
+                .and(2, 1, 11).li(3, 4).shl(2, 2, 3).add(2, 2, 13)
+                .li(3, op << 24).sw(3, 2, 0)
+                .li(3, Kernel.USER_DATA).sw(3, 2, 4)
+                .li(3, WRITE_SIZE).sw(3, 2, 8)
+                .sw(8, 2, 12)
+                .addi(1, 1, 1).sw(1, 10, SyscallRing.SQ_TAIL)
+                .addi(6, 6, 1).addi(8, 8, 1)
+                .jmp("fill")
+                .label("submit");
+        if (!poll) {
+            asm.syscall(SYS_RING_ENTER);
+        }
+        // 读完成队列
+        asm.label("reap").lw(1, 10, SyscallRing.CQ_HEAD).lw(2, 10, SyscallRing.CQ_TAIL)
+                .label("next").beq(1, 2, "reaped")
+                .and(3, 1, 12).li(4, 3).shl(3, 3, 4).add(3, 3, 14)
+                .lw(4, 3, 4).li(5, 0).blt(4, 5, "bad")
+                .addi(9, 9, 1).addi(1, 1, 1)
+                .jmp("next")
+                .label("reaped").sw(1, 10, SyscallRing.CQ_HEAD);
+        if (poll) {
+            // 等轮询线程处理完这一批
+            asm.bge(9, 8, "outer").syscall(SYS_YIELD).jmp("reap");
+        } else {
+            asm.jmp("outer");
+        }
+        return asm.label("bad").li(1, -1).syscall(SYS_EXIT)
+                .label("done").mov(1, 9).syscall(SYS_EXIT)
+                .assemble();
+    }
+}
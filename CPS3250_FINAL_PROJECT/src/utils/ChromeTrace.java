@@ -0,0 +1,105 @@
+package utils;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// 按 Chrome Trace Event 格式缓存一个内核的时间段事件，写出的 JSON 可以在 chrome://tracing 或 Perfetto 中打开。
+// 每个事件是 (名字, 开始, 结束, 一个参数)，存放在基本类型数组中；名字和参数名用 define 预先登记。
+// 一个内核只有一个 CPU，事件都在同一条时间线上，嵌套的调用（fork 中的 copyProcess 等）按时间自然嵌套。
+// 由驱动内核的执行流记录，不加锁；超过容量后丢弃新事件并计数
+public class ChromeTrace {
+    private static final List<String> names = new ArrayList<>();
+    private static final List<String> argNames = new ArrayList<>();
+
+    // 登记一种事件，返回事件号
+    public static synchronized int define(String name, String argName) {
+        names.add(name);
+        argNames.add(argName);
+        return names.size() - 1;
+    }
+
+    private final String processName;
+    private final int capacity;
+    private final long origin = System.nanoTime();
+    private int[] events = new int[1024];
+    private long[] starts = new long[1024];
+    private long[] ends = new long[1024];
+    private long[] args = new long[1024];
+    private int size;
+    private long dropped;
+
+    public ChromeTrace(String processName) {
+        this(processName, 1 << 20);
+    }
+
+    public ChromeTrace(String processName, int capacity) {
+        this.processName = processName;
+        this.capacity = capacity;
+    }
+
+    // 记录一个时间段，时间为 System.nanoTime
+    public void complete(int event, long start, long end, long arg) {
+        if (size == events.length) {
+            if (size == capacity) {
+                dropped++;
+                return;
+            }
+            int grown = Math.min(capacity, size * 2);
+            events = Arrays.copyOf(events, grown);
+            starts = Arrays.copyOf(starts, grown);
+            ends = Arrays.copyOf(ends, grown);
+            args = Arrays.copyOf(args, grown);
+        }
+        events[size] = event;
+        starts[size] = start;
+        ends[size] = end;
+        args[size] = arg;
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long dropped() {
+        return dropped;
+    }
+
+    public void write(Path path) throws IOException {
+        String[] eventNames;
+        String[] eventArgNames;
+        synchronized (ChromeTrace.class) {
+            eventNames = names.toArray(new String[0]);
+            eventArgNames = argNames.toArray(new String[0]);
+        }
+        try (BufferedWriter out = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            out.write("{\"displayTimeUnit\":\"ns\",\"otherData\":{\"dropped\":" + dropped + "},\"traceEvents\":[\n");
+            out.write("{\"name\":\"process_name\",\"ph\":\"M\",\"pid\":0,\"tid\":0,\"args\":{\"name\":\""
+                    + escape(processName) + "\"}},\n");
+            out.write("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":0,\"tid\":0,\"args\":{\"name\":\"CPU 0\"}}");
+            StringBuilder line = new StringBuilder();
+            for (int i = 0; i < size; i++) {
+                // 时间单位为微秒
+                line.setLength(0);
+                line.append(",\n{\"name\":\"").append(eventNames[events[i]])
+                        .append("\",\"cat\":\"kernel\",\"ph\":\"X\",\"pid\":0,\"tid\":0,\"ts\":")
+                        .append((starts[i] - origin) / 1e3)
+                        .append(",\"dur\":").append((ends[i] - starts[i]) / 1e3)
+                        .append(",\"args\":{\"").append(eventArgNames[events[i]]).append("\":").append(args[i])
+                        .append("}}");
+                out.append(line);
+            }
+            out.write("\n]}\n");
+        }
+    }
+
+    private static String escape(String text) {
+        return text.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+}
@@ -2,4 +2,5 @@ package utils;
 
 public interface Constants {
     int PG_SIZE = 4096;
+    int MAX_FILES_OPEN_PER_PROC = 16;
 }
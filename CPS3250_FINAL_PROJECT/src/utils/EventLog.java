@@ -0,0 +1,287 @@
+package utils;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+// 内核日志：热路径只写入事件号和参数，格式化和输出由后台线程完成。
+// 事件用 define 预先登记级别和格式串，事件号的高 8 位就是级别，级别检查只是一次移位比较；
+// 格式串中 %d 依次取 long 参数，%s 依次取对象参数。参数是基本类型或已有的对象（进程名、路径、异常信息），
+// 级别关闭时 emit 直接返回，打开时也只做一次 CAS 和几次数组写入，不分配对象。
+// 事件放在固定容量的环形缓冲区中，多个线程可以同时写入，缓冲区满时丢弃新事件并计数，不阻塞内核。
+// 后台线程在第一次写入时启动，把一批事件格式化成多行文本交给 sink（控制台、文件或界面），进程退出前会输出剩余的事件。
+// 不再使用的日志（如批量运行中每个场景的内核）用 close 停止后台线程
+public class EventLog {
+    public static final int DEBUG = 1;
+    public static final int INFO = 2;
+    public static final int WARN = 3;
+    public static final int OFF = 4;
+
+    private static final int LEVEL_SHIFT = 24;
+    private static final List<String> formats = new ArrayList<>();
+
+    // 直接输出一段文本，供演示程序和界面使用
+    public static final int MESSAGE = define(INFO, "%s");
+
+    // 登记一种事件，返回事件号。一般在类初始化时调用
+    public static synchronized int define(int level, String format) {
+        formats.add(format);
+        return level << LEVEL_SHIFT | (formats.size() - 1);
+    }
+
+    // 低于这个级别的事件被丢弃
+    public volatile int level = INFO;
+    // 接收格式化后的文本，每次一批，行之间用换行分隔。只在后台线程或 flush 的调用者中调用
+    public volatile Consumer<String> sink = System.out::println;
+
+    private final int mask;
+    private final int[] events;
+    private final long[] longs;     // 每个事件三个 long 参数
+    private final Object[] objects; // 每个事件两个对象参数
+    private final AtomicLongArray published; // 槽位写完后记录序号加 1，读端据此判断是否可读
+    private final AtomicLong tail = new AtomicLong();
+    private volatile long head;
+    private final LongAdder dropped = new LongAdder();
+    private long droppedReported;
+    private volatile Thread drainer;
+    private Thread shutdownHook;
+    private volatile boolean closed;
+    private final StringBuilder text = new StringBuilder();
+
+    public EventLog() {
+        this(1 << 14);
+    }
+
+    // capacity 须为 2 的幂
+    public EventLog(int capacity) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+        }
+        mask = capacity - 1;
+        events = new int[capacity];
+        longs = new long[3 * capacity];
+        objects = new Object[2 * capacity];
+        published = new AtomicLongArray(capacity);
+    }
+
+    public boolean enabled(int event) {
+        return event >>> LEVEL_SHIFT >= level;
+    }
+
+    public void emit(int event) {
+        if (enabled(event)) {
+            put(event, 0, 0, 0, null, null);
+        }
+    }
+
+    public void emit(int event, long a) {
+        if (enabled(event)) {
+            put(event, a, 0, 0, null, null);
+        }
+    }
+
+    public void emit(int event, long a, long b) {
+        if (enabled(event)) {
+            put(event, a, b, 0, null, null);
+        }
+    }
+
+    public void emit(int event, long a, long b, long c) {
+        if (enabled(event)) {
+            put(event, a, b, c, null, null);
+        }
+    }
+
+    public void emit(int event, Object s) {
+        if (enabled(event)) {
+            put(event, 0, 0, 0, s, null);
+        }
+    }
+
+    public void emit(int event, Object s, Object t) {
+        if (enabled(event)) {
+            put(event, 0, 0, 0, s, t);
+        }
+    }
+
+    public void emit(int event, long a, Object s) {
+        if (enabled(event)) {
+            put(event, a, 0, 0, s, null);
+        }
+    }
+
+    public void emit(int event, long a, long b, Object s) {
+        if (enabled(event)) {
+            put(event, a, b, 0, s, null);
+        }
+    }
+
+    public long dropped() {
+        return dropped.sum();
+    }
+
+    // 在调用线程上输出所有已写入的事件
+    public void flush() {
+        drain();
+    }
+
+    // 停止后台线程，移除退出时的钩子，并输出剩余的事件。之后写入的事件留在缓冲区中，只在调用者 flush 时输出
+    public void close() {
+        Thread thread;
+        Thread hook;
+        synchronized (this) {
+            closed = true;
+            thread = drainer;
+            hook = shutdownHook;
+            shutdownHook = null;
+        }
+        if (thread != null) {
+            LockSupport.unpark(thread);
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (hook != null) {
+            try {
+                Runtime.getRuntime().removeShutdownHook(hook);
+            } catch (IllegalStateException e) {
+                // 进程已经在退出，钩子会照常运行
+            }
+        }
+        flush();
+    }
+
+    // 追加到文件的 sink，每批写完后刷新
+    public static Consumer<String> fileSink(Path path) throws IOException {
+        BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8);
+        return batch -> {
+            try {
+                writer.write(batch);
+                writer.newLine();
+                writer.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
+    }
+
+    private void put(int event, long a, long b, long c, Object s, Object t) {
+        long seq;
+        do {
+            seq = tail.get();
+            if (seq - head > mask) {
+                dropped.increment();
+                return;
+            }
+        } while (!tail.compareAndSet(seq, seq + 1));
+        int slot = (int) seq & mask;
+        events[slot] = event;
+        longs[3 * slot] = a;
+        longs[3 * slot + 1] = b;
+        longs[3 * slot + 2] = c;
+        objects[2 * slot] = s;
+        objects[2 * slot + 1] = t;
+        published.lazySet(slot, seq + 1);
+        if (drainer == null && !closed) {
+            startDrainer();
+        }
+    }
+
+    private synchronized void startDrainer() {
+        if (drainer != null || closed) {
+            return;
+        }
+        Thread thread = new Thread(() -> {
+            while (!closed) {
+                try {
+                    if (!drain()) {
+                        LockSupport.parkNanos(1_000_000);
+                    }
+                } catch (RuntimeException e) {
+                    // sink 出错时丢掉这一批，继续输出后面的事件
+                    e.printStackTrace();
+                }
+            }
+        }, "kernel-log");
+        thread.setDaemon(true);
+        drainer = thread;
+        thread.start();
+        shutdownHook = new Thread(() -> {
+            try {
+                flush();
+            } catch (RuntimeException e) {
+                // 退出时界面等 sink 可能已经关闭
+            }
+        });
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    // 输出已写入的事件，没有事件时返回 false。写入是按序号占位的，遇到尚未写完的槽位就停下
+    private synchronized boolean drain() {
+        long seq = head;
+        long end = tail.get();
+        text.setLength(0);
+        while (seq < end && published.get((int) seq & mask) == seq + 1) {
+            int slot = (int) seq & mask;
+            if (text.length() > 0) {
+                text.append('\n');
+            }
+            format(events[slot], slot);
+            objects[2 * slot] = null;
+            objects[2 * slot + 1] = null;
+            seq++;
+        }
+        head = seq;
+        long lost = dropped.sum();
+        if (lost != droppedReported) {
+            if (text.length() > 0) {
+                text.append('\n');
+            }
+            text.append("(").append(lost - droppedReported).append(" log events dropped)");
+            droppedReported = lost;
+        }
+        if (text.length() == 0) {
+            return false;
+        }
+        sink.accept(text.toString());
+        return true;
+    }
+
+    private void format(int event, int slot) {
+        String format;
+        synchronized (EventLog.class) {
+            format = formats.get(event & ((1 << LEVEL_SHIFT) - 1));
+        }
+        int nextLong = 0;
+        int nextObject = 0;
+        for (int i = 0; i < format.length(); i++) {
+            char c = format.charAt(i);
+            if (c == '%' && i + 1 < format.length()) {
+                char kind = format.charAt(i + 1);
+                if (kind == 'd' && nextLong < 3) {
+                    text.append(longs[3 * slot + nextLong++]);
+                    i++;
+                    continue;
+                }
+                if (kind == 's' && nextObject < 2) {
+                    text.append(objects[2 * slot + nextObject++]);
+                    i++;
+                    continue;
+                }
+            }
+            text.append(c);
+        }
+    }
+}
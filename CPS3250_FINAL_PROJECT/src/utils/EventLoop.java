@@ -0,0 +1,201 @@
+package utils;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.locks.LockSupport;
+
+// 离散事件模拟引擎：模拟时钟（纳秒）加一个按时间排序的事件堆。
+// 事件是 (时间, 类型, long 参数, 对象参数)，存放在并行的基本类型数组中，入队出队不分配对象；
+// 同一时刻的事件按入队顺序处理，加上固定种子的随机数，同样的输入每次运行得到完全相同的事件序列。
+// 默认不等待真实时间，尽快处理；speed 大于 0 时按模拟时间的 speed 倍速与真实时间同步
+public class EventLoop {
+    // 事件处理函数，按事件类型注册
+    public interface Handler {
+        void handle(long arg, Object payload);
+    }
+
+    private static final int MAX_TYPES = 64;
+
+    private final Handler[] handlers = new Handler[MAX_TYPES];
+    private long[] times = new long[256];
+    private long[] seqs = new long[256];
+    private int[] types = new int[256];
+    private long[] args = new long[256];
+    private Object[] payloads = new Object[256];
+    private int size;
+    private long nextSeq;
+    private long now;
+    private boolean stopped;
+    private long wallStart; // 本次 run 开始时的真实时间和模拟时间，用于同步
+    private long simStart;
+
+    public final SplittableRandom random;
+    public double speed;          // 0 表示尽快运行
+    public long eventsProcessed;
+
+    public EventLoop(long seed) {
+        random = new SplittableRandom(seed);
+    }
+
+    public void on(int type, Handler handler) {
+        handlers[type] = handler;
+    }
+
+    public long now() {
+        return now;
+    }
+
+    public int pending() {
+        return size;
+    }
+
+    // 在模拟时刻 time 触发事件，不能早于当前时刻
+    public void at(long time, int type, long arg, Object payload) {
+        if (time < now) {
+            throw new IllegalArgumentException("Event at " + time + " is in the past (now " + now + ")");
+        }
+        if (handlers[type] == null) {
+            throw new IllegalArgumentException("No handler for event type " + type);
+        }
+        if (size == times.length) {
+            grow();
+        }
+        // 上浮
+        int i = size++;
+        long seq = nextSeq++;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!before(time, seq, times[parent], seqs[parent])) {
+                break;
+            }
+            move(parent, i);
+            i = parent;
+        }
+        set(i, time, seq, type, arg, payload);
+    }
+
+    public void after(long delay, int type, long arg, Object payload) {
+        at(now + delay, type, arg, payload);
+    }
+
+    // 处理最早的一个事件，没有事件时返回 false
+    public boolean step() {
+        if (size == 0) {
+            return false;
+        }
+        long time = times[0];
+        int type = types[0];
+        long arg = args[0];
+        Object payload = payloads[0];
+        removeFirst();
+        if (speed > 0) {
+            pace(time);
+        }
+        now = time;
+        eventsProcessed++;
+        handlers[type].handle(arg, payload);
+        return true;
+    }
+
+    // 处理事件直到没有事件或被 stop，返回处理的事件数
+    public long run() {
+        return runUntil(Long.MAX_VALUE);
+    }
+
+    // 处理不晚于 until 的事件，之后时钟停在 until（没有更多事件时停在最后一个事件）
+    public long runUntil(long until) {
+        long start = eventsProcessed;
+        stopped = false;
+        startPacing();
+        while (!stopped && size > 0 && times[0] <= until) {
+            step();
+        }
+        if (!stopped && until != Long.MAX_VALUE && until > now) {
+            now = until;
+        }
+        return eventsProcessed - start;
+    }
+
+    // 由事件处理函数调用，处理完当前事件后 run 返回
+    public void stop() {
+        stopped = true;
+    }
+
+    // 丢弃所有事件，时钟归零
+    public void reset() {
+        Arrays.fill(payloads, 0, size, null);
+        size = 0;
+        nextSeq = 0;
+        now = 0;
+        eventsProcessed = 0;
+    }
+
+    private void startPacing() {
+        wallStart = System.nanoTime();
+        simStart = now;
+    }
+
+    // 模拟时间 time 对应的真实时刻还没到就等待
+    private void pace(long time) {
+        long target = wallStart + (long) ((time - simStart) / speed);
+        long wait = target - System.nanoTime();
+        if (wait > 0) {
+            LockSupport.parkNanos(wait);
+        }
+    }
+
+    private void removeFirst() {
+        int last = --size;
+        long time = times[last];
+        long seq = seqs[last];
+        int type = types[last];
+        long arg = args[last];
+        Object payload = payloads[last];
+        payloads[last] = null;
+        if (last == 0) {
+            return;
+        }
+        // 把最后一个元素从堆顶下沉
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= last) {
+                break;
+            }
+            if (child + 1 < last && before(times[child + 1], seqs[child + 1], times[child], seqs[child])) {
+                child++;
+            }
+            if (!before(times[child], seqs[child], time, seq)) {
+                break;
+            }
+            move(child, i);
+            i = child;
+        }
+        set(i, time, seq, type, arg, payload);
+    }
+
+    private static boolean before(long time, long seq, long otherTime, long otherSeq) {
+        return time < otherTime || (time == otherTime && seq < otherSeq);
+    }
+
+    private void move(int from, int to) {
+        set(to, times[from], seqs[from], types[from], args[from], payloads[from]);
+    }
+
+    private void set(int i, long time, long seq, int type, long arg, Object payload) {
+        times[i] = time;
+        seqs[i] = seq;
+        types[i] = type;
+        args[i] = arg;
+        payloads[i] = payload;
+    }
+
+    private void grow() {
+        int capacity = times.length * 2;
+        times = Arrays.copyOf(times, capacity);
+        seqs = Arrays.copyOf(seqs, capacity);
+        types = Arrays.copyOf(types, capacity);
+        args = Arrays.copyOf(args, capacity);
+        payloads = Arrays.copyOf(payloads, capacity);
+    }
+}
@@ -0,0 +1,216 @@
+package utils;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+// 一个内核的运行指标：计数器（只增不减）、瞬时值和延迟直方图，按名字登记，一般在内核构造时登记完。
+// 计数器可以是这里新建的 LongAdder，多个线程同时增加不争用同一个变量；也可以是已有的计数来源。
+// 直方图记录时加锁，锁只在取快照时才有竞争。
+// snapshot 一次读出所有指标，界面和命令行都从快照读数；every 定期取快照，registerMBean 通过 JMX 导出
+public class Metrics {
+    // 线程安全的延迟直方图，另外记住最近一次的值
+    public static final class Histogram {
+        private final LatencyHistogram histogram = new LatencyHistogram();
+        private long last;
+
+        public synchronized void record(long nanos) {
+            histogram.record(nanos);
+            last = nanos;
+        }
+
+        public synchronized long count() {
+            return histogram.count();
+        }
+
+        public synchronized long last() {
+            return last;
+        }
+
+        synchronized LatencyHistogram copy() {
+            LatencyHistogram copy = new LatencyHistogram();
+            copy.add(histogram);
+            return copy;
+        }
+    }
+
+    // 某一时刻所有指标的值
+    public static final class Snapshot {
+        public final long timeNanos = System.nanoTime();
+        public final Map<String, Long> counters = new LinkedHashMap<>();
+        public final Map<String, Long> gauges = new LinkedHashMap<>();
+        public final Map<String, LatencyHistogram> histograms = new LinkedHashMap<>();
+
+        public long counter(String name) {
+            return counters.getOrDefault(name, 0L);
+        }
+
+        public long gauge(String name) {
+            return gauges.getOrDefault(name, 0L);
+        }
+
+        public LatencyHistogram histogram(String name) {
+            return histograms.get(name);
+        }
+
+        // 两次快照之间计数器每秒的增量
+        public double rate(Snapshot previous, String name) {
+            long elapsed = timeNanos - previous.timeNanos;
+            return elapsed <= 0 ? 0 : (counter(name) - previous.counter(name)) * 1e9 / elapsed;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            counters.forEach((name, value) -> sb.append(String.format("%-20s %d%n", name, value)));
+            gauges.forEach((name, value) -> sb.append(String.format("%-20s %d%n", name, value)));
+            histograms.forEach((name, value) -> sb.append(String.format("%-20s %s%n", name, value.summary())));
+            return sb.toString().trim();
+        }
+    }
+
+    // 所有 Metrics 共用的定时线程
+    private static final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "metrics");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Map<String, LongSupplier> counters = new LinkedHashMap<>();
+    private final Map<String, LongSupplier> gauges = new LinkedHashMap<>();
+    private final Map<String, Histogram> histograms = new LinkedHashMap<>();
+    private ObjectName objectName;
+
+    public synchronized LongAdder counter(String name) {
+        LongAdder adder = new LongAdder();
+        counters.put(name, adder::sum);
+        return adder;
+    }
+
+    // 计数来源在别处维护，例如只由内核线程更新的 long 字段
+    public synchronized void counter(String name, LongSupplier source) {
+        counters.put(name, source);
+    }
+
+    public synchronized void gauge(String name, LongSupplier source) {
+        gauges.put(name, source);
+    }
+
+    public synchronized Histogram histogram(String name) {
+        return histograms.computeIfAbsent(name, n -> new Histogram());
+    }
+
+    public synchronized Snapshot snapshot() {
+        Snapshot snapshot = new Snapshot();
+        counters.forEach((name, source) -> snapshot.counters.put(name, source.getAsLong()));
+        gauges.forEach((name, source) -> snapshot.gauges.put(name, source.getAsLong()));
+        histograms.forEach((name, histogram) -> snapshot.histograms.put(name, histogram.copy()));
+        return snapshot;
+    }
+
+    // 每 periodMillis 毫秒取一次快照交给 consumer（在定时线程上调用），取消返回值即停止
+    public ScheduledFuture<?> every(long periodMillis, Consumer<Snapshot> consumer) {
+        return scheduler.scheduleAtFixedRate(() -> consumer.accept(snapshot()), periodMillis, periodMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    // 以 simulation:type=Kernel,name=<name> 注册到平台 MBeanServer。每个计数器和瞬时值是一个属性，
+    // 直方图导出为 <name>.count、.meanNanos、.p50Nanos、.p99Nanos、.maxNanos 几个属性
+    public synchronized void registerMBean(String name) throws JMException {
+        unregisterMBean();
+        ObjectName objectName = new ObjectName("simulation:type=Kernel,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(new MBean(), objectName);
+        this.objectName = objectName;
+    }
+
+    public synchronized void unregisterMBean() throws JMException {
+        if (objectName != null) {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            objectName = null;
+        }
+    }
+
+    // 快照展开为 JMX 属性
+    static Map<String, Long> attributes(Snapshot snapshot) {
+        Map<String, Long> attributes = new LinkedHashMap<>(snapshot.counters);
+        attributes.putAll(snapshot.gauges);
+        snapshot.histograms.forEach((name, histogram) -> {
+            attributes.put(name + ".count", histogram.count());
+            attributes.put(name + ".meanNanos", (long) histogram.mean());
+            attributes.put(name + ".p50Nanos", histogram.percentile(50));
+            attributes.put(name + ".p99Nanos", histogram.percentile(99));
+            attributes.put(name + ".maxNanos", histogram.max());
+        });
+        return attributes;
+    }
+
+    // 只读的动态 MBean，每次读取都取一次快照
+    private final class MBean implements DynamicMBean {
+        @Override
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            Long value = attributes(snapshot()).get(attribute);
+            if (value == null) {
+                throw new AttributeNotFoundException(attribute);
+            }
+            return value;
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] names) {
+            Map<String, Long> attributes = attributes(snapshot());
+            AttributeList list = new AttributeList();
+            for (String name : names) {
+                if (attributes.containsKey(name)) {
+                    list.add(new Attribute(name, attributes.get(name)));
+                }
+            }
+            return list;
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) {
+            throw new UnsupportedOperationException("Metrics are read-only");
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String actionName, Object[] params, String[] signature) {
+            throw new UnsupportedOperationException("No operations");
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            List<MBeanAttributeInfo> infos = new ArrayList<>();
+            for (String name : attributes(snapshot()).keySet()) {
+                infos.add(new MBeanAttributeInfo(name, "long", name, true, false, false));
+            }
+            return new MBeanInfo(Metrics.class.getName(), "Kernel metrics",
+                    infos.toArray(new MBeanAttributeInfo[0]), null, null, null);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package utils;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+// 内核对象的回收缓存：释放的对象压栈保存，下次取出时先重置再复用，缓存满了就交给 GC
+public class ObjectPool<T> {
+    private final Supplier<T> factory;
+    private final Consumer<T> resetter;
+    private Object[] items = new Object[16];
+    private int count;
+    private int capacity;
+
+    public long created; // 新建的对象数
+    public long reused;  // 复用的对象数
+
+    public ObjectPool(int capacity, Supplier<T> factory, Consumer<T> resetter) {
+        this.capacity = capacity;
+        this.factory = factory;
+        this.resetter = resetter;
+    }
+
+    @SuppressWarnings("unchecked")
+    public T acquire() {
+        if (count > 0) {
+            T item = (T) items[--count];
+            items[count] = null;
+            resetter.accept(item);
+            reused++;
+            return item;
+        }
+        created++;
+        return factory.get();
+    }
+
+    public void release(T item) {
+        if (item == null || count >= capacity) {
+            return;
+        }
+        if (count == items.length) {
+            items = Arrays.copyOf(items, Math.min(capacity, count * 2));
+        }
+        items[count++] = item;
+    }
+
+    // 容量为 0 时相当于关闭缓存
+    public void setCapacity(int capacity) {
+        this.capacity = capacity;
+        while (count > capacity) {
+            items[--count] = null;
+        }
+    }
+
+    public int size() {
+        return count;
+    }
+}
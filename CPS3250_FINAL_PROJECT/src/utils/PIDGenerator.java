@@ -4,16 +4,38 @@ import java.util.HashSet;
 import java.util.Random;
 import java.util.Set;
 
+// 一个内核的 PID 空间，PID 取 100 到 2^22 - 1，与 Linux 64 位系统 pid_max 的上限相同，可以容纳上百万个进程
 public class PIDGenerator {
-    private static final Set<Long> assignedPids = new HashSet<>();
-    private static final Random pidRandom = new Random();
+    public static final int MIN_PID = 100;
+    public static final int MAX_PID = 1 << 22;
 
-    public static synchronized long forkPid() {
+    private final Set<Long> assignedPids = new HashSet<>();
+    private final Random pidRandom = new Random();
+
+    // 分配一个未占用的 PID，PID 空间已满时返回 -1
+    public synchronized long forkPid() {
+        if (assignedPids.size() >= MAX_PID - MIN_PID) {
+            return -1;
+        }
         long pid;
         do {
-            pid = 100 + pidRandom.nextInt(65535 - 100); // 生成 100 到 65535 之间的随机数
+            pid = MIN_PID + pidRandom.nextInt(MAX_PID - MIN_PID); // 生成 [MIN_PID, MAX_PID) 之间的随机数
         } while (assignedPids.contains(pid));
         assignedPids.add(pid);
         return pid;
     }
+
+    // 设定随机数种子，之后分配的 PID 序列可以重现
+    public synchronized void seed(long seed) {
+        pidRandom.setSeed(seed);
+    }
+
+    // 进程被回收后归还 PID
+    public synchronized void releasePid(long pid) {
+        assignedPids.remove(pid);
+    }
+
+    public synchronized int assignedCount() {
+        return assignedPids.size();
+    }
 }
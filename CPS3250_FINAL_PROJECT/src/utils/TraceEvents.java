@@ -0,0 +1,88 @@
+package utils;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+// 内核的 JFR 事件。用 -XX:StartFlightRecording 启动或 jcmd JFR.start 开始记录后，
+// 在 JDK Mission Control 的事件浏览器中按线程看 fork、写时复制和切换的时间线。
+// 没有记录时 begin/commit 是空操作。事件不采集调用栈；fork 的各个步骤和缺页次数多、耗时短，
+// 默认只记录超过 20 微秒的，开启记录时的开销保持在几个百分点，需要完整时间线时在 .jfc 设置中把 threshold 改为 0
+public final class TraceEvents {
+    private TraceEvents() {
+    }
+
+    @Name("simulation.Fork")
+    @Label("Fork")
+    @Category({"Simulation", "Process"})
+    @Description("sysFork from entry until the child is on the ready queue")
+    @StackTrace(false)
+    public static class Fork extends Event {
+        @Label("Parent PID")
+        public long parentPid;
+        @Label("Child PID")
+        public long childPid;
+        @Label("Pages")
+        public int pages;
+    }
+
+    @Name("simulation.CopyProcess")
+    @Label("Copy Process")
+    @Category({"Simulation", "Process"})
+    @StackTrace(false)
+    @Threshold("20 us")
+    public static class CopyProcess extends Event {
+        @Label("Parent PID")
+        public long parentPid;
+        @Label("Pages")
+        public int pages;
+    }
+
+    @Name("simulation.CopyPcb")
+    @Label("Copy PCB and Bitmap")
+    @Category({"Simulation", "Process"})
+    @StackTrace(false)
+    @Threshold("20 us")
+    public static class CopyPcb extends Event {
+        @Label("Child PID")
+        public long childPid;
+    }
+
+    @Name("simulation.BuildChildStack")
+    @Label("Build Child Stack")
+    @Category({"Simulation", "Process"})
+    @StackTrace(false)
+    @Threshold("20 us")
+    public static class BuildChildStack extends Event {
+        @Label("Child PID")
+        public long childPid;
+    }
+
+    @Name("simulation.PageFault")
+    @Label("Page Fault")
+    @Category({"Simulation", "Memory"})
+    @StackTrace(false)
+    @Threshold("20 us")
+    public static class PageFault extends Event {
+        @Label("PID")
+        public long pid;
+        @Label("Virtual Address")
+        public int address;
+        @Label("Write")
+        public boolean write;
+    }
+
+    @Name("simulation.ContextSwitch")
+    @Label("Context Switch")
+    @Category({"Simulation", "CPU"})
+    @Description("From switching to a process until it gives the CPU back")
+    @StackTrace(false)
+    public static class ContextSwitch extends Event {
+        @Label("PID")
+        public long pid;
+    }
+}